@@ -0,0 +1,63 @@
+package com.benchmarks;
+
+import com.business.services.AnalyticsService;
+import com.infrastructure.InMemoryUserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сводный отчет по всем пользователям хранилища.
+ * Масштабирование по ядрам смотрится по параметру parallelism (размер ForkJoinPool).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class AnalyticsBenchmark {
+
+    @Param({"100000"})
+    public int userCount;
+
+    @Param({"20"})
+    public int entriesPerUser;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private ForkJoinPool pool;
+    private AnalyticsService analyticsService;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        InMemoryUserRepository repository = new InMemoryUserRepository();
+        repository.setAllUsers(LedgerGenerator.users(userCount, entriesPerUser));
+        pool = new ForkJoinPool(parallelism);
+        analyticsService = new AnalyticsService(repository, pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public AnalyticsService.Report analyze() {
+        return analyticsService.analyze(10);
+    }
+}
@@ -0,0 +1,90 @@
+package com.benchmarks;
+
+import com.business.entities.AccountHolder;
+import com.business.services.DataPersistenceService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Сохранение и загрузка снимка users.data и экспорт одного пользователя в JSON.
+ * ledgerSize — общее число транзакций, оно делится поровну между userCount пользователями.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class DataPersistenceBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int ledgerSize;
+
+    @Param({"1", "100", "10000", "100000"})
+    public int userCount;
+
+    private Path directory;
+    private DataPersistenceService service;
+    private Map<String, AccountHolder> users;
+    private AccountHolder largestUser;
+    private File jsonFile;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = Files.createTempDirectory("finance-bench");
+        service = new DataPersistenceService(directory.resolve("users.data"));
+        users = LedgerGenerator.users(userCount, Math.max(1, ledgerSize / userCount));
+        largestUser = users.values().iterator().next();
+        jsonFile = directory.resolve(largestUser.getUsername() + ".json").toFile();
+        // Файлы для бенчмарков чтения
+        service.save(users);
+        service.saveJSON(largestUser, jsonFile.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void save() {
+        service.save(users);
+    }
+
+    @Benchmark
+    public Map<String, AccountHolder> load() {
+        return service.load();
+    }
+
+    @Benchmark
+    public void saveJSON() {
+        service.saveJSON(largestUser, jsonFile.getPath());
+    }
+
+    @Benchmark
+    public AccountHolder loadJSON() {
+        return service.loadJSON(jsonFile);
+    }
+}
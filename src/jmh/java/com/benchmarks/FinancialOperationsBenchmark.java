@@ -0,0 +1,95 @@
+package com.benchmarks;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialEntry;
+import com.business.services.FinancialOperationsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции FinancialOperationsService над одним пользователем с историей заданного размера.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class FinancialOperationsBenchmark {
+    private static final Set<String> SELECTED = Set.of("food", "cafe", "taxi");
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int ledgerSize;
+
+    // Доля истории, попадающая в запрошенный период
+    @Param({"0.01", "0.5"})
+    public double windowFraction;
+
+    private final FinancialOperationsService service = new FinancialOperationsService();
+    private final SplittableRandom random = new SplittableRandom(7);
+    private AccountHolder accountHolder;
+    private LocalDateTime from;
+    private LocalDateTime to;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        accountHolder = LedgerGenerator.user("bench", ledgerSize);
+        int window = Math.max(1, (int) (ledgerSize * windowFraction));
+        int start = (ledgerSize - window) / 2;
+        from = LedgerGenerator.timestamp(start);
+        to = LedgerGenerator.timestamp(start + window - 1);
+    }
+
+    // Добавленные за итерацию транзакции удаляются, чтобы размер истории не рос между итерациями
+    @Setup(Level.Iteration)
+    public void trim() {
+        List<FinancialEntry> entries = accountHolder.getFinancialAccount().getFinancialEntries();
+        while (entries.size() > ledgerSize) {
+            accountHolder.getFinancialAccount().removeTransaction(entries.size() - 1);
+        }
+    }
+
+    @Benchmark
+    public AccountHolder addIncome() {
+        service.addIncome(accountHolder, LedgerGenerator.category(random), 100.0);
+        return accountHolder;
+    }
+
+    @Benchmark
+    public AccountHolder addOutcome() {
+        service.addOutcome(accountHolder, LedgerGenerator.category(random), 10.0);
+        return accountHolder;
+    }
+
+    @Benchmark
+    public double getCurrentBalance() {
+        return service.getCurrentBalance(accountHolder);
+    }
+
+    @Benchmark
+    public Map<String, Double> getOutcomeByCategory() {
+        return service.getOutcomeByCategory(accountHolder);
+    }
+
+    @Benchmark
+    public List<FinancialEntry> getTransactionByCategoriesInPeriod() {
+        return service.getTransactionByCategories(accountHolder, from, to, SELECTED);
+    }
+}
@@ -0,0 +1,163 @@
+package com.benchmarks;
+
+import com.business.services.AuthenticationService;
+import com.business.services.DataPersistenceService;
+import com.business.services.FinancialOperationsService;
+import com.infrastructure.InMemoryUserRepository;
+import com.interf.HttpApiServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Нагрузочный клиент HTTP API: пропускная способность и перцентили задержки на одной машине.
+ * Без аргумента url поднимает сервер в этом же процессе на свободном порте.
+ *
+ * <pre>
+ * mvn -Pjmh package exec:exec@load-test -Dload.args="[url|-] [users] [concurrency] [requestsPerWorker]"
+ * </pre>
+ */
+public final class HttpLoadClient {
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+
+    private HttpLoadClient() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 && !args[0].equals("-") ? args[0] : null;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int requestsPerWorker = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+
+        HttpApiServer server = null;
+        if (url == null) {
+            server = new HttpApiServer(new AuthenticationService(new InMemoryUserRepository()), new FinancialOperationsService(),
+                    new DataPersistenceService(Files.createTempDirectory("finance-load").resolve("users.data")));
+            server.start(0);
+            url = "http://localhost:" + server.getPort();
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(concurrency))
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        String[] tokens = new String[users];
+        for (int i = 0; i < users; i++) {
+            String credentials = "{\"username\":\"load" + i + "\",\"password\":\"password\"}";
+            HttpResponse<String> response = client.send(post(url, "/api/register", null, credentials), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 409) {
+                response = client.send(post(url, "/api/login", null, credentials), HttpResponse.BodyHandlers.ofString());
+            }
+            Matcher matcher = TOKEN.matcher(response.body());
+            if (!matcher.find()) {
+                throw new IllegalStateException("Не удалось получить токен: " + response.body());
+            }
+            tokens[i] = matcher.group(1);
+            client.send(post(url, "/api/income", tokens[i], "{\"category\":\"salary\",\"amount\":1000000}"),
+                    HttpResponse.BodyHandlers.discarding());
+        }
+
+        long[] latencies = new long[concurrency * requestsPerWorker];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        String base = url;
+        long started = System.nanoTime();
+        for (int w = 0; w < concurrency; w++) {
+            workers.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    for (int i = 0; i < requestsPerWorker; i++) {
+                        int user = random.nextInt(users);
+                        HttpRequest request = request(base, tokens, user, random);
+                        long begin = System.nanoTime();
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        latencies[next.getAndIncrement()] = System.nanoTime() - begin;
+                        if (response.statusCode() >= 500) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - started;
+        workers.shutdown();
+
+        int count = next.get();
+        long[] measured = Arrays.copyOf(latencies, count);
+        Arrays.sort(measured);
+        System.out.printf("Запросов: %d, ошибок: %d, время: %.1f с%n", count, errors.get(), elapsed / 1e9);
+        System.out.printf("Пропускная способность: %.0f запросов/с%n", count / (elapsed / 1e9));
+        System.out.printf("Задержка p50: %.2f мс, p99: %.2f мс, max: %.2f мс%n",
+                percentile(measured, 0.50) / 1e6, percentile(measured, 0.99) / 1e6,
+                count > 0 ? measured[count - 1] / 1e6 : 0.0);
+
+        if (server != null) {
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    // Смесь запросов: в основном записи и чтение статистики, иногда переводы
+    private static HttpRequest request(String url, String[] tokens, int user, ThreadLocalRandom random) {
+        int kind = random.nextInt(10);
+        String category = LedgerGenerator.CATEGORIES[random.nextInt(LedgerGenerator.CATEGORIES.length)];
+        if (kind < 4) {
+            return post(url, "/api/outcome", tokens[user], "{\"category\":\"" + category + "\",\"amount\":" + (1 + random.nextInt(100)) + "}");
+        }
+        if (kind < 5) {
+            return post(url, "/api/income", tokens[user], "{\"category\":\"" + category + "\",\"amount\":" + (1 + random.nextInt(100)) + "}");
+        }
+        if (kind < 6 && tokens.length > 1) {
+            int recipient = (user + 1 + random.nextInt(tokens.length - 1)) % tokens.length;
+            return post(url, "/api/transfer", tokens[user], "{\"recipient\":\"load" + recipient + "\",\"amount\":1}");
+        }
+        if (kind < 8) {
+            return get(url, "/api/statistics", tokens[user]);
+        }
+        return get(url, "/api/budgets", tokens[user]);
+    }
+
+    private static HttpRequest post(String url, String path, String token, String body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private static HttpRequest get(String url, String path, String token) {
+        return HttpRequest.newBuilder(URI.create(url + path))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
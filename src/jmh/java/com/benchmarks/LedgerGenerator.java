@@ -0,0 +1,69 @@
+package com.benchmarks;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialEntry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Синтетические пользователи и транзакции для бенчмарков.
+ * Данные детерминированы: одинаковые параметры дают одинаковый набор.
+ */
+public final class LedgerGenerator {
+    public static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+    public static final String[] CATEGORIES = {
+            "food", "rent", "transport", "salary", "health", "education", "travel", "gifts",
+            "taxi", "cafe", "utilities", "clothes", "sport", "books", "bonus", "other"
+    };
+    private static final String[] BUDGET_CATEGORIES = {"food", "transport", "cafe", "travel"};
+    private static final long SEED = 42;
+    // Шаг между транзакциями: десять миллионов записей укладываются примерно в десять лет
+    private static final long STEP_SECONDS = 30;
+
+    private LedgerGenerator() {
+    }
+
+    public static AccountHolder user(String username, int entries) {
+        return user(username, entries, new SplittableRandom(SEED ^ username.hashCode()));
+    }
+
+    public static Map<String, AccountHolder> users(int userCount, int entriesPerUser) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        Map<String, AccountHolder> users = new HashMap<>(userCount * 2);
+        for (int i = 0; i < userCount; i++) {
+            AccountHolder holder = user("user" + i, entriesPerUser, random.split());
+            users.put(holder.getUsername(), holder);
+        }
+        return users;
+    }
+
+    public static String category(SplittableRandom random) {
+        return CATEGORIES[random.nextInt(CATEGORIES.length)];
+    }
+
+    public static LocalDateTime timestamp(int position) {
+        return START.plusSeconds(position * STEP_SECONDS);
+    }
+
+    private static AccountHolder user(String username, int entries, SplittableRandom random) {
+        AccountHolder holder = new AccountHolder(username, "password");
+        FinancialAccount account = holder.getFinancialAccount();
+        List<FinancialEntry> ledger = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            boolean income = random.nextInt(5) == 0;
+            double amount = Math.round(random.nextDouble(1, income ? 5000 : 500) * 100) / 100.0;
+            ledger.add(new FinancialEntry(amount, category(random), income, timestamp(i)));
+        }
+        account.setFinancialEntries(ledger);
+        for (String category : BUDGET_CATEGORIES) {
+            account.setBudget(category, 1000.0 + random.nextInt(10_000));
+        }
+        return holder;
+    }
+}
@@ -0,0 +1,65 @@
+package com.benchmarks;
+
+import com.business.entities.AccountHolder;
+import com.business.exception.InsufficientFundsException;
+import com.business.services.FinancialOperationsService;
+import com.business.services.TransferService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность переводов между случайными пользователями.
+ * Масштабирование по ядрам смотрится запуском с разным числом потоков: -t 1, -t 4, -t max.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class TransferBenchmark {
+
+    // Чем меньше пользователей, тем чаще потоки конкурируют за одни и те же блокировки
+    @Param({"2", "64", "10000"})
+    public int userCount;
+
+    private final TransferService transferService = new TransferService();
+    private AccountHolder[] holders;
+
+    // Пересоздаем пользователей, чтобы история не росла от итерации к итерации
+    @Setup(Level.Iteration)
+    public void generate() {
+        FinancialOperationsService operations = new FinancialOperationsService();
+        holders = new AccountHolder[userCount];
+        for (int i = 0; i < userCount; i++) {
+            holders[i] = new AccountHolder("user" + i, "password");
+            operations.addIncome(holders[i], "salary", 1_000_000.0);
+        }
+    }
+
+    @Benchmark
+    public boolean transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(userCount);
+        int to = (from + 1 + random.nextInt(userCount - 1)) % userCount;
+        try {
+            transferService.transfer(holders[from], holders[to], 1 + random.nextInt(100), null);
+            return true;
+        } catch (InsufficientFundsException e) {
+            return false;
+        }
+    }
+}
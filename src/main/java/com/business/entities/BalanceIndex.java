@@ -0,0 +1,87 @@
+package com.business.entities;
+
+import java.util.Arrays;
+
+/**
+ * Префиксные суммы движения денег по дням (дерево Фенвика): доходы со знаком плюс,
+ * расходы со знаком минус. Дни хранятся отсортированными, поэтому сумма до любого дня
+ * и изменение суммы дня занимают O(log D), где D — число различных дней.
+ * Новый день обычно позже всех прежних и дописывается в конец за O(log D);
+ * день из прошлого, которого еще не было, перестраивает дерево за O(D).
+ */
+final class BalanceIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] days = new long[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    // Дерево Фенвика с нумерацией с 1: tree[i] — сумма values за (i - lowbit(i), i]
+    private long[] tree = new long[INITIAL_CAPACITY + 1];
+    private int size;
+
+    void add(long epochDay, long deltaCents) {
+        int position = Arrays.binarySearch(days, 0, size, epochDay);
+        if (position >= 0) {
+            values[position] += deltaCents;
+            for (int i = position + 1; i <= size; i += i & -i) {
+                tree[i] += deltaCents;
+            }
+            return;
+        }
+        int insertion = -position - 1;
+        ensureCapacity(size + 1);
+        if (insertion == size) {
+            days[size] = epochDay;
+            values[size] = deltaCents;
+            size++;
+            // Узел нового последнего дня покрывает (size - lowbit(size), size]
+            tree[size] = prefix(size - 1) - prefix(size - (size & -size)) + deltaCents;
+            return;
+        }
+        System.arraycopy(days, insertion, days, insertion + 1, size - insertion);
+        System.arraycopy(values, insertion, values, insertion + 1, size - insertion);
+        days[insertion] = epochDay;
+        values[insertion] = deltaCents;
+        size++;
+        rebuild();
+    }
+
+    // Сумма по всем дням раньше epochDay
+    long sumBefore(long epochDay) {
+        int position = Arrays.binarySearch(days, 0, size, epochDay);
+        return prefix(position >= 0 ? position : -position - 1);
+    }
+
+    long total() {
+        return prefix(size);
+    }
+
+    // Сумма первых count дней
+    private long prefix(int count) {
+        long sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private void rebuild() {
+        Arrays.fill(tree, 0);
+        for (int i = 1; i <= size; i++) {
+            tree[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= days.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, days.length * 2);
+        days = Arrays.copyOf(days, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        tree = Arrays.copyOf(tree, newCapacity + 1);
+    }
+}
@@ -0,0 +1,83 @@
+package com.business.entities;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Общий для всех пользователей словарь названий категорий.
+ * Каждому названию выдается небольшой номер, а сама строка хранится в одном экземпляре,
+ * поэтому транзакции и бюджеты разных пользователей ссылаются на одни и те же строки.
+ * Номера только добавляются и не переиспользуются.
+ */
+public final class CategoryDictionary {
+    public static final int NO_CATEGORY = -1;
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int size;
+
+    private CategoryDictionary() {
+    }
+
+    // Номер категории; новое название добавляется в словарь
+    public static int id(String name) {
+        if (name == null) {
+            return NO_CATEGORY;
+        }
+        Integer id = IDS.get(name);
+        return id != null ? id : register(name);
+    }
+
+    // Номер категории без добавления в словарь, NO_CATEGORY если названия нет
+    public static int find(String name) {
+        if (name == null) {
+            return NO_CATEGORY;
+        }
+        Integer id = IDS.get(name);
+        return id != null ? id : NO_CATEGORY;
+    }
+
+    public static String name(int id) {
+        return id == NO_CATEGORY ? null : names[id];
+    }
+
+    // Единственный экземпляр строки с таким названием
+    public static String intern(String name) {
+        return name(id(name));
+    }
+
+    // Номера известных словарю категорий; неизвестные названия пропускаются
+    public static BitSet idsOf(Collection<String> categories) {
+        BitSet ids = new BitSet();
+        for (String category : categories) {
+            int id = find(category);
+            if (id != NO_CATEGORY) {
+                ids.set(id);
+            }
+        }
+        return ids;
+    }
+
+    public static synchronized int size() {
+        return size;
+    }
+
+    private static synchronized int register(String name) {
+        Integer existing = IDS.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        int id = size;
+        // Название записывается до публикации номера, поэтому получивший номер увидит и название
+        names[id] = name;
+        size++;
+        IDS.put(name, id);
+        return id;
+    }
+}
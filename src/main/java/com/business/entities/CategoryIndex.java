@@ -0,0 +1,107 @@
+package com.business.entities;
+
+import java.util.Arrays;
+
+/**
+ * Значения по номеру категории для одного аккаунта: хеш-таблица с открытой адресацией
+ * по номерам CategoryDictionary. Размер зависит от числа категорий самого аккаунта,
+ * а не от размера общего словаря, который растет вместе с числом пользователей.
+ */
+final class CategoryIndex<V> {
+    private static final int EMPTY = CategoryDictionary.NO_CATEGORY;
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Таблица создается при первой категории: у многих аккаунтов категорий нет вовсе
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    V get(int categoryId) {
+        if (keys == null || categoryId == EMPTY) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        for (int i = slot(categoryId, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == categoryId) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    void put(int categoryId, V value) {
+        if (keys == null || 2 * (size + 1) > keys.length) {
+            resize(keys == null ? INITIAL_CAPACITY : keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = slot(categoryId, mask);
+        while (keys[i] != EMPTY && keys[i] != categoryId) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            keys[i] = categoryId;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    void remove(int categoryId) {
+        if (keys == null || categoryId == EMPTY) {
+            return;
+        }
+        int mask = keys.length - 1;
+        int hole = slot(categoryId, mask);
+        while (keys[hole] != categoryId) {
+            if (keys[hole] == EMPTY) {
+                return;
+            }
+            hole = (hole + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        values[hole] = null;
+        size--;
+        // Сдвигаем назад следующие записи цепочки, чтобы поиск не останавливался на дыре
+        for (int i = (hole + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            int home = slot(keys[i], mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                keys[i] = EMPTY;
+                values[i] = null;
+                hole = i;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        if (oldKeys == null) {
+            return;
+        }
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != EMPTY) {
+                int i = slot(oldKeys[j], mask);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int slot(int categoryId, int mask) {
+        int hash = categoryId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
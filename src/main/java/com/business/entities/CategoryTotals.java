@@ -0,0 +1,58 @@
+package com.business.entities;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Суммы и количество доходов и расходов по одной категории.
+ * Поддерживается аккаунтом при каждом изменении транзакций.
+ * Суммы копятся в копейках, поэтому добавление и удаление транзакций не накапливает погрешность.
+ */
+@Getter
+@ToString
+public class CategoryTotals {
+    private long incomeCents;
+    private int incomeCount;
+    private long outcomeCents;
+    private int outcomeCount;
+
+    public double getIncomeSum() {
+        return Money.toDouble(incomeCents);
+    }
+
+    public double getOutcomeSum() {
+        return Money.toDouble(outcomeCents);
+    }
+
+    void add(long amountCents, boolean income) {
+        if (income) {
+            incomeCents += amountCents;
+            incomeCount++;
+        } else {
+            outcomeCents += amountCents;
+            outcomeCount++;
+        }
+    }
+
+    void remove(long amountCents, boolean income) {
+        if (income) {
+            incomeCents -= amountCents;
+            incomeCount--;
+        } else {
+            outcomeCents -= amountCents;
+            outcomeCount--;
+        }
+    }
+
+    // Прибавляет итоги другой категории или периода (для сложения сводок)
+    public void merge(CategoryTotals other) {
+        incomeCents += other.incomeCents;
+        incomeCount += other.incomeCount;
+        outcomeCents += other.outcomeCents;
+        outcomeCount += other.outcomeCount;
+    }
+
+    public boolean isEmpty() {
+        return incomeCount == 0 && outcomeCount == 0;
+    }
+}
@@ -0,0 +1,466 @@
+package com.business.entities;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Хранилище транзакций аккаунта по столбцам: суммы в копейках (long[]), признак дохода
+ * в BitSet, время как секунды эпохи и наносекунды, категории как номера CategoryDictionary.
+ * Объекты FinancialEntry создаются только при обращении к строке; последние выданные
+ * объекты лежат в небольшом кэше (ячейка по номеру строки), и пока объект в кэше,
+ * повторное обращение возвращает его же, а его изменения попадают в строку.
+ * Объекты в кэше знают номер своей строки, и он поправляется при вставке и удалении.
+ * Вытесненный из кэша объект отвязывается от аккаунта и дальше меняется только сам.
+ * Для снимков столбцы замораживаются без копирования (см. {@link #freeze()}): дописывание
+ * идет за пределами замороженной длины, а изменение строк на месте сначала копирует столбцы.
+ *
+ * Суммы хранятся с точностью до копеек.
+ */
+public class ColumnarLedger extends AbstractList<FinancialEntry> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int VIEW_CACHE_SIZE = 64;
+
+    private int size;
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private final BitSet incomeFlags = new BitSet();
+    private long[] epochSeconds = new long[INITIAL_CAPACITY];
+    private int[] nanos = new int[INITIAL_CAPACITY];
+
+    // Номера общего словаря не сохраняются: при сериализации пишется локальная таблица названий
+    private transient int[] categories = new int[INITIAL_CAPACITY];
+    // Последние выданные объекты строк: строка row лежит в ячейке row % VIEW_CACHE_SIZE
+    private transient FinancialEntry[] views = new FinancialEntry[VIEW_CACHE_SIZE];
+    // Номера строк со временем, отсортированные по времени
+    private transient int[] order = new int[INITIAL_CAPACITY];
+    private transient int orderSize;
+    private transient FinancialAccount owner;
+    // Образ, который читает столбцы этого хранилища; пока он не отпущен, строки не меняются на месте
+    private transient Frozen shared;
+
+    ColumnarLedger(FinancialAccount owner) {
+        this.owner = owner;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public FinancialEntry get(int index) {
+        checkIndex(index);
+        FinancialEntry view = cached(index);
+        if (view == null) {
+            view = FinancialEntry.ofCents(amounts[index], CategoryDictionary.name(categories[index]),
+                    incomeFlags.get(index), timestampAt(index));
+            cache(index, view);
+        }
+        return view;
+    }
+
+    // Обычно строка дописывается в конец; вставка в середину сдвигает хвост столбцов, как в ArrayList
+    @Override
+    public void add(int index, FinancialEntry financialEntry) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        ensureCapacity(size + 1);
+        if (index < size) {
+            unshare();
+            shiftRows(index, 1);
+        }
+        write(index, financialEntry);
+        size++;
+        cache(index, financialEntry);
+        insertOrder(index);
+        modCount++;
+    }
+
+    // Пакет дописывается в конец, столбцы расширяются один раз на весь пакет
+    @Override
+    public boolean addAll(Collection<? extends FinancialEntry> entries) {
+        if (entries.isEmpty()) {
+            return false;
+        }
+        ensureCapacity(size + entries.size());
+        for (FinancialEntry financialEntry : entries) {
+            write(size, financialEntry);
+            size++;
+            cache(size - 1, financialEntry);
+            insertOrder(size - 1);
+        }
+        modCount++;
+        return true;
+    }
+
+    // Перезаписывает строку значениями транзакции (используется после ее изменения)
+    @Override
+    public FinancialEntry set(int index, FinancialEntry financialEntry) {
+        FinancialEntry previous = get(index);
+        unshare();
+        removeOrder(index);
+        write(index, financialEntry);
+        cache(index, financialEntry);
+        insertOrder(index);
+        return previous;
+    }
+
+    // Удаление из середины сдвигает хвост столбцов за O(n), как в ArrayList
+    @Override
+    public FinancialEntry remove(int index) {
+        FinancialEntry removed = get(index);
+        unshare();
+        removeOrder(index);
+        views[slot(index)] = null;
+        shiftRows(index + 1, -1);
+        size--;
+        incomeFlags.clear(size);
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        unshare();
+        Arrays.fill(views, null);
+        incomeFlags.clear();
+        size = 0;
+        orderSize = 0;
+        modCount++;
+    }
+
+    /**
+     * Транзакции за период в порядке времени, границы включаются.
+     */
+    public List<FinancialEntry> between(LocalDateTime from, LocalDateTime to) {
+        int start = from != null ? lowerBound(from.toEpochSecond(ZoneOffset.UTC), from.getNano()) : 0;
+        int end = to != null ? upperBound(to.toEpochSecond(ZoneOffset.UTC), to.getNano()) : orderSize;
+        List<FinancialEntry> result = new ArrayList<>(Math.max(end - start, 0));
+        for (int i = start; i < end; i++) {
+            result.add(get(order[i]));
+        }
+        return result;
+    }
+
+    // Транзакции выбранных категорий: сравниваются номера, объекты создаются только для найденных строк
+    public List<FinancialEntry> inCategories(Set<String> names) {
+        BitSet wanted = CategoryDictionary.idsOf(names);
+        List<FinancialEntry> result = new ArrayList<>();
+        if (wanted.isEmpty()) {
+            return result;
+        }
+        for (int i = 0; i < size; i++) {
+            int code = categories[i];
+            if (code != CategoryDictionary.NO_CATEGORY && wanted.get(code)) {
+                result.add(get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Транзакции на текущий момент без копирования столбцов: образ читает те же массивы
+     * до нынешней длины. Вызывается под блокировкой аккаунта; читать образ можно без нее.
+     */
+    Frozen freeze() {
+        Frozen frozen = new Frozen(size, amounts, (BitSet) incomeFlags.clone(), epochSeconds, nanos, categories);
+        shared = frozen;
+        return frozen;
+    }
+
+    void forEachRow(RowVisitor visitor) {
+        for (int i = 0; i < size; i++) {
+            long epochDay = epochSeconds[i] == NO_TIMESTAMP ? PeriodRollups.NO_DAY : Math.floorDiv(epochSeconds[i], 86_400L);
+            visitor.visit(amounts[i], incomeFlags.get(i), categories[i], epochDay);
+        }
+    }
+
+    // Номер строки по объекту транзакции: объект помнит свою строку, остается проверить ее
+    int indexOfView(FinancialEntry financialEntry) {
+        int row = financialEntry.row();
+        if (row < 0 || row >= size) {
+            return -1;
+        }
+        return cached(row) == financialEntry ? row : -1;
+    }
+
+    void bind(FinancialAccount account) {
+        this.owner = account;
+        for (FinancialEntry view : views) {
+            if (view != null) {
+                view.attach(account, view.row());
+            }
+        }
+    }
+
+    void detachViews() {
+        for (FinancialEntry view : views) {
+            if (view != null) {
+                view.detach();
+            }
+        }
+    }
+
+    private static int slot(int row) {
+        return row % VIEW_CACHE_SIZE;
+    }
+
+    private FinancialEntry cached(int row) {
+        FinancialEntry view = views[slot(row)];
+        return view != null && view.row() == row ? view : null;
+    }
+
+    // Кладет объект строки в кэш и привязывает к аккаунту; прежний объект ячейки отвязывается
+    private void cache(int row, FinancialEntry view) {
+        FinancialEntry evicted = views[slot(row)];
+        if (evicted != null && evicted != view) {
+            evicted.detach();
+        }
+        view.attach(owner, row);
+        views[slot(row)] = view;
+    }
+
+    // Сдвигает строки from..size-1 на shift позиций (1 — вставка, -1 — удаление) вместе с номерами
+    // строк в порядке по времени и в живых объектах; size не меняет
+    private void shiftRows(int from, int shift) {
+        int tail = size - from;
+        System.arraycopy(amounts, from, amounts, from + shift, tail);
+        System.arraycopy(epochSeconds, from, epochSeconds, from + shift, tail);
+        System.arraycopy(nanos, from, nanos, from + shift, tail);
+        System.arraycopy(categories, from, categories, from + shift, tail);
+        // BitSet копируется словами, а не по одному биту
+        BitSet flags = incomeFlags.get(from, size);
+        incomeFlags.clear(Math.min(from, from + shift), size);
+        for (int i = flags.nextSetBit(0); i >= 0; i = flags.nextSetBit(i + 1)) {
+            incomeFlags.set(from + shift + i);
+        }
+        for (int i = 0; i < orderSize; i++) {
+            if (order[i] >= from) {
+                order[i] += shift;
+            }
+        }
+        // Объекты в кэше получают новые номера и переезжают в ячейки по ним
+        FinancialEntry[] moved = views.clone();
+        Arrays.fill(views, null);
+        for (FinancialEntry view : moved) {
+            if (view != null) {
+                int row = view.row();
+                cache(row >= from ? row + shift : row, view);
+            }
+        }
+    }
+
+    // Перед изменением строк на месте: столбцы, которые еще читает образ, копируются (copy-on-write)
+    private void unshare() {
+        if (shared == null) {
+            return;
+        }
+        if (!shared.released) {
+            amounts = amounts.clone();
+            epochSeconds = epochSeconds.clone();
+            nanos = nanos.clone();
+            categories = categories.clone();
+        }
+        shared = null;
+    }
+
+    private void write(int row, FinancialEntry financialEntry) {
+        amounts[row] = financialEntry.getAmountCents();
+        incomeFlags.set(row, Boolean.TRUE.equals(financialEntry.getIsIncome()));
+        LocalDateTime timestamp = financialEntry.getTimestamp();
+        epochSeconds[row] = timestamp != null ? timestamp.toEpochSecond(ZoneOffset.UTC) : NO_TIMESTAMP;
+        nanos[row] = timestamp != null ? timestamp.getNano() : 0;
+        categories[row] = financialEntry.getCategoryId();
+    }
+
+    private LocalDateTime timestampAt(int row) {
+        return epochSeconds[row] == NO_TIMESTAMP ? null : LocalDateTime.ofEpochSecond(epochSeconds[row], nanos[row], ZoneOffset.UTC);
+    }
+
+    private void insertOrder(int row) {
+        if (epochSeconds[row] == NO_TIMESTAMP) {
+            return;
+        }
+        // Обычно время не убывает, и строка встает в конец
+        int position = upperBound(epochSeconds[row], nanos[row]);
+        System.arraycopy(order, position, order, position + 1, orderSize - position);
+        order[position] = row;
+        orderSize++;
+    }
+
+    private void removeOrder(int row) {
+        if (epochSeconds[row] == NO_TIMESTAMP) {
+            return;
+        }
+        for (int i = lowerBound(epochSeconds[row], nanos[row]); i < orderSize; i++) {
+            if (order[i] == row) {
+                System.arraycopy(order, i + 1, order, i, orderSize - i - 1);
+                orderSize--;
+                return;
+            }
+        }
+    }
+
+    private int lowerBound(long seconds, int nano) {
+        int low = 0;
+        int high = orderSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareAt(order[mid], seconds, nano) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(long seconds, int nano) {
+        int low = 0;
+        int high = orderSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareAt(order[mid], seconds, nano) > 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private int compareAt(int row, long seconds, int nano) {
+        int result = Long.compare(epochSeconds[row], seconds);
+        return result != 0 ? result : Integer.compare(nanos[row], nano);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= amounts.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, amounts.length + (amounts.length >> 1));
+        amounts = Arrays.copyOf(amounts, newCapacity);
+        epochSeconds = Arrays.copyOf(epochSeconds, newCapacity);
+        nanos = Arrays.copyOf(nanos, newCapacity);
+        categories = Arrays.copyOf(categories, newCapacity);
+        order = Arrays.copyOf(order, newCapacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    // Столбцы пишутся обрезанными до size: запас емкости в поток не попадает
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("size", size);
+        fields.put("amounts", Arrays.copyOf(amounts, size));
+        fields.put("incomeFlags", incomeFlags);
+        fields.put("epochSeconds", Arrays.copyOf(epochSeconds, size));
+        fields.put("nanos", Arrays.copyOf(nanos, size));
+        out.writeFields();
+        Map<Integer, Integer> local = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] codes = new int[size];
+        for (int row = 0; row < size; row++) {
+            int id = categories[row];
+            if (id == CategoryDictionary.NO_CATEGORY) {
+                codes[row] = -1;
+                continue;
+            }
+            codes[row] = local.computeIfAbsent(id, k -> {
+                names.add(CategoryDictionary.name(k));
+                return names.size() - 1;
+            });
+        }
+        out.writeObject(names.toArray(new String[0]));
+        out.writeObject(codes);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        String[] names = (String[]) in.readObject();
+        int[] codes = (int[]) in.readObject();
+        int[] ids = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = CategoryDictionary.id(names[i]);
+        }
+        categories = new int[amounts.length];
+        for (int row = 0; row < size; row++) {
+            categories[row] = codes[row] < 0 ? CategoryDictionary.NO_CATEGORY : ids[codes[row]];
+        }
+        views = new FinancialEntry[VIEW_CACHE_SIZE];
+        order = new int[amounts.length];
+        orderSize = 0;
+        for (int row = 0; row < size; row++) {
+            insertOrder(row);
+        }
+    }
+
+    /**
+     * Замороженные транзакции: строки создаются при обращении и к аккаунту не привязаны.
+     * Флаги дохода скопированы (бит на строку), остальные столбцы общие с хранилищем.
+     */
+    static final class Frozen extends AbstractList<FinancialEntry> implements RandomAccess {
+        private final int size;
+        private final long[] amounts;
+        private final BitSet incomeFlags;
+        private final long[] epochSeconds;
+        private final int[] nanos;
+        private final int[] categories;
+        private volatile boolean released;
+
+        private Frozen(int size, long[] amounts, BitSet incomeFlags, long[] epochSeconds, int[] nanos, int[] categories) {
+            this.size = size;
+            this.amounts = amounts;
+            this.incomeFlags = incomeFlags;
+            this.epochSeconds = epochSeconds;
+            this.nanos = nanos;
+            this.categories = categories;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public FinancialEntry get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            LocalDateTime timestamp = epochSeconds[index] == NO_TIMESTAMP
+                    ? null : LocalDateTime.ofEpochSecond(epochSeconds[index], nanos[index], ZoneOffset.UTC);
+            return FinancialEntry.ofCents(amounts[index], CategoryDictionary.name(categories[index]),
+                    incomeFlags.get(index), timestamp);
+        }
+
+        // Образ прочитан: хранилище снова может менять строки на месте
+        void release() {
+            released = true;
+        }
+    }
+
+    @FunctionalInterface
+    interface RowVisitor {
+        void visit(long amountCents, boolean income, int categoryId, long epochDay);
+    }
+}
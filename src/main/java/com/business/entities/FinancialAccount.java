@@ -1,29 +1,719 @@
 package com.business.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @Data
 public class FinancialAccount implements Serializable {
     private static final long serialVersionUID = 1L;
+    // Новые аккаунты хранят транзакции по столбцам (см. ColumnarLedger)
+    private static volatile boolean columnarByDefault;
+    // Число изменений во всех аккаунтах процесса, по нему фоновые снимки судят о накопленных изменениях
+    private static final LongAdder MODIFICATIONS = new LongAdder();
+    private static final AtomicLong FREEZE_EPOCHS = new AtomicLong();
+    private static final AtomicLong INSTANCE_IDS = new AtomicLong();
+    // Эпоха идущего согласованного среза, 0 — среза нет (см. beginFreeze)
+    private static volatile long freezeEpoch;
     private List<FinancialEntry> financialEntries;
     private Map<String, Double> budgetsCategories;
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient List<FinancialAccountListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Итоги по доходам и расходам в копейках поддерживаются при каждом изменении, чтобы баланс считался за O(1)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient long totalIncomeCents;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient long totalOutcomeCents;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient Map<String, CategoryTotals> categoryTotals = new TreeMap<>();
+
+    // Те же итоги по номеру категории в CategoryDictionary, для поиска без сравнения строк.
+    // Таблица только по категориям этого аккаунта, общий словарь хранит лишь названия
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient CategoryIndex<CategoryTotals> totalsById = new CategoryIndex<>();
+
+    // Сводки по дням и месяцам по номеру категории, для итогов за период без прохода по транзакциям
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient CategoryIndex<PeriodRollups> rollupsById = new CategoryIndex<>();
+
+    // Префиксные суммы движения денег по дням, для баланса на дату за O(log D)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient BalanceIndex balanceIndex = new BalanceIndex();
+
+    // Транзакции, отсортированные по времени, для выборок за период
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient List<FinancialEntry> timeline = new ArrayList<>();
+
+    // Номер версии: растет при каждом изменении, неизменная версия означает неизменные данные
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient long version;
+
+    // Номер объекта аккаунта в процессе: образ аккаунта получает номер самого аккаунта
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient long instanceId = INSTANCE_IDS.incrementAndGet();
+
+    // Образ на момент среза frozenEpoch, сохраненный перед первым изменением после среза
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient long frozenEpoch;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient FinancialAccount frozen;
+
     public FinancialAccount() {
-        this.financialEntries = new ArrayList<>();
+        this.financialEntries = columnarByDefault ? new ColumnarLedger(this) : new ArrayList<>();
         this.budgetsCategories = new TreeMap<>(); // TreeMap для сортировки по названию
     }
 
+    public static void setColumnarByDefault(boolean columnar) {
+        columnarByDefault = columnar;
+    }
+
+    // Аккаунт с транзакциями в столбцах независимо от настройки по умолчанию
+    public static FinancialAccount columnar() {
+        FinancialAccount account = new FinancialAccount();
+        if (!account.isColumnar()) {
+            account.financialEntries = new ColumnarLedger(account);
+        }
+        return account;
+    }
+
+    public static long getModificationCount() {
+        return MODIFICATIONS.sum();
+    }
+
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    // Образ: транзакции и бюджеты только для чтения, итоги не считаются
+    private FinancialAccount(FinancialAccount origin, List<FinancialEntry> entries) {
+        this.financialEntries = entries;
+        this.budgetsCategories = Collections.unmodifiableMap(new TreeMap<>(origin.budgetsCategories));
+        this.instanceId = origin.instanceId;
+        this.version = origin.version;
+    }
+
+    /**
+     * Аккаунт, восстановленный из хранилища. Данные переносятся без уведомлений и без смены версии,
+     * поэтому построение не считается изменением для идущего среза: аккаунт, прочитанный во время
+     * среза, сохранит образ в прочитанном состоянии перед первым изменением, как и любой другой.
+     */
+    public static FinancialAccount restore(Map<String, Double> budgetsCategories, List<FinancialEntry> financialEntries) {
+        FinancialAccount account = new FinancialAccount();
+        account.putBudgets(budgetsCategories);
+        account.replaceEntries(financialEntries);
+        return account;
+    }
+
+    @JsonIgnore
+    public long getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Начинает согласованный срез: каждый аккаунт перед первым изменением после него
+     * сохраняет свой образ, и {@link #takeImage(long)} отдает состояние на момент среза.
+     * Вызывается, когда ни один аккаунт не меняется (под блокировками всех полос).
+     *
+     * @return номер среза
+     */
+    public static long beginFreeze() {
+        long epoch = FREEZE_EPOCHS.incrementAndGet();
+        freezeEpoch = epoch;
+        return epoch;
+    }
+
+    public static void endFreeze() {
+        freezeEpoch = 0;
+    }
+
+    /**
+     * Образ аккаунта на момент среза epoch для записи снимков и резервных копий.
+     * Столбцы ColumnarLedger не копируются, пока аккаунт только дописывается; строки обычного
+     * списка копируются, потому что объекты транзакций меняются на месте.
+     * Вызывается под блокировкой аккаунта, читать образ можно без нее.
+     */
+    public FinancialAccount takeImage(long epoch) {
+        FinancialAccount image = frozenEpoch == epoch ? frozen : null;
+        if (image == null) {
+            image = image();
+            frozenEpoch = epoch;
+        }
+        frozen = null;
+        return image;
+    }
+
+    // Образ прочитан: столбцы аккаунта снова можно менять на месте
+    public void releaseImage() {
+        if (financialEntries instanceof ColumnarLedger.Frozen) {
+            ((ColumnarLedger.Frozen) financialEntries).release();
+        }
+    }
+
+    private FinancialAccount image() {
+        if (isColumnar()) {
+            return new FinancialAccount(this, ((ColumnarLedger) financialEntries).freeze());
+        }
+        List<FinancialEntry> entries = new ArrayList<>(financialEntries.size());
+        for (FinancialEntry entry : financialEntries) {
+            entries.add(FinancialEntry.ofCents(entry.getAmountCents(), entry.getCategory(),
+                    Boolean.TRUE.equals(entry.getIsIncome()), entry.getTimestamp()));
+        }
+        return new FinancialAccount(this, Collections.unmodifiableList(entries));
+    }
+
+    // Перед каждым изменением: первое изменение после среза сохраняет образ на момент среза
+    private void beforeChange() {
+        long epoch = freezeEpoch;
+        if (epoch == 0) {
+            if (frozen != null) {
+                frozen.releaseImage();
+                frozen = null;
+            }
+        } else if (frozenEpoch != epoch) {
+            frozen = image();
+            frozenEpoch = epoch;
+        }
+    }
+
+    @JsonIgnore
+    public boolean isColumnar() {
+        return financialEntries instanceof ColumnarLedger;
+    }
+
+    // Снаружи список доступен только для чтения: изменения идут через методы аккаунта
+    public List<FinancialEntry> getFinancialEntries() {
+        return Collections.unmodifiableList(financialEntries);
+    }
+
+    public void setFinancialEntries(List<FinancialEntry> financialEntries) {
+        beforeChange();
+        replaceEntries(financialEntries);
+        changed();
+    }
+
+    private void replaceEntries(List<FinancialEntry> financialEntries) {
+        if (isColumnar()) {
+            ColumnarLedger ledger = (ColumnarLedger) this.financialEntries;
+            ledger.detachViews();
+            ledger.clear();
+            if (financialEntries != null) {
+                ledger.addAll(financialEntries);
+            }
+        } else {
+            this.financialEntries.forEach(FinancialEntry::detach);
+            this.financialEntries = financialEntries != null ? new ArrayList<>(financialEntries) : new ArrayList<>();
+            renumber(0);
+        }
+        rebuildTotals();
+    }
+
+    public Map<String, Double> getBudgetsCategories() {
+        return Collections.unmodifiableMap(budgetsCategories);
+    }
+
+    public void setBudgetsCategories(Map<String, Double> budgetsCategories) {
+        beforeChange();
+        putBudgets(budgetsCategories);
+        changed();
+    }
+
+    private void putBudgets(Map<String, Double> budgetsCategories) {
+        this.budgetsCategories = new TreeMap<>();
+        if (budgetsCategories != null) {
+            budgetsCategories.forEach((category, amount) -> this.budgetsCategories.put(CategoryDictionary.intern(category), amount));
+        }
+    }
+
     public void addTransaction(FinancialEntry financialEntry) {
         if (financialEntry == null) {
             throw new IllegalArgumentException("Транзакция не может быть null");
         }
+        beforeChange();
         this.financialEntries.add(financialEntry);
+        financialEntry.attach(this, this.financialEntries.size() - 1);
+        index(financialEntry);
+        changed();
+        listeners.forEach(l -> l.onTransactionAdded(this, financialEntry));
+    }
+
+    /**
+     * Добавляет пакет транзакций по принципу «все или ничего»: пакет проверяется целиком
+     * до изменений, хранилище расширяется один раз, версия меняется один раз,
+     * а слушатели получают одно уведомление на весь пакет.
+     */
+    public void addTransactions(Collection<? extends FinancialEntry> financialEntries) {
+        if (financialEntries == null) {
+            throw new IllegalArgumentException("Пакет транзакций не может быть null");
+        }
+        List<FinancialEntry> batch = new ArrayList<>(financialEntries);
+        for (FinancialEntry financialEntry : batch) {
+            if (financialEntry == null) {
+                throw new IllegalArgumentException("Транзакция не может быть null");
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        beforeChange();
+        int row = this.financialEntries.size();
+        this.financialEntries.addAll(batch);
+        boolean ordered = true;
+        LocalDateTime last = timeline.isEmpty() ? null : timeline.get(timeline.size() - 1).getTimestamp();
+        List<FinancialEntry> timed = new ArrayList<>(batch.size());
+        for (FinancialEntry financialEntry : batch) {
+            if (!isColumnar()) {
+                // Столбцы сами привязывают объекты, которые держат в кэше
+                financialEntry.attach(this, row++);
+            }
+            indexTotals(financialEntry);
+            LocalDateTime timestamp = financialEntry.getTimestamp();
+            if (timestamp != null && !isColumnar()) {
+                ordered &= last == null || !timestamp.isBefore(last);
+                last = timestamp;
+                timed.add(financialEntry);
+            }
+        }
+        timeline.addAll(timed);
+        if (!ordered) {
+            // Сортировка устойчивая: при равном времени новые транзакции остаются после старых
+            timeline.sort(Comparator.comparing(FinancialEntry::getTimestamp));
+        }
+        changed();
+        List<FinancialEntry> added = Collections.unmodifiableList(batch);
+        listeners.forEach(l -> l.onTransactionsAdded(this, added));
+    }
+
+    public FinancialEntry removeTransaction(int index) {
+        if (index < 0 || index >= financialEntries.size()) {
+            throw new IndexOutOfBoundsException("Транзакция с номером " + (index + 1) + " не найдена");
+        }
+        beforeChange();
+        FinancialEntry removed = this.financialEntries.remove(index);
+        removed.detach();
+        if (!isColumnar()) {
+            // Столбцы сами поправляют номера строк своих объектов
+            renumber(index);
+        }
+        unindex(removed);
+        changed();
+        listeners.forEach(l -> l.onTransactionRemoved(this, index, removed));
+        return removed;
+    }
+
+    // Вызывается из сеттеров FinancialEntry для транзакций, принадлежащих аккаунту.
+    // Строка берется из самой транзакции, поэтому изменение не требует поиска по списку
+    void updateTransaction(FinancialEntry financialEntry, Runnable mutation) {
+        int index = indexOfTransaction(financialEntry);
+        if (index < 0) {
+            mutation.run();
+            return;
+        }
+        beforeChange();
+        String previousCategory = financialEntry.getCategory();
+        unindex(financialEntry);
+        mutation.run();
+        if (isColumnar()) {
+            // Столбцы хранят копию значений, переписываем строку
+            financialEntries.set(index, financialEntry);
+        }
+        index(financialEntry);
+        changed();
+        listeners.forEach(l -> l.onTransactionChanged(this, index, financialEntry, previousCategory));
+    }
+
+    @JsonIgnore
+    public double getTotalIncome() {
+        return Money.toDouble(totalIncomeCents);
+    }
+
+    @JsonIgnore
+    public double getTotalOutcome() {
+        return Money.toDouble(totalOutcomeCents);
+    }
+
+    @JsonIgnore
+    public double getBalance() {
+        return Money.toDouble(getBalanceCents());
+    }
+
+    @JsonIgnore
+    public long getTotalIncomeCents() {
+        return totalIncomeCents;
+    }
+
+    @JsonIgnore
+    public long getTotalOutcomeCents() {
+        return totalOutcomeCents;
+    }
+
+    @JsonIgnore
+    public long getBalanceCents() {
+        return totalIncomeCents - totalOutcomeCents;
+    }
+
+    // Итоги по категориям, отсортированные по названию
+    @JsonIgnore
+    public Map<String, CategoryTotals> getCategoryTotals() {
+        return Collections.unmodifiableMap(categoryTotals);
+    }
+
+    public CategoryTotals getCategoryTotals(String category) {
+        return getCategoryTotals(CategoryDictionary.find(category));
+    }
+
+    public CategoryTotals getCategoryTotals(int categoryId) {
+        return totalsById.get(categoryId);
+    }
+
+    /**
+     * Транзакции за период в порядке времени. Границы включаются, null означает
+     * отсутствие границы. Транзакции без времени в выборку не попадают.
+     */
+    public List<FinancialEntry> getTransactionsBetween(LocalDateTime from, LocalDateTime to) {
+        if (isColumnar()) {
+            return ((ColumnarLedger) financialEntries).between(from, to);
+        }
+        int start = from != null ? lowerBound(from) : 0;
+        int end = to != null ? upperBound(to) : timeline.size();
+        return start < end ? new ArrayList<>(timeline.subList(start, end)) : new ArrayList<>();
+    }
+
+    // Транзакции выбранных категорий в порядке добавления
+    public List<FinancialEntry> getTransactionsInCategories(Set<String> categories) {
+        if (isColumnar()) {
+            return ((ColumnarLedger) financialEntries).inCategories(categories);
+        }
+        BitSet ids = CategoryDictionary.idsOf(categories);
+        List<FinancialEntry> result = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        for (FinancialEntry financialEntry : financialEntries) {
+            int id = financialEntry.getCategoryId();
+            if (id != CategoryDictionary.NO_CATEGORY && ids.get(id)) {
+                result.add(financialEntry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Прибавляет к into итоги категории за дни from..to (включительно) из дневных сводок.
+     * null означает отсутствие границы.
+     */
+    public void sumDays(int categoryId, LocalDate from, LocalDate to, CategoryTotals into) {
+        PeriodRollups rollups = getRollups(categoryId);
+        if (rollups != null) {
+            rollups.sumDays(from != null ? from.toEpochDay() : Long.MIN_VALUE,
+                    to != null ? to.toEpochDay() : Long.MAX_VALUE, into);
+        }
+    }
+
+    /**
+     * Прибавляет к into итоги категории за месяцы from..to (включительно) из месячных сводок.
+     * null означает отсутствие границы.
+     */
+    public void sumMonths(int categoryId, YearMonth from, YearMonth to, CategoryTotals into) {
+        PeriodRollups rollups = getRollups(categoryId);
+        if (rollups != null) {
+            rollups.sumMonths(from != null ? PeriodRollups.monthKey(from.atDay(1)) : Long.MIN_VALUE,
+                    to != null ? PeriodRollups.monthKey(to.atDay(1)) : Long.MAX_VALUE, into);
+        }
+    }
+
+    /**
+     * Прибавляет к into итоги категории по транзакциям за период (границы включаются).
+     * Просматривает транзакции, поэтому подходит для неполных дней на краях периода.
+     */
+    public void sumTransactions(int categoryId, LocalDateTime from, LocalDateTime to, CategoryTotals into) {
+        if (getRollups(categoryId) == null) {
+            return;
+        }
+        for (FinancialEntry financialEntry : getTransactionsBetween(from, to)) {
+            if (financialEntry.getCategoryId() == categoryId) {
+                into.add(financialEntry.getAmountCents(), Boolean.TRUE.equals(financialEntry.getIsIncome()));
+            }
+        }
+    }
+
+    /**
+     * Баланс в копейках по транзакциям со временем не позже timestamp.
+     * Дни до даты берутся из префиксных сумм, просматриваются только транзакции
+     * самого дня timestamp. Транзакции без времени не учитываются.
+     */
+    public long getBalanceCentsAt(LocalDateTime timestamp) {
+        LocalDateTime dayStart = timestamp.toLocalDate().atStartOfDay();
+        return balanceIndex.sumBefore(timestamp.toLocalDate().toEpochDay()) + sumNetCents(dayStart, timestamp);
+    }
+
+    /**
+     * Доходы минус расходы в копейках за период, границы включаются, null — без границы.
+     */
+    public long getNetFlowCents(LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            return 0;
+        }
+        long flow = to != null ? getBalanceCentsAt(to) : balanceIndex.total();
+        if (from != null) {
+            // Вычитается все, что было строго раньше from
+            LocalDateTime dayStart = from.toLocalDate().atStartOfDay();
+            flow -= balanceIndex.sumBefore(from.toLocalDate().toEpochDay());
+            if (from.isAfter(dayStart)) {
+                flow -= sumNetCents(dayStart, from.minusNanos(1));
+            }
+        }
+        return flow;
+    }
+
+    private long sumNetCents(LocalDateTime from, LocalDateTime to) {
+        long sum = 0;
+        for (FinancialEntry financialEntry : getTransactionsBetween(from, to)) {
+            sum += Boolean.TRUE.equals(financialEntry.getIsIncome())
+                    ? financialEntry.getAmountCents() : -financialEntry.getAmountCents();
+        }
+        return sum;
+    }
+
+    private PeriodRollups getRollups(int categoryId) {
+        return rollupsById.get(categoryId);
+    }
+
+    /**
+     * Пересчитывает итоги с нуля и сравнивает с накопленными.
+     * При расхождении накопленные итоги заменяются пересчитанными.
+     *
+     * @return true, если накопленные итоги были верны
+     */
+    public boolean verifyTotals() {
+        long income = totalIncomeCents;
+        long outcome = totalOutcomeCents;
+        Map<String, CategoryTotals> byCategory = categoryTotals;
+        rebuildTotals();
+        if (income != totalIncomeCents
+                || outcome != totalOutcomeCents
+                || !byCategory.keySet().equals(categoryTotals.keySet())) {
+            return false;
+        }
+        for (Map.Entry<String, CategoryTotals> entry : categoryTotals.entrySet()) {
+            CategoryTotals expected = entry.getValue();
+            CategoryTotals actual = byCategory.get(entry.getKey());
+            if (expected.getIncomeCount() != actual.getIncomeCount()
+                    || expected.getOutcomeCount() != actual.getOutcomeCount()
+                    || expected.getIncomeCents() != actual.getIncomeCents()
+                    || expected.getOutcomeCents() != actual.getOutcomeCents()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rebuildTotals() {
+        totalIncomeCents = 0;
+        totalOutcomeCents = 0;
+        categoryTotals = new TreeMap<>();
+        totalsById = new CategoryIndex<>();
+        rollupsById = new CategoryIndex<>();
+        balanceIndex = new BalanceIndex();
+        if (isColumnar()) {
+            // Проход по столбцам без создания объектов транзакций; порядок по времени хранит сам ledger
+            ((ColumnarLedger) financialEntries).forEachRow(this::indexTotals);
+            timeline = new ArrayList<>();
+            return;
+        }
+        financialEntries.forEach(this::indexTotals);
+        timeline = new ArrayList<>(financialEntries.size());
+        for (FinancialEntry financialEntry : financialEntries) {
+            if (financialEntry.getTimestamp() != null) {
+                timeline.add(financialEntry);
+            }
+        }
+        // Сортировка устойчивая: транзакции с одинаковым временем остаются в порядке добавления
+        timeline.sort(Comparator.comparing(FinancialEntry::getTimestamp));
+    }
+
+    private void index(FinancialEntry financialEntry) {
+        indexTotals(financialEntry);
+        LocalDateTime timestamp = financialEntry.getTimestamp();
+        if (timestamp != null && !isColumnar()) {
+            // Обычно транзакции приходят по порядку, и вставка происходит в конец
+            timeline.add(upperBound(timestamp), financialEntry);
+        }
+    }
+
+    private void indexTotals(FinancialEntry financialEntry) {
+        indexTotals(financialEntry.getAmountCents(), Boolean.TRUE.equals(financialEntry.getIsIncome()),
+                financialEntry.getCategoryId(), epochDay(financialEntry));
+    }
+
+    private static long epochDay(FinancialEntry financialEntry) {
+        LocalDateTime timestamp = financialEntry.getTimestamp();
+        return timestamp != null ? timestamp.toLocalDate().toEpochDay() : PeriodRollups.NO_DAY;
+    }
+
+    private void indexTotals(long amountCents, boolean income, int categoryId, long epochDay) {
+        if (income) {
+            totalIncomeCents += amountCents;
+        } else {
+            totalOutcomeCents += amountCents;
+        }
+        if (epochDay != PeriodRollups.NO_DAY) {
+            balanceIndex.add(epochDay, income ? amountCents : -amountCents);
+        }
+        if (categoryId == CategoryDictionary.NO_CATEGORY) {
+            return;
+        }
+        CategoryTotals totals = totalsById.get(categoryId);
+        if (totals == null) {
+            totals = new CategoryTotals();
+            totalsById.put(categoryId, totals);
+            categoryTotals.put(CategoryDictionary.name(categoryId), totals);
+        }
+        totals.add(amountCents, income);
+        if (epochDay != PeriodRollups.NO_DAY) {
+            PeriodRollups rollups = rollupsById.get(categoryId);
+            if (rollups == null) {
+                rollups = new PeriodRollups();
+                rollupsById.put(categoryId, rollups);
+            }
+            rollups.add(epochDay, amountCents, income);
+        }
+    }
+
+    private void unindex(FinancialEntry financialEntry) {
+        LocalDateTime timestamp = financialEntry.getTimestamp();
+        if (timestamp != null && !isColumnar()) {
+            for (int i = lowerBound(timestamp); i < timeline.size() && timeline.get(i).getTimestamp().equals(timestamp); i++) {
+                if (timeline.get(i) == financialEntry) {
+                    timeline.remove(i);
+                    break;
+                }
+            }
+        }
+
+        long amountCents = financialEntry.getAmountCents();
+        boolean income = Boolean.TRUE.equals(financialEntry.getIsIncome());
+        if (income) {
+            totalIncomeCents -= amountCents;
+        } else {
+            totalOutcomeCents -= amountCents;
+        }
+        if (timestamp != null) {
+            balanceIndex.add(timestamp.toLocalDate().toEpochDay(), income ? -amountCents : amountCents);
+        }
+        int categoryId = financialEntry.getCategoryId();
+        CategoryTotals totals = getCategoryTotals(categoryId);
+        if (totals != null) {
+            totals.remove(amountCents, income);
+            if (totals.isEmpty()) {
+                totalsById.remove(categoryId);
+                categoryTotals.remove(financialEntry.getCategory());
+            }
+        }
+        PeriodRollups rollups = getRollups(categoryId);
+        if (rollups != null && timestamp != null) {
+            rollups.remove(timestamp.toLocalDate().toEpochDay(), amountCents, income);
+            if (rollups.isEmpty()) {
+                rollupsById.remove(categoryId);
+            }
+        }
+    }
+
+    // Первая позиция в timeline со временем не раньше timestamp
+    private int lowerBound(LocalDateTime timestamp) {
+        int low = 0;
+        int high = timeline.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeline.get(mid).getTimestamp().isBefore(timestamp)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Первая позиция в timeline со временем позже timestamp
+    private int upperBound(LocalDateTime timestamp) {
+        int low = 0;
+        int high = timeline.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeline.get(mid).getTimestamp().isAfter(timestamp)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public int indexOfTransaction(FinancialEntry financialEntry) {
+        if (isColumnar()) {
+            return ((ColumnarLedger) financialEntries).indexOfView(financialEntry);
+        }
+        int row = financialEntry.row();
+        return row >= 0 && row < financialEntries.size() && financialEntries.get(row) == financialEntry ? row : -1;
+    }
+
+    // Проставляет транзакциям списка номера строк начиная с from
+    private void renumber(int from) {
+        for (int i = from; i < financialEntries.size(); i++) {
+            financialEntries.get(i).attach(this, i);
+        }
     }
 
     public void setBudget(String category, double amount) {
@@ -33,7 +723,11 @@ public class FinancialAccount implements Serializable {
         if (amount < 0) {
             throw new IllegalArgumentException("Бюджет не может быть отрицательным");
         }
-        this.budgetsCategories.put(category.trim(), amount);
+        String name = CategoryDictionary.intern(category.trim());
+        beforeChange();
+        this.budgetsCategories.put(name, amount);
+        changed();
+        listeners.forEach(l -> l.onBudgetSet(this, name, amount));
     }
 
     public Double getBudget(String category) {
@@ -42,4 +736,47 @@ public class FinancialAccount implements Serializable {
         }
         return this.budgetsCategories.get(category);
     }
-}
\ No newline at end of file
+
+    public boolean removeBudget(String category) {
+        if (category == null || !this.budgetsCategories.containsKey(category)) {
+            return false;
+        }
+        beforeChange();
+        this.budgetsCategories.remove(category);
+        changed();
+        listeners.forEach(l -> l.onBudgetRemoved(this, category));
+        return true;
+    }
+
+    private void changed() {
+        version++;
+        MODIFICATIONS.increment();
+    }
+
+    public void addListener(FinancialAccountListener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(FinancialAccountListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.instanceId = INSTANCE_IDS.incrementAndGet();
+        putBudgets(budgetsCategories);
+        if (isColumnar()) {
+            ((ColumnarLedger) financialEntries).bind(this);
+        } else if (columnarByDefault) {
+            ColumnarLedger ledger = new ColumnarLedger(this);
+            ledger.addAll(financialEntries);
+            this.financialEntries = ledger;
+        } else {
+            renumber(0);
+        }
+        rebuildTotals();
+    }
+}
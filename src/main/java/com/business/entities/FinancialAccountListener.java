@@ -0,0 +1,35 @@
+package com.business.entities;
+
+import java.util.List;
+
+/**
+ * Слушатель изменений финансового аккаунта.
+ * Вызывается после того, как изменение уже применено к аккаунту.
+ */
+public interface FinancialAccountListener {
+
+    default void onTransactionAdded(FinancialAccount account, FinancialEntry entry) {
+    }
+
+    // Пакет из addTransactions; по умолчанию — как отдельные добавления
+    default void onTransactionsAdded(FinancialAccount account, List<FinancialEntry> entries) {
+        entries.forEach(entry -> onTransactionAdded(account, entry));
+    }
+
+    default void onTransactionRemoved(FinancialAccount account, int index, FinancialEntry entry) {
+    }
+
+    default void onTransactionChanged(FinancialAccount account, int index, FinancialEntry entry) {
+    }
+
+    // То же с категорией транзакции до изменения; по умолчанию — как изменение без нее
+    default void onTransactionChanged(FinancialAccount account, int index, FinancialEntry entry, String previousCategory) {
+        onTransactionChanged(account, index, entry);
+    }
+
+    default void onBudgetSet(FinancialAccount account, String category, double amount) {
+    }
+
+    default void onBudgetRemoved(FinancialAccount account, String category) {
+    }
+}
@@ -1,8 +1,17 @@
 package com.business.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 
@@ -10,16 +19,138 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 public class FinancialEntry implements Serializable {
     private static final long serialVersionUID = 1L;
-    private Double amount;
+    // В Java-сериализации сумма по-прежнему пишется полем Double amount: старые файлы читаются без изменений
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("amount", Double.class),
+            new ObjectStreamField("category", String.class),
+            new ObjectStreamField("isIncome", Boolean.class),
+            new ObjectStreamField("timestamp", LocalDateTime.class)
+    };
+
+    // Сумма в копейках (см. Money)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long amountCents;
     private String category;
     private Boolean isIncome;
     private LocalDateTime timestamp;
 
+    // Аккаунт, в котором лежит транзакция: изменения полей проходят через него
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient FinancialAccount owner;
+
+    // Номер строки в аккаунте: изменение полей находит строку без поиска по списку
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient int row = -1;
+
+    // Номер категории в CategoryDictionary: сравнения и группировка идут по нему
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient int categoryId = CategoryDictionary.NO_CATEGORY;
+
     public FinancialEntry(Double amount, String category, Boolean isIncome) {
-        this.amount = amount;
-        this.category = category;
+        this(amount, category, isIncome, LocalDateTime.now());
+    }
+
+    public FinancialEntry(Double amount, String category, Boolean isIncome, LocalDateTime timestamp) {
+        this.amountCents = amount != null ? Money.ofDouble(amount) : 0;
+        assignCategory(category);
         this.isIncome = isIncome;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = timestamp;
+    }
+
+    public static FinancialEntry ofCents(long amountCents, String category, Boolean isIncome, LocalDateTime timestamp) {
+        FinancialEntry financialEntry = new FinancialEntry();
+        financialEntry.amountCents = amountCents;
+        financialEntry.assignCategory(category);
+        financialEntry.isIncome = isIncome;
+        financialEntry.timestamp = timestamp;
+        return financialEntry;
+    }
+
+    // Сумма в рублях для совместимости; точное значение — getAmountCents
+    public Double getAmount() {
+        return Money.toDouble(amountCents);
+    }
+
+    public void setAmount(Double amount) {
+        setAmountCents(amount != null ? Money.ofDouble(amount) : 0);
+    }
+
+    @JsonIgnore
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public void setAmountCents(long amountCents) {
+        change(() -> this.amountCents = amountCents);
+    }
+
+    public void setCategory(String category) {
+        change(() -> assignCategory(category));
+    }
+
+    @JsonIgnore
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public void setIsIncome(Boolean isIncome) {
+        change(() -> this.isIncome = isIncome);
+    }
+
+    public void setTimestamp(LocalDateTime timestamp) {
+        change(() -> this.timestamp = timestamp);
+    }
+
+    /**
+     * Переносит сумму, категорию, тип и время из source одним изменением:
+     * индексы аккаунта перестраиваются и слушатели уведомляются один раз.
+     */
+    public void assign(FinancialEntry source) {
+        change(() -> {
+            this.amountCents = source.amountCents;
+            assignCategory(source.category);
+            this.isIncome = source.isIncome;
+            this.timestamp = source.timestamp;
+        });
+    }
+
+    void attach(FinancialAccount account, int row) {
+        this.owner = account;
+        this.row = row;
+    }
+
+    void moveTo(int row) {
+        this.row = row;
+    }
+
+    int row() {
+        return row;
+    }
+
+    void detach() {
+        this.owner = null;
+        this.row = -1;
+    }
+
+    private void assignCategory(String category) {
+        this.categoryId = CategoryDictionary.id(category);
+        this.category = CategoryDictionary.name(categoryId);
+    }
+
+    private void change(Runnable mutation) {
+        FinancialAccount account = owner;
+        if (account == null) {
+            mutation.run();
+        } else {
+            account.updateTransaction(this, mutation);
+        }
     }
 
     @Override
@@ -27,27 +158,45 @@ public class FinancialEntry implements Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         FinancialEntry t = (FinancialEntry) o;
-        return t.getCategory().equals(this.category)
-                && t.getAmount().equals(this.amount)
+        return t.categoryId == this.categoryId
+                && t.amountCents == this.amountCents
                 && t.getTimestamp().equals(this.timestamp)
                 && t.getIsIncome().equals(this.isIncome);
     }
 
     @Override
     public int hashCode() {
-        int result = amount != null ? amount.hashCode() : 0;
+        int result = Long.hashCode(amountCents);
         result = 31 * result + (category != null ? category.hashCode() : 0);
         result = 31 * result + (isIncome != null ? isIncome.hashCode() : 0);
         result = 31 * result + (timestamp != null ? timestamp.hashCode() : 0);
         return result;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("amount", getAmount());
+        fields.put("category", category);
+        fields.put("isIncome", isIncome);
+        fields.put("timestamp", timestamp);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Double amount = (Double) fields.get("amount", null);
+        amountCents = amount != null ? Money.ofDouble(amount) : 0;
+        isIncome = (Boolean) fields.get("isIncome", null);
+        timestamp = (LocalDateTime) fields.get("timestamp", null);
+        assignCategory((String) fields.get("category", null));
+    }
+
     @Override
     public String toString() {
         String type = isIncome ? "Доход" : "Расход";
         String sign = isIncome ? "+" : "-";
-        return String.format("%s: %s%.2f (%s) [%s]",
-                type, sign, amount, category,
+        return String.format("%s: %s%s (%s) [%s]",
+                type, sign, Money.format(amountCents), category,
                 timestamp.format(java.time.format.DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm")));
     }
-}
\ No newline at end of file
+}
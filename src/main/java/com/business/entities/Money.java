@@ -0,0 +1,108 @@
+package com.business.entities;
+
+/**
+ * Денежные суммы в копейках (примитивный long). Сложение копеек точное и не создает объектов,
+ * в double сумма переводится только на границе с API, где суммы исторически double.
+ */
+public final class Money {
+    public static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    // Сумма в рублях округляется до копеек
+    public static long ofDouble(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Некорректная сумма: " + amount);
+        }
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    // "1234.50", "-0.05": всегда две цифры после точки, без разделителей разрядов
+    public static String format(long cents) {
+        return formatTo(new StringBuilder(24), cents).toString();
+    }
+
+    public static StringBuilder formatTo(StringBuilder out, long cents) {
+        long units = cents / CENTS_PER_UNIT;
+        int fraction = (int) Math.abs(cents % CENTS_PER_UNIT);
+        if (cents < 0 && units == 0) {
+            out.append('-');
+        }
+        out.append(units).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    /**
+     * Разбирает сумму вида {@code [+-]123[.45]} (допускается и запятая) без промежуточного double.
+     * Знаки после второго округляются по третьему. Экспоненциальная запись (например, 1.0E7
+     * из старых JSON-файлов) разбирается через double.
+     *
+     * @throws NumberFormatException если текст не является суммой
+     */
+    public static long parse(CharSequence text) {
+        try {
+            return parseCents(text);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Слишком большая сумма: " + text);
+        }
+    }
+
+    private static long parseCents(CharSequence text) {
+        int length = text.length();
+        int position = 0;
+        boolean negative = false;
+        if (position < length && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+            negative = text.charAt(position) == '-';
+            position++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        while (position < length && isDigit(text.charAt(position))) {
+            units = Math.addExact(Math.multiplyExact(units, 10), text.charAt(position) - '0');
+            position++;
+            digits++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (position < length && (text.charAt(position) == '.' || text.charAt(position) == ',')) {
+            position++;
+            while (position < length && isDigit(text.charAt(position))) {
+                int digit = text.charAt(position) - '0';
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + digit;
+                } else if (fractionDigits == 2) {
+                    roundUp = digit >= 5;
+                }
+                position++;
+                fractionDigits++;
+            }
+        }
+
+        if (position < length && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+            return ofDouble(Double.parseDouble(text.toString()));
+        }
+        if (position != length || digits + fractionDigits == 0) {
+            throw new NumberFormatException("Некорректная сумма: " + text);
+        }
+        for (int i = fractionDigits; i < 2; i++) {
+            fraction *= 10;
+        }
+        long cents = Math.addExact(Math.multiplyExact(units, CENTS_PER_UNIT), fraction + (roundUp ? 1 : 0));
+        return negative ? -cents : cents;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
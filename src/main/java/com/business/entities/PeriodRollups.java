@@ -0,0 +1,61 @@
+package com.business.entities;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сводки одной категории по дням и по месяцам: суммы и количество доходов и расходов.
+ * Поддерживаются аккаунтом при каждом изменении, поэтому итоги за период складываются
+ * из десятков сводок вместо прохода по всем транзакциям.
+ */
+final class PeriodRollups {
+    // Транзакции без времени в сводки не попадают
+    static final long NO_DAY = Long.MIN_VALUE;
+
+    // День — номер дня эпохи, месяц — год * 12 + (месяц - 1)
+    private final TreeMap<Long, CategoryTotals> days = new TreeMap<>();
+    private final TreeMap<Long, CategoryTotals> months = new TreeMap<>();
+
+    static long monthKey(LocalDate date) {
+        return date.getYear() * 12L + date.getMonthValue() - 1;
+    }
+
+    void add(long epochDay, long amountCents, boolean income) {
+        days.computeIfAbsent(epochDay, day -> new CategoryTotals()).add(amountCents, income);
+        months.computeIfAbsent(monthKey(LocalDate.ofEpochDay(epochDay)), month -> new CategoryTotals())
+                .add(amountCents, income);
+    }
+
+    void remove(long epochDay, long amountCents, boolean income) {
+        remove(days, epochDay, amountCents, income);
+        remove(months, monthKey(LocalDate.ofEpochDay(epochDay)), amountCents, income);
+    }
+
+    private static <K> void remove(Map<K, CategoryTotals> rollups, K key, long amountCents, boolean income) {
+        CategoryTotals totals = rollups.get(key);
+        if (totals != null) {
+            totals.remove(amountCents, income);
+            if (totals.isEmpty()) {
+                rollups.remove(key);
+            }
+        }
+    }
+
+    // Границы включаются; Long.MIN_VALUE и Long.MAX_VALUE — без границы
+    void sumDays(long fromDay, long toDay, CategoryTotals into) {
+        if (fromDay <= toDay) {
+            days.subMap(fromDay, true, toDay, true).values().forEach(into::merge);
+        }
+    }
+
+    void sumMonths(long fromMonth, long toMonth, CategoryTotals into) {
+        if (fromMonth <= toMonth) {
+            months.subMap(fromMonth, true, toMonth, true).values().forEach(into::merge);
+        }
+    }
+
+    boolean isEmpty() {
+        return days.isEmpty();
+    }
+}
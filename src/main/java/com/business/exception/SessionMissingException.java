@@ -0,0 +1,7 @@
+package com.business.exception;
+
+public class SessionMissingException extends RuntimeException {
+    public SessionMissingException(String message) {
+        super(message);
+    }
+}
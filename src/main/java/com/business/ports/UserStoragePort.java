@@ -2,7 +2,9 @@ package com.business.ports;
 
 import com.business.entities.AccountHolder;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public interface UserStoragePort {
     void save(String username, AccountHolder accountHolder);
@@ -11,4 +13,25 @@ public interface UserStoragePort {
     Map<String, AccountHolder> findAll();
     void setAllUsers(Map<String, AccountHolder> users);
     boolean containsUser(String username);
+
+    /**
+     * Пользователи только для чтения. Реализации по возможности отдают представление
+     * без копирования, которое отражает последующие изменения хранилища.
+     */
+    default Map<String, AccountHolder> view() {
+        return Collections.unmodifiableMap(findAll());
+    }
+
+    // Обход пользователей по одному, без сборки общей карты там, где это возможно
+    default void forEachUser(BiConsumer<String, AccountHolder> action) {
+        view().forEach(action);
+    }
+
+    /**
+     * Выполняет изменения нескольких аккаунтов так, чтобы хранилище сохранило их как одно целое.
+     * Откат изменений в памяти при исключении остается за вызывающим.
+     */
+    default void atomically(Runnable changes) {
+        changes.run();
+    }
 }
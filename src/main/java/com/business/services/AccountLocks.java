@@ -0,0 +1,111 @@
+package com.business.services;
+
+import com.business.entities.AccountHolder;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Полосатые блокировки пользователей: пользователь попадает в полосу по имени.
+ * Общие для всех сервисов, поэтому операции над одним аккаунтом из разных сессий не пересекаются.
+ */
+final class AccountLocks {
+    private static final int STRIPES = 256;
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private AccountLocks() {
+    }
+
+    static int stripe(AccountHolder accountHolder) {
+        return stripe(accountHolder.getUsername());
+    }
+
+    static int stripe(String username) {
+        int hash = username.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    static ReentrantLock lockFor(AccountHolder accountHolder) {
+        return LOCKS[stripe(accountHolder)];
+    }
+
+    // Для хранилищ, которые пишут пользователя на диск вне сервисов
+    static ReentrantLock lockFor(String username) {
+        return LOCKS[stripe(username)];
+    }
+
+    static void run(AccountHolder accountHolder, Runnable action) {
+        ReentrantLock lock = lockFor(accountHolder);
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static <T> T call(AccountHolder accountHolder, Supplier<T> action) {
+        ReentrantLock lock = lockFor(accountHolder);
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Обе полосы берутся по возрастанию номера, поэтому встречные переводы не дают взаимной блокировки
+    static void run(AccountHolder first, AccountHolder second, Runnable action) {
+        int a = stripe(first);
+        int b = stripe(second);
+        if (a == b) {
+            run(first, action);
+            return;
+        }
+        ReentrantLock lower = LOCKS[Math.min(a, b)];
+        ReentrantLock upper = LOCKS[Math.max(a, b)];
+        lower.lock();
+        try {
+            upper.lock();
+            try {
+                action.run();
+            } finally {
+                upper.unlock();
+            }
+        } finally {
+            lower.unlock();
+        }
+    }
+
+    static boolean isAnyHeldByCurrentThread() {
+        for (ReentrantLock lock : LOCKS) {
+            if (lock.isHeldByCurrentThread()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Все полосы по возрастанию номера: срез, в котором ни один аккаунт не меняется.
+    // Нельзя вызывать, удерживая блокировку какой-либо полосы
+    static void runAll(Runnable action) {
+        int locked = 0;
+        try {
+            while (locked < STRIPES) {
+                LOCKS[locked].lock();
+                locked++;
+            }
+            action.run();
+        } finally {
+            while (locked > 0) {
+                LOCKS[--locked].unlock();
+            }
+        }
+    }
+}
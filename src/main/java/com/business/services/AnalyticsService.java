@@ -0,0 +1,349 @@
+package com.business.services;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.CategoryDictionary;
+import com.business.entities.CategoryTotals;
+import com.business.entities.FinancialAccount;
+import com.business.entities.Money;
+import com.business.ports.UserStoragePort;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+
+/**
+ * Сводная аналитика по всем пользователям хранилища: общий баланс, самые расходные
+ * категории и пользователи с превышенным бюджетом. Пользователи читаются из хранилища
+ * потоком (без общей карты) и собираются в части по USERS_PER_TASK. Части считаются
+ * параллельно в ForkJoinPool в примитивные накопители (суммы в копейках, массивы по номеру
+ * категории), а частичные итоги складываются по мере готовности. Каждый пользователь
+ * читается под своей блокировкой, поэтому его итоги согласованы, но отчет в целом — не снимок
+ * на один момент времени.
+ */
+public class AnalyticsService {
+    // Меньшие части не окупают накладные расходы на задачу
+    private static final int USERS_PER_TASK = 1024;
+
+    private final UserStoragePort userStoragePort;
+    private final ForkJoinPool pool;
+
+    public AnalyticsService(UserStoragePort userStoragePort) {
+        this(userStoragePort, ForkJoinPool.commonPool());
+    }
+
+    public AnalyticsService(UserStoragePort userStoragePort, ForkJoinPool pool) {
+        this.userStoragePort = userStoragePort;
+        this.pool = pool;
+    }
+
+    /**
+     * Считает отчет по всем пользователям за один параллельный проход.
+     *
+     * @param topCategories сколько самых расходных категорий включить в отчет
+     */
+    public Report analyze(int topCategories) {
+        if (topCategories < 0) {
+            throw new IllegalArgumentException("Число категорий не может быть отрицательным");
+        }
+        long started = System.nanoTime();
+        Partitioner partitioner = new Partitioner(CategoryDictionary.size());
+        userStoragePort.forEachUser(partitioner);
+        Partial total = partitioner.finish();
+        return new Report(total, topCategories, Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    public double getTotalBalance() {
+        return analyze(0).getTotalBalance();
+    }
+
+    public List<CategoryAmount> getTopCategories(int limit) {
+        return analyze(limit).getTopCategories();
+    }
+
+    public List<OverBudget> getUsersOverBudget() {
+        return analyze(0).getOverBudget();
+    }
+
+    /**
+     * Собирает пользователей из обхода хранилища в части и отдает каждую часть в пул.
+     * Одновременно в работе не больше двух частей на поток пула: если пул не успевает,
+     * обход ждет, а не копит ссылки на всех пользователей.
+     */
+    private final class Partitioner implements BiConsumer<String, AccountHolder> {
+        private final int categories;
+        private final Deque<ForkJoinTask<Partial>> running = new ArrayDeque<>();
+        private Partial total;
+        private AccountHolder[] chunk = new AccountHolder[USERS_PER_TASK];
+        private int size;
+
+        Partitioner(int categories) {
+            this.categories = categories;
+            this.total = new Partial(categories);
+        }
+
+        @Override
+        public void accept(String username, AccountHolder accountHolder) {
+            chunk[size++] = accountHolder;
+            if (size == USERS_PER_TASK) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            if (running.size() >= 2 * pool.getParallelism()) {
+                total = total.merge(running.pollFirst().join());
+            }
+            AccountHolder[] users = chunk;
+            int count = size;
+            running.addLast(pool.submit(() -> Partial.of(users, count, categories)));
+            chunk = new AccountHolder[USERS_PER_TASK];
+            size = 0;
+        }
+
+        Partial finish() {
+            if (size > 0) {
+                submit();
+            }
+            while (!running.isEmpty()) {
+                total = total.merge(running.pollFirst().join());
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Частичные итоги по части пользователей.
+     */
+    private static final class Partial {
+        private int users;
+        private long entries;
+        private long incomeCents;
+        private long outcomeCents;
+        private long[] outcomeByCategory;
+        private int[] outcomeCountByCategory;
+        private final List<OverBudget> overBudget = new ArrayList<>();
+
+        Partial(int categories) {
+            outcomeByCategory = new long[categories];
+            outcomeCountByCategory = new int[categories];
+        }
+
+        // Итоги по первым count пользователям части
+        static Partial of(AccountHolder[] users, int count, int categories) {
+            Partial partial = new Partial(categories);
+            for (int i = 0; i < count; i++) {
+                partial.add(users[i]);
+            }
+            return partial;
+        }
+
+        void add(AccountHolder accountHolder) {
+            FinancialAccount account = accountHolder != null ? accountHolder.getFinancialAccount() : null;
+            if (account == null) {
+                return;
+            }
+            AccountLocks.run(accountHolder, () -> addAccount(accountHolder.getUsername(), account));
+        }
+
+        private void addAccount(String username, FinancialAccount account) {
+            users++;
+            entries += account.getFinancialEntries().size();
+            incomeCents += account.getTotalIncomeCents();
+            outcomeCents += account.getTotalOutcomeCents();
+            for (Map.Entry<String, CategoryTotals> entry : account.getCategoryTotals().entrySet()) {
+                CategoryTotals totals = entry.getValue();
+                if (totals.getOutcomeCount() == 0) {
+                    continue;
+                }
+                int id = CategoryDictionary.find(entry.getKey());
+                if (id == CategoryDictionary.NO_CATEGORY) {
+                    continue;
+                }
+                ensureCategories(id + 1);
+                outcomeByCategory[id] += totals.getOutcomeCents();
+                outcomeCountByCategory[id] += totals.getOutcomeCount();
+            }
+            for (Map.Entry<String, Double> budget : account.getBudgetsCategories().entrySet()) {
+                CategoryTotals totals = account.getCategoryTotals(budget.getKey());
+                long spentCents = totals != null ? totals.getOutcomeCents() : 0;
+                long budgetCents = Money.ofDouble(budget.getValue());
+                if (spentCents > budgetCents) {
+                    overBudget.add(new OverBudget(username, budget.getKey(), budgetCents, spentCents));
+                }
+            }
+        }
+
+        Partial merge(Partial other) {
+            users += other.users;
+            entries += other.entries;
+            incomeCents += other.incomeCents;
+            outcomeCents += other.outcomeCents;
+            ensureCategories(other.outcomeByCategory.length);
+            for (int i = 0; i < other.outcomeByCategory.length; i++) {
+                outcomeByCategory[i] += other.outcomeByCategory[i];
+                outcomeCountByCategory[i] += other.outcomeCountByCategory[i];
+            }
+            overBudget.addAll(other.overBudget);
+            return this;
+        }
+
+        // Категории, появившиеся во время подсчета, расширяют массивы
+        private void ensureCategories(int categories) {
+            if (categories > outcomeByCategory.length) {
+                outcomeByCategory = Arrays.copyOf(outcomeByCategory, categories);
+                outcomeCountByCategory = Arrays.copyOf(outcomeCountByCategory, categories);
+            }
+        }
+    }
+
+    /**
+     * Итоги по всем пользователям.
+     */
+    public static final class Report {
+        private final int users;
+        private final long entries;
+        private final long totalIncomeCents;
+        private final long totalOutcomeCents;
+        private final List<CategoryAmount> topCategories;
+        private final List<OverBudget> overBudget;
+        private final Duration elapsed;
+
+        private Report(Partial total, int topCategories, Duration elapsed) {
+            this.users = total.users;
+            this.entries = total.entries;
+            this.totalIncomeCents = total.incomeCents;
+            this.totalOutcomeCents = total.outcomeCents;
+            this.overBudget = Collections.unmodifiableList(total.overBudget);
+            this.elapsed = elapsed;
+
+            List<CategoryAmount> categories = new ArrayList<>();
+            for (int id = 0; id < total.outcomeByCategory.length; id++) {
+                if (total.outcomeCountByCategory[id] > 0) {
+                    categories.add(new CategoryAmount(CategoryDictionary.name(id),
+                            total.outcomeByCategory[id], total.outcomeCountByCategory[id]));
+                }
+            }
+            categories.sort(Comparator.comparingLong(CategoryAmount::getAmountCents).reversed()
+                    .thenComparing(CategoryAmount::getCategory));
+            this.topCategories = Collections.unmodifiableList(
+                    new ArrayList<>(categories.subList(0, Math.min(topCategories, categories.size()))));
+        }
+
+        public int getUsers() {
+            return users;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public long getTotalIncomeCents() {
+            return totalIncomeCents;
+        }
+
+        public long getTotalOutcomeCents() {
+            return totalOutcomeCents;
+        }
+
+        public long getTotalBalanceCents() {
+            return totalIncomeCents - totalOutcomeCents;
+        }
+
+        public double getTotalBalance() {
+            return Money.toDouble(getTotalBalanceCents());
+        }
+
+        // Категории по убыванию расходов всех пользователей
+        public List<CategoryAmount> getTopCategories() {
+            return topCategories;
+        }
+
+        public List<OverBudget> getOverBudget() {
+            return overBudget;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+    }
+
+    /**
+     * Расходы всех пользователей по категории.
+     */
+    public static final class CategoryAmount {
+        private final String category;
+        private final long amountCents;
+        private final int count;
+
+        CategoryAmount(String category, long amountCents, int count) {
+            this.category = category;
+            this.amountCents = amountCents;
+            this.count = count;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public long getAmountCents() {
+            return amountCents;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return category + ": " + Money.format(amountCents) + " (" + count + ")";
+        }
+    }
+
+    /**
+     * Превышенный бюджет пользователя по категории.
+     */
+    public static final class OverBudget {
+        private final String username;
+        private final String category;
+        private final long budgetCents;
+        private final long spentCents;
+
+        OverBudget(String username, String category, long budgetCents, long spentCents) {
+            this.username = username;
+            this.category = category;
+            this.budgetCents = budgetCents;
+            this.spentCents = spentCents;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public long getBudgetCents() {
+            return budgetCents;
+        }
+
+        public long getSpentCents() {
+            return spentCents;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: '%s' потрачено %s из %s",
+                    username, category, Money.format(spentCents), Money.format(budgetCents));
+        }
+    }
+}
@@ -1,45 +1,125 @@
 package com.business.services;
 
-import com.business.entities.AccountHolder;
-import com.infrastructure.InMemoryUserRepository;
+import com.business.entities.FinancialAccount;
+import com.infrastructure.DiskUserRepository;
+import com.infrastructure.SnapshotUserRepository;
 import com.interf.DisplayService;
+import com.interf.HttpApiServer;
 
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class ApplicationController {
+    // Каталог для хранения пользователей по отдельности (для баз, не помещающихся в память)
+    private static final String STORAGE_DIR_PROPERTY = "finance.storage.dir";
+    private static final String STORAGE_MEMORY_PROPERTY = "finance.storage.memoryMb";
+    private static final long DEFAULT_STORAGE_MEMORY_MB = 256;
+    // Хранить транзакции по столбцам (меньше памяти на больших историях)
+    private static final String COLUMNAR_LEDGER_PROPERTY = "finance.ledger.columnar";
+    // Порт HTTP API: при заданном порте приложение работает без консоли
+    private static final String HTTP_PORT_PROPERTY = "finance.http.port";
+    // Фоновые снимки: интервал в секундах (0 — выключены) и число изменений для досрочного снимка
+    private static final String SNAPSHOT_INTERVAL_PROPERTY = "finance.snapshot.intervalSeconds";
+    private static final String SNAPSHOT_CHANGES_PROPERTY = "finance.snapshot.changes";
+    private static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 60;
+    private static final long DEFAULT_SNAPSHOT_CHANGES = 10_000;
+    // Сколько последних резервных копий хранить
+    private static final String BACKUP_RETENTION_PROPERTY = "finance.backup.retention";
+    // Пороги оповещений о бюджете в процентах через запятую, например "50,80,100"
+    private static final String ALERT_THRESHOLDS_PROPERTY = "finance.alerts.thresholds";
+
     private final AuthenticationService authenticationService;
     private final FinancialOperationsService financialOperationsService;
     private final Scanner scanner;
     private final DataPersistenceService dataPersistenceService;
+    private final SnapshotUserRepository userRepository;
+    private final DiskUserRepository diskRepository;
     private final DisplayService displayService;
     private final UserInteractionHandler userInteractionHandler;
 
     public ApplicationController() {
-        this.authenticationService = new AuthenticationService(new InMemoryUserRepository());
+        FinancialAccount.setColumnarByDefault(Boolean.getBoolean(COLUMNAR_LEDGER_PROPERTY));
+        this.dataPersistenceService = new DataPersistenceService();
+        Integer backupRetention = Integer.getInteger(BACKUP_RETENTION_PROPERTY);
+        if (backupRetention != null) {
+            dataPersistenceService.setBackupRetention(backupRetention);
+        }
+        String storageDir = System.getProperty(STORAGE_DIR_PROPERTY);
+        if (storageDir != null) {
+            this.userRepository = null;
+            this.diskRepository = openDiskRepository(storageDir);
+            this.authenticationService = new AuthenticationService(diskRepository);
+        } else {
+            this.userRepository = new SnapshotUserRepository();
+            this.diskRepository = null;
+            this.authenticationService = new AuthenticationService(
+                    dataPersistenceService.enableJournal(userRepository));
+        }
         this.financialOperationsService = new FinancialOperationsService();
+        configureAlerts(financialOperationsService.getBudgetAlertEngine());
+        this.authenticationService.setBudgetAlertEngine(financialOperationsService.getBudgetAlertEngine());
         this.scanner = new Scanner(System.in);
-        this.dataPersistenceService = new DataPersistenceService();
         this.displayService = new DisplayService(this.authenticationService, this.financialOperationsService);
         this.userInteractionHandler = new UserInteractionHandler(authenticationService, financialOperationsService, scanner, dataPersistenceService, displayService);
 
         // Устанавливаем обработчик завершения работы для сохранения данных
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\nСохранение данных перед завершением...");
-            dataPersistenceService.save(authenticationService.getUserMap());
+            if (diskRepository != null) {
+                diskRepository.close();
+                System.out.println("✅ Данные сохранены в каталог: " + Paths.get(storageDir).toAbsolutePath());
+            } else {
+                dataPersistenceService.shutdown(authenticationService::getUserMap);
+            }
         }));
     }
 
+    private static void configureAlerts(BudgetAlertEngine engine) {
+        String thresholds = System.getProperty(ALERT_THRESHOLDS_PROPERTY);
+        if (thresholds == null) {
+            return;
+        }
+        try {
+            engine.setDefaultThresholds(Arrays.stream(thresholds.split(","))
+                    .map(String::trim)
+                    .mapToInt(Integer::parseInt)
+                    .toArray());
+        } catch (IllegalArgumentException e) {
+            System.err.println("⚠️ Некорректные пороги оповещений '" + thresholds + "': " + e.getMessage());
+        }
+    }
+
+    private static DiskUserRepository openDiskRepository(String storageDir) {
+        long memoryMb = Long.getLong(STORAGE_MEMORY_PROPERTY, DEFAULT_STORAGE_MEMORY_MB);
+        try {
+            return new DiskUserRepository(Paths.get(storageDir), memoryMb * 1024 * 1024, AccountLocks::lockFor);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть каталог пользователей: " + storageDir, e);
+        }
+    }
+
     // Метод запуска приложения
     public void start() {
         // Загрузка данных при старте
         loadInitialData();
 
+        Integer httpPort = Integer.getInteger(HTTP_PORT_PROPERTY);
+        if (httpPort != null) {
+            startServer(httpPort);
+            return;
+        }
+
         // Основной цикл приложения
         while (true) {
             try {
                 if (authenticationService.isLoggedIn()) {
-                    displayService.showMainMenu();
+                    String session = authenticationService.getCurrentSession();
+                    displayService.printAlerts(session);
+                    displayService.showMainMenu(session);
                     userInteractionHandler.handleMainMenu();
                 } else {
                     displayService.showLoginMenu();
@@ -60,17 +140,41 @@ public class ApplicationController {
         }
     }
 
+    private void startServer(int port) {
+        HttpApiServer server = new HttpApiServer(authenticationService, financialOperationsService, dataPersistenceService);
+        try {
+            server.start(port);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось запустить HTTP API на порту " + port, e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.out.println("✅ HTTP API запущен на порту " + server.getPort());
+    }
+
     private void loadInitialData() {
+        if (diskRepository != null) {
+            System.out.println("✅ Пользователей в хранилище: " + diskRepository.size());
+            return;
+        }
         try {
-            Map<String, AccountHolder> loadedUsers = dataPersistenceService.load();
-            if (loadedUsers != null && !loadedUsers.isEmpty()) {
-                authenticationService.setUserMap(loadedUsers);
-            } else {
+            // Пользователи из снимка подгружаются по мере обращения к ним
+            int loadedUsers = dataPersistenceService.loadInto(userRepository);
+            if (loadedUsers == 0) {
                 System.out.println("ℹ️  Данные не найдены, начинаем с пустой базы");
             }
         } catch (Exception e) {
             System.err.println("⚠️  Ошибка при загрузке данных: " + e.getMessage());
             System.err.println("Начинаем с пустой базы данных");
         }
+        startSnapshots();
+    }
+
+    private void startSnapshots() {
+        long intervalSeconds = Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, DEFAULT_SNAPSHOT_INTERVAL_SECONDS);
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        dataPersistenceService.startSnapshots(authenticationService::getUserMap, Duration.ofSeconds(intervalSeconds),
+                Long.getLong(SNAPSHOT_CHANGES_PROPERTY, DEFAULT_SNAPSHOT_CHANGES));
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.business.services;
 
 import com.business.exception.PasswordMismatchException;
+import com.business.exception.SessionMissingException;
 import com.business.exception.UserAlreadyExistsException;
 import com.business.exception.UserMissingException;
 import com.business.entities.AccountHolder;
@@ -14,10 +15,19 @@ import java.util.Map;
 @Setter
 public class AuthenticationService {
     private final UserStoragePort userStoragePort;
-    private AccountHolder currentAccountHolder;
+    private final SessionManager sessionManager;
+    // Бессрочная сессия консольного пользователя; остальные клиенты работают со своими токенами
+    private volatile String currentSession;
+    // Если задан, аккаунт подписывается на оповещения о бюджетах при входе
+    private volatile BudgetAlertEngine budgetAlertEngine;
 
     public AuthenticationService(UserStoragePort userStoragePort) {
+        this(userStoragePort, new SessionManager());
+    }
+
+    public AuthenticationService(UserStoragePort userStoragePort, SessionManager sessionManager) {
         this.userStoragePort = userStoragePort;
+        this.sessionManager = sessionManager;
     }
 
     public AccountHolder handleLogin(String username, String password) {
@@ -34,11 +44,29 @@ public class AuthenticationService {
         }
     }
 
+    // Представление только для чтения, без копирования всех пользователей
     public Map<String, AccountHolder> getUserMap() {
-        return userStoragePort.findAll();
+        return userStoragePort.view();
+    }
+
+    public AccountHolder findUser(String username) {
+        return username != null ? userStoragePort.find(username.trim()) : null;
+    }
+
+    public boolean userExists(String username) {
+        return username != null && userStoragePort.containsUser(username.trim());
     }
 
     public AccountHolder registration(String username, String password) {
+        AccountHolder newAccountHolder = registerUser(username, password);
+        setCurrentAccountHolder(newAccountHolder);
+        return newAccountHolder;
+    }
+
+    /**
+     * Создает пользователя, не затрагивая сессию консоли.
+     */
+    public AccountHolder registerUser(String username, String password) {
         validateCredentials(username, password);
 
         if (userStoragePort.containsUser(username)) {
@@ -48,11 +76,61 @@ public class AuthenticationService {
 
         AccountHolder newAccountHolder = new AccountHolder(username.trim(), password.trim());
         userStoragePort.save(username.trim(), newAccountHolder);
-        currentAccountHolder = newAccountHolder;
-        return currentAccountHolder;
+        return newAccountHolder;
     }
 
     public AccountHolder login(String username, String password) {
+        AccountHolder accountHolder = authenticate(username, password);
+        setCurrentAccountHolder(accountHolder);
+        return accountHolder;
+    }
+
+    /**
+     * Открывает новую сессию пользователя, не затрагивая сессию консоли.
+     *
+     * @return токен сессии
+     */
+    public String openSession(String username, String password) {
+        AccountHolder accountHolder = authenticate(username, password);
+        watchBudgets(accountHolder);
+        return sessionManager.open(accountHolder);
+    }
+
+    public AccountHolder getAccountHolder(String session) {
+        AccountHolder accountHolder = sessionManager.find(session);
+        if (accountHolder == null) {
+            throw new SessionMissingException("Сессия не найдена или истекла");
+        }
+        return accountHolder;
+    }
+
+    public void closeSession(String session) {
+        sessionManager.close(session);
+    }
+
+    // Пользователь сессии или null для неизвестной или истекшей сессии
+    public AccountHolder findAccountHolder(String session) {
+        return sessionManager.find(session);
+    }
+
+    public AccountHolder getCurrentAccountHolder() {
+        return findAccountHolder(currentSession);
+    }
+
+    public void setCurrentAccountHolder(AccountHolder accountHolder) {
+        sessionManager.close(currentSession);
+        watchBudgets(accountHolder);
+        currentSession = accountHolder != null ? sessionManager.openPersistent(accountHolder) : null;
+    }
+
+    private void watchBudgets(AccountHolder accountHolder) {
+        BudgetAlertEngine engine = budgetAlertEngine;
+        if (engine != null && accountHolder != null) {
+            engine.watch(accountHolder);
+        }
+    }
+
+    private AccountHolder authenticate(String username, String password) {
         validateCredentials(username, password);
 
         AccountHolder accountHolder = userStoragePort.find(username.trim());
@@ -64,17 +142,34 @@ public class AuthenticationService {
         if (!password.trim().equals(accountHolder.getPassword())) {
             throw new PasswordMismatchException("Неверный пароль");
         }
-
-        currentAccountHolder = accountHolder;
         return accountHolder;
     }
 
+    public void addUser(AccountHolder accountHolder) {
+        if (accountHolder == null) {
+            throw new IllegalArgumentException("Пользователь не может быть null");
+        }
+        userStoragePort.save(accountHolder.getUsername(), accountHolder);
+    }
+
+    public void deleteUser(String username) {
+        if (!userStoragePort.containsUser(username)) {
+            throw new UserMissingException("Пользователь '" + username + "' не найден");
+        }
+        userStoragePort.delete(username);
+        sessionManager.closeAll(username);
+        BudgetAlertEngine engine = budgetAlertEngine;
+        if (engine != null) {
+            engine.unwatch(username);
+        }
+    }
+
     public void unLogin() {
-        currentAccountHolder = null;
+        setCurrentAccountHolder(null);
     }
 
     public Boolean isLoggedIn() {
-        return currentAccountHolder != null;
+        return getCurrentAccountHolder() != null;
     }
 
     private void validateCredentials(String username, String password) {
@@ -0,0 +1,362 @@
+package com.business.services;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.CategoryTotals;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialAccountListener;
+import com.business.entities.FinancialEntry;
+import com.business.entities.Money;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Оповещения о бюджетах по событиям аккаунта. Движок подписывается на изменения
+ * FinancialAccount и при каждой транзакции проверяет пороги только ее категории:
+ * стоимость проверки не зависит от числа транзакций. Оповещение публикуется, когда
+ * категория переходит на более высокий порог; повторно тот же порог не оповещается,
+ * пока расходы не опустятся ниже него. Оповещения копятся в очереди пользователя,
+ * откуда их забирает консоль или HTTP API.
+ * Движок держит подписки слабо: подписку удерживает только сам аккаунт, поэтому аккаунт,
+ * вытесненный из хранилища или оставшийся после выхода пользователя, собирается вместе с ней.
+ */
+public class BudgetAlertEngine {
+    // Пороги в процентах от бюджета; 100 — бюджет исчерпан, сверх бюджета — перерасход
+    public static final int[] DEFAULT_THRESHOLDS = {80, 100};
+    // Непрочитанных оповещений на пользователя, более старые вытесняются
+    private static final int MAX_PENDING = 1000;
+
+    private final Map<String, WatcherReference> watchers = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Watcher> collected = new ReferenceQueue<>();
+    private final Map<String, Deque<Alert>> pending = new ConcurrentHashMap<>();
+    private final Map<String, int[]> thresholds = new ConcurrentHashMap<>();
+    private volatile int[] defaultThresholds = DEFAULT_THRESHOLDS.clone();
+
+    /**
+     * Подписывает движок на изменения аккаунта пользователя. Повторный вызов для того же
+     * аккаунта ничего не делает, для нового объекта аккаунта подписка переносится.
+     * Текущее состояние бюджетов запоминается без оповещений.
+     */
+    public void watch(AccountHolder accountHolder) {
+        FinancialAccount account = accountHolder != null ? accountHolder.getFinancialAccount() : null;
+        if (account == null) {
+            return;
+        }
+        watcherFor(accountHolder.getUsername(), account);
+    }
+
+    public void unwatch(String username) {
+        WatcherReference reference = watchers.remove(username);
+        Watcher watcher = reference != null ? reference.get() : null;
+        if (watcher != null) {
+            watcher.account.removeListener(watcher);
+        }
+        pending.remove(username);
+    }
+
+    // Действующее оповещение по категории (последний достигнутый порог) или null
+    public Alert getActiveAlert(AccountHolder accountHolder, String category) {
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        if (account == null || category == null) {
+            return null;
+        }
+        return watcherFor(accountHolder.getUsername(), account).active(category);
+    }
+
+    // Забирает накопленные оповещения пользователя в порядке появления
+    public List<Alert> drain(String username) {
+        Deque<Alert> queue = pending.get(username);
+        if (queue == null) {
+            return new ArrayList<>();
+        }
+        synchronized (queue) {
+            List<Alert> alerts = new ArrayList<>(queue);
+            queue.clear();
+            return alerts;
+        }
+    }
+
+    public void setDefaultThresholds(int... percents) {
+        defaultThresholds = checkThresholds(percents);
+        refreshAll();
+    }
+
+    public void setThresholds(String category, int... percents) {
+        if (category == null || category.trim().isEmpty()) {
+            throw new IllegalArgumentException("Категория не может быть пустой");
+        }
+        thresholds.put(category.trim(), checkThresholds(percents));
+        refreshAll();
+    }
+
+    public void removeThresholds(String category) {
+        if (category != null && thresholds.remove(category.trim()) != null) {
+            refreshAll();
+        }
+    }
+
+    public int[] getThresholds(String category) {
+        return thresholdsFor(category).clone();
+    }
+
+    private int[] thresholdsFor(String category) {
+        int[] forCategory = category != null ? thresholds.get(category) : null;
+        return forCategory != null ? forCategory : defaultThresholds;
+    }
+
+    private static int[] checkThresholds(int[] percents) {
+        if (percents == null || percents.length == 0) {
+            throw new IllegalArgumentException("Нужен хотя бы один порог");
+        }
+        int[] sorted = Arrays.stream(percents).distinct().sorted().toArray();
+        if (sorted[0] < 1 || sorted[sorted.length - 1] > 100) {
+            throw new IllegalArgumentException("Порог должен быть от 1 до 100%");
+        }
+        return sorted;
+    }
+
+    // После смены порогов состояние пересчитывается; новые достигнутые пороги оповещаются
+    private void refreshAll() {
+        for (WatcherReference reference : watchers.values()) {
+            Watcher watcher = reference.get();
+            if (watcher != null) {
+                watcher.refreshAll();
+            }
+        }
+    }
+
+    private Watcher watcherFor(String username, FinancialAccount account) {
+        WatcherReference reference = watchers.get(username);
+        Watcher watcher = reference != null ? reference.get() : null;
+        if (watcher != null && watcher.account == account) {
+            return watcher;
+        }
+        expungeCollected();
+        // Новую подписку удерживает аккаунт (он же передан сюда), поэтому до возврата она не соберется
+        return watchers.compute(username, (name, current) -> {
+            Watcher existing = current != null ? current.get() : null;
+            if (existing != null && existing.account == account) {
+                return current;
+            }
+            if (existing != null) {
+                existing.account.removeListener(existing);
+            }
+            Watcher created = new Watcher(name, account);
+            account.addListener(created);
+            return new WatcherReference(created, collected);
+        }).get();
+    }
+
+    // Убирает записи подписок, собранных вместе со своими аккаунтами
+    private void expungeCollected() {
+        WatcherReference reference;
+        while ((reference = (WatcherReference) collected.poll()) != null) {
+            watchers.remove(reference.username, reference);
+        }
+    }
+
+    private void publish(Alert alert) {
+        Deque<Alert> queue = pending.computeIfAbsent(alert.getUsername(), username -> new ArrayDeque<>());
+        synchronized (queue) {
+            if (queue.size() >= MAX_PENDING) {
+                queue.pollFirst();
+            }
+            queue.addLast(alert);
+        }
+    }
+
+    /**
+     * Состояние бюджетов одного аккаунта: достигнутый порог по каждой категории.
+     */
+    private final class Watcher implements FinancialAccountListener {
+        private final String username;
+        private final FinancialAccount account;
+        private final Map<String, Alert> active = new HashMap<>();
+
+        Watcher(String username, FinancialAccount account) {
+            this.username = username;
+            this.account = account;
+            for (String category : account.getBudgetsCategories().keySet()) {
+                Alert alert = evaluate(category);
+                if (alert != null) {
+                    active.put(category, alert);
+                }
+            }
+        }
+
+        synchronized Alert active(String category) {
+            return active.get(category);
+        }
+
+        @Override
+        public void onTransactionAdded(FinancialAccount account, FinancialEntry entry) {
+            if (!Boolean.TRUE.equals(entry.getIsIncome())) {
+                update(entry.getCategory());
+            }
+        }
+
+        @Override
+        public void onTransactionsAdded(FinancialAccount account, List<FinancialEntry> entries) {
+            // Каждая затронутая категория проверяется один раз на пакет
+            Set<String> categories = new LinkedHashSet<>();
+            for (FinancialEntry entry : entries) {
+                if (!Boolean.TRUE.equals(entry.getIsIncome())) {
+                    categories.add(entry.getCategory());
+                }
+            }
+            categories.forEach(this::update);
+        }
+
+        @Override
+        public void onTransactionRemoved(FinancialAccount account, int index, FinancialEntry entry) {
+            update(entry.getCategory());
+        }
+
+        @Override
+        public void onTransactionChanged(FinancialAccount account, int index, FinancialEntry entry, String previousCategory) {
+            // Сумма или категория могли измениться: пересматриваются прежняя и новая категории
+            update(entry.getCategory());
+            if (previousCategory != null && !previousCategory.equals(entry.getCategory())) {
+                update(previousCategory);
+            }
+        }
+
+        @Override
+        public void onBudgetSet(FinancialAccount account, String category, double amount) {
+            update(category);
+        }
+
+        @Override
+        public synchronized void onBudgetRemoved(FinancialAccount account, String category) {
+            active.remove(category);
+        }
+
+        void refreshAll() {
+            List<String> categories = new ArrayList<>(account.getBudgetsCategories().keySet());
+            categories.forEach(this::update);
+        }
+
+        synchronized void update(String category) {
+            if (category == null) {
+                return;
+            }
+            Alert current = evaluate(category);
+            Alert previous = current != null ? active.put(category, current) : active.remove(category);
+            if (current != null && (previous == null || current.severity() > previous.severity())) {
+                publish(current);
+            }
+        }
+
+        private Alert evaluate(String category) {
+            Double budget = account.getBudget(category);
+            if (budget == null) {
+                return null;
+            }
+            long budgetCents = Money.ofDouble(budget);
+            CategoryTotals totals = account.getCategoryTotals(category);
+            long spentCents = totals != null ? totals.getOutcomeCents() : 0;
+            if (spentCents > budgetCents) {
+                return new Alert(username, category, Alert.OVER_LIMIT, budgetCents, spentCents);
+            }
+            int[] percents = thresholdsFor(category);
+            for (int i = percents.length - 1; i >= 0; i--) {
+                if (spentCents * 100 >= budgetCents * percents[i]) {
+                    return new Alert(username, category, percents[i], budgetCents, spentCents);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class WatcherReference extends WeakReference<Watcher> {
+        private final String username;
+
+        WatcherReference(Watcher watcher, ReferenceQueue<Watcher> queue) {
+            super(watcher, queue);
+            this.username = watcher.username;
+        }
+    }
+
+    /**
+     * Оповещение о достижении порога бюджета категории.
+     */
+    public static final class Alert {
+        // Значение порога для перерасхода: выше любого порога в процентах
+        static final int OVER_LIMIT = 101;
+
+        private final String username;
+        private final String category;
+        private final int threshold;
+        private final long budgetCents;
+        private final long spentCents;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+
+        Alert(String username, String category, int threshold, long budgetCents, long spentCents) {
+            this.username = username;
+            this.category = category;
+            this.threshold = threshold;
+            this.budgetCents = budgetCents;
+            this.spentCents = spentCents;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        // Достигнутый порог в процентах; для перерасхода — 100
+        public int getThreshold() {
+            return Math.min(threshold, 100);
+        }
+
+        public boolean isOverLimit() {
+            return threshold == OVER_LIMIT;
+        }
+
+        public long getBudgetCents() {
+            return budgetCents;
+        }
+
+        public long getSpentCents() {
+            return spentCents;
+        }
+
+        public LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        int severity() {
+            return threshold;
+        }
+
+        public String getMessage() {
+            if (isOverLimit()) {
+                return "ПЕРЕРАСХОД!";
+            }
+            if (threshold >= 100) {
+                return "Бюджет исчерпан!";
+            }
+            return "Осталось менее " + (100 - threshold) + "% бюджета!";
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Бюджет '%s': %s Потрачено %s из %s",
+                    category, getMessage(), Money.format(spentCents), Money.format(budgetCents));
+        }
+    }
+}
@@ -2,24 +2,120 @@ package com.business.services;
 
 import com.business.entities.AccountHolder;
 import com.business.entities.FinancialAccount;
+import com.business.ports.UserStoragePort;
+import com.infrastructure.BackupStore;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.infrastructure.InMemoryUserRepository;
+import com.infrastructure.JournalingUserRepository;
+import com.infrastructure.JsonLedgerCodec;
+import com.infrastructure.LedgerJournal;
+import com.infrastructure.MappedSnapshot;
+import com.infrastructure.SnapshotCodec;
+import com.infrastructure.SnapshotCorruptedException;
+import com.infrastructure.SnapshotUserRepository;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class DataPersistenceService {
-    private static final Path DATA_FILE_PATH = Paths.get("users.data");
-    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    private static final Path DEFAULT_DATA_FILE_PATH = Paths.get("users.data");
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 10_000;
+    // Как часто фоновый планировщик проверяет условия для снимка
+    private static final long SNAPSHOT_CHECK_MILLIS = 1000;
+    // Потоковый JSON: отступы включаются самим генератором, а writeObject для дат
+    // не должен ни навязывать отступы, ни сбрасывать поток после каждой транзакции
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.INDENT_OUTPUT)
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
 
-    static {
-        JSON_MAPPER.registerModule(new JavaTimeModule());
-        JSON_MAPPER.enable(SerializationFeature.INDENT_OUTPUT);
+    private final Path dataFilePath;
+    private final Path previousSnapshotPath;
+    private final LedgerJournal journal;
+    private BackupStore backupStore;
+    private UserStoragePort journaledStorage;
+
+    // Срез общий для всех аккаунтов процесса (см. FinancialAccount.beginFreeze), поэтому один на все сервисы
+    private static final Object FREEZE_MONITOR = new Object();
+    private final Object snapshotMonitor = new Object();
+    private final AtomicBoolean snapshotRequested = new AtomicBoolean();
+    private ScheduledExecutorService snapshotExecutor;
+    private Supplier<Map<String, AccountHolder>> snapshotSource;
+    private long snapshotIntervalNanos;
+    private long snapshotChangeThreshold;
+    private volatile boolean snapshotsRunning;
+    private volatile long savedModifications;
+    // Момент, когда планировщик впервые увидел несохраненные изменения (0 — изменений нет)
+    private volatile long pendingSinceNanos;
+    private volatile long lastSnapshotNanos = System.nanoTime();
+    private volatile long lastSnapshotDurationNanos;
+    private volatile long lastSnapshotLagNanos;
+    private volatile long snapshotCount;
+
+    public DataPersistenceService() {
+        this(DEFAULT_DATA_FILE_PATH);
+    }
+
+    public DataPersistenceService(Path dataFilePath) {
+        this.dataFilePath = dataFilePath;
+        this.previousSnapshotPath = dataFilePath.resolveSibling(dataFilePath.getFileName() + ".prev");
+        this.backupStore = new BackupStore(dataFilePath.resolveSibling("backups"));
+        String fileName = dataFilePath.getFileName().toString();
+        String baseName = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+        this.journal = new LedgerJournal(dataFilePath.resolveSibling(baseName + ".journal"));
+    }
+
+    /**
+     * Включает режим журнала: все изменения пользователей дописываются в журнал,
+     * а снимок users.data перезаписывается только при уплотнении журнала.
+     *
+     * @param storage хранилище пользователей
+     * @return хранилище, записывающее изменения в журнал
+     */
+    public UserStoragePort enableJournal(UserStoragePort storage) {
+        try {
+            journal.open();
+        } catch (IOException e) {
+            System.err.println("❌ Не удалось открыть журнал: " + e.getMessage());
+            return storage;
+        }
+        this.journaledStorage = storage;
+        journal.setCompaction(DEFAULT_COMPACTION_THRESHOLD, this::compact);
+        return new JournalingUserRepository(storage, journal);
+    }
+
+    public boolean isJournalEnabled() {
+        return journaledStorage != null;
+    }
+
+    // Записей в текущем файле журнала (после последнего поворота или уплотнения)
+    public long getJournalRecordCount() {
+        return journal.getRecordCount();
+    }
+
+    public void setCompactionThreshold(long threshold) {
+        journal.setCompaction(threshold, this::compact);
     }
 
     public void save(Map<String, AccountHolder> users) {
@@ -28,35 +124,443 @@ public class DataPersistenceService {
             return;
         }
 
+        // В режиме журнала снимок должен точно совпасть с поворотом журнала
+        boolean saved = isJournalEnabled() ? writeConsistentSnapshot(() -> users) : writeSnapshot(users);
+        if (saved) {
+            System.out.println("✅ Данные сохранены в файл: " + dataFilePath.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Переносит журнал в снимок. Если работает фоновый планировщик или уплотнение вызвано
+     * под блокировкой аккаунта, снимок пишется в фоне, и записывающий поток не ждет сериализации.
+     */
+    public void compact() {
+        if (journaledStorage == null) {
+            return;
+        }
+        if (snapshotsRunning || AccountLocks.isAnyHeldByCurrentThread()) {
+            requestSnapshot();
+        } else {
+            writeConsistentSnapshot(journaledStorage::view);
+        }
+    }
+
+    /**
+     * Запускает фоновые снимки. Снимок пишется, когда с прошлого снимка прошло interval
+     * и были изменения, или когда изменений накопилось не меньше changeThreshold.
+     *
+     * @param users    источник пользователей (живое представление хранилища)
+     * @param interval наибольший промежуток между снимками при наличии изменений
+     * @param changeThreshold число изменений, после которого снимок пишется досрочно
+     */
+    public synchronized void startSnapshots(Supplier<Map<String, AccountHolder>> users, Duration interval, long changeThreshold) {
+        if (interval.isNegative() || interval.isZero() || changeThreshold <= 0) {
+            throw new IllegalArgumentException("Интервал и порог изменений для снимков должны быть положительными");
+        }
+        if (snapshotsRunning) {
+            throw new IllegalStateException("Фоновые снимки уже запущены");
+        }
+        this.snapshotSource = users;
+        this.snapshotIntervalNanos = interval.toNanos();
+        this.snapshotChangeThreshold = changeThreshold;
+        this.savedModifications = FinancialAccount.getModificationCount();
+        this.pendingSinceNanos = 0;
+        this.lastSnapshotNanos = System.nanoTime();
+        this.snapshotsRunning = true;
+        long check = Math.min(SNAPSHOT_CHECK_MILLIS, Math.max(1, interval.toMillis()));
+        snapshotExecutor().scheduleWithFixedDelay(this::checkSnapshot, check, check, TimeUnit.MILLISECONDS);
+    }
+
+    // Останавливает планировщик, дожидаясь снимка, который пишется в этот момент
+    public void stopSnapshots() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            snapshotsRunning = false;
+            executor = snapshotExecutor;
+            snapshotExecutor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("⚠️  Фоновый снимок не завершился за минуту.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Записать согласованный снимок сейчас, в вызывающем потоке
+    public boolean snapshotNow() {
+        Supplier<Map<String, AccountHolder>> users = snapshotSource;
+        if (users == null && journaledStorage != null) {
+            users = journaledStorage::view;
+        }
+        return users != null && writeConsistentSnapshot(users);
+    }
+
+    public long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    // Время записи последнего снимка
+    public Duration getLastSnapshotDuration() {
+        return Duration.ofNanos(lastSnapshotDurationNanos);
+    }
+
+    // Сколько самое старое изменение ждало попадания в последний снимок
+    public Duration getLastSnapshotLag() {
+        return Duration.ofNanos(lastSnapshotLagNanos);
+    }
+
+    // Сколько сейчас ждут изменения, еще не попавшие в снимок
+    public Duration getSnapshotLag() {
+        long since = pendingSinceNanos;
+        return since == 0 ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - since);
+    }
+
+    /**
+     * Сохранение при завершении работы. В режиме журнала все изменения уже на диске,
+     * поэтому достаточно закрыть журнал без полной перезаписи снимка.
+     */
+    public void shutdown(Supplier<Map<String, AccountHolder>> users) {
+        stopSnapshots();
+        if (snapshotCount > 0) {
+            System.out.printf("ℹ️  Фоновых снимков: %d, последний записан за %d мс, отставание %d мс%n",
+                    snapshotCount, getLastSnapshotDuration().toMillis(), getLastSnapshotLag().toMillis());
+        }
+        if (isJournalEnabled()) {
+            journal.close();
+            System.out.println("✅ Журнал изменений сохранен: " + journal.getPath().toAbsolutePath());
+        } else {
+            save(users.get());
+        }
+    }
+
+    private void checkSnapshot() {
+        long pending = FinancialAccount.getModificationCount() - savedModifications;
+        long now = System.nanoTime();
+        if (pending <= 0 && !snapshotRequested.get()) {
+            pendingSinceNanos = 0;
+            return;
+        }
+        if (pendingSinceNanos == 0) {
+            pendingSinceNanos = now;
+        }
+        if (snapshotRequested.get() || pending >= snapshotChangeThreshold || now - lastSnapshotNanos >= snapshotIntervalNanos) {
+            snapshotNow();
+        }
+    }
+
+    private void requestSnapshot() {
+        if (snapshotRequested.compareAndSet(false, true) && !snapshotsRunning) {
+            snapshotExecutor().execute(this::snapshotNow);
+        }
+    }
+
+    private synchronized ScheduledExecutorService snapshotExecutor() {
+        if (snapshotExecutor == null) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return snapshotExecutor;
+    }
+
+    /**
+     * Согласованный снимок без остановки записи на время сериализации.
+     * Под блокировками всех полос только отмечается срез и поворачивается журнал. Список пользователей
+     * берется и файл пишется уже без общих блокировок: каждый аккаунт отдает образ на момент среза
+     * под своей блокировкой, пока остальные потоки продолжают менять аккаунты.
+     */
+    private boolean writeConsistentSnapshot(Supplier<Map<String, AccountHolder>> users) {
+        synchronized (snapshotMonitor) {
+            snapshotRequested.set(false);
+            long started = System.nanoTime();
+            synchronized (FREEZE_MONITOR) {
+                Cut cut = new Cut();
+                try {
+                    try {
+                        AccountLocks.runAll(cut::take);
+                        if (cut.failure != null) {
+                            throw cut.failure;
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("❌ Ошибка при подготовке снимка: " + e.getMessage());
+                        return false;
+                    }
+                    if (!writeSnapshot(frozen(users.get(), cut.epoch), cut.generation)) {
+                        return false;
+                    }
+                } finally {
+                    FinancialAccount.endFreeze();
+                }
+
+                long finished = System.nanoTime();
+                long since = pendingSinceNanos;
+                lastSnapshotDurationNanos = finished - started;
+                lastSnapshotLagNanos = finished - (since != 0 && since < cut.takenNanos ? since : cut.takenNanos);
+                lastSnapshotNanos = finished;
+                savedModifications = cut.modifications;
+                pendingSinceNanos = FinancialAccount.getModificationCount() > cut.modifications ? cut.takenNanos : 0;
+                snapshotCount++;
+                return true;
+            }
+        }
+    }
+
+    // Обход образов на момент среза epoch; образ отпускается, как только пользователь записан
+    private static Consumer<BiConsumer<String, AccountHolder>> frozen(Map<String, AccountHolder> users, long epoch) {
+        return action -> users.forEach((username, accountHolder) -> {
+            AccountHolder image = AccountLocks.call(accountHolder, () -> imageOf(accountHolder, epoch));
+            try {
+                action.accept(username, image);
+            } finally {
+                image.getFinancialAccount().releaseImage();
+            }
+        });
+    }
+
+    // Вызывается под блокировкой аккаунта
+    private static AccountHolder imageOf(AccountHolder accountHolder, long epoch) {
+        AccountHolder image = new AccountHolder(accountHolder.getUsername(), accountHolder.getPassword());
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        if (account != null) {
+            image.setFinancialAccount(account.takeImage(epoch));
+        }
+        return image;
+    }
+
+    private boolean writeSnapshot(Map<String, AccountHolder> users) {
+        try {
+            return writeSnapshot(users, journal.rotate());
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка при сохранении данных: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean writeSnapshot(Map<String, AccountHolder> users, int journalGeneration) {
+        return writeSnapshot(users::forEach, journalGeneration);
+    }
+
+    private boolean writeSnapshot(Consumer<BiConsumer<String, AccountHolder>> users, int journalGeneration) {
         try {
             // Проверяем и создаем директорию, если нужно
-            Path parentDir = DATA_FILE_PATH.getParent();
+            Path parentDir = dataFilePath.getParent();
             if (parentDir != null && !Files.exists(parentDir)) {
                 Files.createDirectories(parentDir);
             }
 
-            try (ObjectOutputStream oos = new ObjectOutputStream(
-                    new FileOutputStream(DATA_FILE_PATH.toFile()))) {
-                oos.writeObject(new HashMap<>(users)); // Создаем копию для безопасности
-                System.out.println("✅ Данные сохранены в файл: " + DATA_FILE_PATH.toAbsolutePath());
+            // Пишем во временный файл (с force) и подменяем снимок целиком: старый файл может быть
+            // отображен в память, и его нельзя обрезать на месте
+            Path tempFile = dataFilePath.resolveSibling(dataFilePath.getFileName() + ".tmp");
+            SnapshotCodec.write(tempFile, users, journalGeneration);
+            // Предыдущий снимок остается запасным на случай, если новый окажется поврежден
+            int previousGeneration = journalGeneration;
+            if (Files.exists(dataFilePath)) {
+                previousGeneration = SnapshotCodec.readJournalGeneration(dataFilePath);
+                Files.move(dataFilePath, previousSnapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             }
+            Files.move(tempFile, dataFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(dataFilePath.toAbsolutePath().getParent());
+            // Сегменты журнала нужны, пока их нет в запасном снимке; без журнала снимок содержит все изменения
+            if (isJournalEnabled()) {
+                journal.dropSegments(previousGeneration);
+            } else {
+                journal.reset();
+            }
+            return true;
         } catch (IOException e) {
             System.err.println("❌ Ошибка при сохранении данных: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Переименование надежно только после сброса каталога на диск; не все системы это позволяют
+    private static void syncDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Например, на Windows каталог нельзя открыть как файл
+        }
+    }
+
+    // Основной снимок, а если его нет (сбой между двумя переименованиями) — запасной
+    private Path snapshotFile() {
+        if (Files.exists(dataFilePath)) {
+            return dataFilePath;
+        }
+        return Files.exists(previousSnapshotPath) ? previousSnapshotPath : null;
+    }
+
+    private static boolean isLegacyFormat(Path path) {
+        try {
+            return SnapshotCodec.isLegacyFormat(path);
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка чтения файла данных: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static int journalGenerationOf(Path path) {
+        try {
+            return path != null ? SnapshotCodec.readJournalGeneration(path) : 0;
+        } catch (IOException e) {
+            return 0;
         }
     }
 
     public Map<String, AccountHolder> load() {
-        if (!Files.exists(DATA_FILE_PATH)) {
+        Path source = snapshotFile();
+        boolean legacyFormat = source != null && isLegacyFormat(source);
+        Map<String, AccountHolder> users;
+        if (source == null) {
             System.out.println("ℹ️  Файл данных не найден, будет создан новый.");
-            return new HashMap<>();
+            users = new HashMap<>();
+        } else if (legacyFormat) {
+            users = loadLegacySnapshot(source);
+        } else {
+            users = loadSnapshot(source);
+            if (users == null && source.equals(dataFilePath) && Files.exists(previousSnapshotPath)) {
+                source = previousSnapshotPath;
+                System.err.println("⚠️  Используется предыдущий снимок: " + source.toAbsolutePath());
+                users = loadSnapshot(source);
+            }
+            if (users == null) {
+                users = new HashMap<>();
+            }
+        }
+
+        InMemoryUserRepository storage = new InMemoryUserRepository();
+        storage.setAllUsers(users);
+        replayJournal(storage, legacyFormat ? 0 : journalGenerationOf(source));
+        users = storage.findAll();
+
+        // Старый формат сразу переводим в бинарный, чтобы следующий запуск был быстрым
+        if (legacyFormat && !users.isEmpty() && writeSnapshot(users)) {
+            System.out.println("ℹ️  Файл данных преобразован в новый формат.");
+        }
+        return users;
+    }
+
+    /**
+     * Быстрая загрузка: снимок отображается в память, при старте читается только
+     * каталог пользователей, а транзакции декодируются при первом обращении к пользователю.
+     *
+     * @param storage хранилище, в которое подключается снимок
+     * @return количество пользователей
+     */
+    public int loadInto(SnapshotUserRepository storage) {
+        Path source = snapshotFile();
+        if (source == null || isLegacyFormat(source)) {
+            Map<String, AccountHolder> users = load();
+            storage.setAllUsers(users);
+            return users.size();
+        }
+
+        MappedSnapshot snapshot = openSnapshot(source);
+        if (snapshot == null && source.equals(dataFilePath) && Files.exists(previousSnapshotPath)) {
+            source = previousSnapshotPath;
+            System.err.println("⚠️  Используется предыдущий снимок: " + source.toAbsolutePath());
+            snapshot = openSnapshot(source);
+        }
+        if (snapshot != null && source.equals(dataFilePath)) {
+            int generation = journalGenerationOf(source);
+            storage.attachSnapshot(snapshot, (username, failure) -> recoverUser(username, failure, generation));
+        } else if (snapshot != null) {
+            storage.attachSnapshot(snapshot);
+        } else {
+            storage.setAllUsers(new HashMap<>());
+        }
+        replayJournal(storage, snapshot != null ? journalGenerationOf(source) : 0);
+        return storage.size();
+    }
+
+    /**
+     * Пользователь, чьи данные в основном снимке повреждены: берется из предыдущего снимка,
+     * и к нему применяются его записи из сегментов журнала между двумя снимками.
+     */
+    private AccountHolder recoverUser(String username, IOException failure, int snapshotGeneration) {
+        System.err.println("❌ Файл данных поврежден: " + failure.getMessage());
+        if (!Files.exists(previousSnapshotPath) || isLegacyFormat(previousSnapshotPath)) {
+            System.err.println("❌ Данные пользователя '" + username + "' не восстановлены: нет предыдущего снимка.");
+            return null;
+        }
+        try (MappedSnapshot previous = MappedSnapshot.open(previousSnapshotPath)) {
+            InMemoryUserRepository storage = new InMemoryUserRepository();
+            AccountHolder accountHolder = previous.decode(username);
+            if (accountHolder != null) {
+                storage.save(username, accountHolder);
+            }
+            int applied = journal.replayUser(username, storage, journalGenerationOf(previousSnapshotPath), snapshotGeneration);
+            accountHolder = storage.find(username);
+            if (accountHolder != null) {
+                System.err.println("⚠️  Данные пользователя '" + username + "' восстановлены из предыдущего снимка"
+                        + " (записей журнала применено: " + applied + ").");
+            }
+            return accountHolder;
+        } catch (IOException e) {
+            System.err.println("❌ Данные пользователя '" + username + "' не восстановлены: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private MappedSnapshot openSnapshot(Path path) {
+        try {
+            MappedSnapshot snapshot = MappedSnapshot.open(path);
+            System.out.println("✅ Данные загружены из файла: " + path.toAbsolutePath());
+            return snapshot;
+        } catch (SnapshotCorruptedException e) {
+            System.err.println("❌ Файл данных поврежден: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка чтения файла данных: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private void replayJournal(UserStoragePort storage, int snapshotGeneration) {
+        try {
+            int applied = journal.replay(storage, snapshotGeneration);
+            if (applied > 0) {
+                System.out.println("✅ Применено записей из журнала: " + applied);
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка чтения журнала: " + e.getMessage());
         }
+    }
 
+    // null, если снимок не удалось прочитать (ошибка уже выведена)
+    private Map<String, AccountHolder> loadSnapshot(Path path) {
+        try {
+            Map<String, AccountHolder> users = SnapshotCodec.read(path);
+            System.out.println("✅ Данные загружены из файла: " + path.toAbsolutePath());
+            return users;
+        } catch (SnapshotCorruptedException e) {
+            System.err.println("❌ Файл данных поврежден: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка чтения файла данных: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("❌ Неизвестная ошибка при загрузке данных: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private Map<String, AccountHolder> loadLegacySnapshot(Path path) {
         try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(DATA_FILE_PATH.toFile()))) {
+                new FileInputStream(path.toFile()))) {
             @SuppressWarnings("unchecked")
             Map<String, AccountHolder> users = (Map<String, AccountHolder>) ois.readObject();
-            System.out.println("✅ Данные загружены из файла: " + DATA_FILE_PATH.toAbsolutePath());
-            return users;
+            System.out.println("✅ Данные загружены из файла: " + path.toAbsolutePath());
+            return new HashMap<>(users);
         } catch (FileNotFoundException e) {
             System.err.println("❌ Файл данных не найден: " + e.getMessage());
         } catch (IOException e) {
@@ -71,6 +575,16 @@ public class DataPersistenceService {
     }
 
     public void saveJSON(AccountHolder accountHolder, String filename) {
+        saveJSON(accountHolder, filename, false);
+    }
+
+    /**
+     * Сохраняет пользователя в JSON потоком: транзакции пишутся по одной,
+     * дерево JSON в памяти не строится.
+     *
+     * @param compact true — без отступов и переводов строк
+     */
+    public void saveJSON(AccountHolder accountHolder, String filename, boolean compact) {
         if (accountHolder == null) {
             System.out.println("❌ Ошибка: пользователь не указан.");
             return;
@@ -81,14 +595,39 @@ public class DataPersistenceService {
         }
 
         File file = new File(filename);
-        try {
-            JSON_MAPPER.writeValue(file, accountHolder);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeJSON(accountHolder, out, compact);
             System.out.println("✅ Данные сохранены в JSON файл: " + file.getAbsolutePath());
         } catch (IOException e) {
             System.err.println("❌ Ошибка при сохранении JSON: " + e.getMessage());
         }
     }
 
+    // Тот же формат, что и в saveJSON, но в произвольный поток (например, в ответ HTTP)
+    public void writeJSON(AccountHolder accountHolder, OutputStream out) throws IOException {
+        writeJSON(accountHolder, out, false);
+    }
+
+    public void writeJSON(AccountHolder accountHolder, OutputStream out, boolean compact) throws IOException {
+        try (JsonGenerator generator = createGenerator(out, compact)) {
+            JsonLedgerCodec.write(generator, accountHolder);
+        }
+    }
+
+    // Снимок аккаунта в JSON под его блокировкой: сериализация идет в память,
+    // чтобы медленный клиент не удерживал блокировку на время передачи
+    public byte[] exportJSON(AccountHolder accountHolder) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AccountLocks.run(accountHolder, () -> {
+            try {
+                writeJSON(accountHolder, out, true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return out.toByteArray();
+    }
+
     public AccountHolder loadJSON(File file) {
         if (file == null || !file.exists()) {
             System.out.println("❌ Файл не найден: " +
@@ -101,11 +640,12 @@ public class DataPersistenceService {
             return null;
         }
 
-        try {
-            AccountHolder accountHolder = JSON_MAPPER.readValue(file, AccountHolder.class);
+        try (JsonParser parser = JSON_MAPPER.createParser(file)) {
+            AccountHolder accountHolder = JsonLedgerCodec.read(parser);
 
             // Валидация загруженного пользователя
-            if (accountHolder.getUsername() == null || accountHolder.getUsername().trim().isEmpty()) {
+            if (accountHolder == null || accountHolder.getUsername() == null
+                    || accountHolder.getUsername().trim().isEmpty()) {
                 System.out.println("❌ Неверный формат JSON: отсутствует имя пользователя.");
                 return null;
             }
@@ -123,22 +663,141 @@ public class DataPersistenceService {
         }
     }
 
+    /**
+     * Выгружает всех пользователей в формате JSON Lines: одна компактная запись на строку.
+     * Пользователи обходятся по одному через forEachUser, поэтому память не зависит от объема выгрузки.
+     *
+     * @return количество выгруженных пользователей
+     */
+    public int exportJSONLines(UserStoragePort storage, Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            return exportJSONLines(storage, out);
+        }
+    }
+
+    public int exportJSONLines(UserStoragePort storage, OutputStream out) throws IOException {
+        int[] count = {0};
+        try (JsonGenerator generator = createGenerator(out, true)) {
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            try {
+                storage.forEachUser((username, accountHolder) -> {
+                    try {
+                        JsonLedgerCodec.write(generator, accountHolder);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (count[0] > 0) {
+                generator.writeRaw('\n');
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * Читает выгрузку JSON Lines и передает пользователей по одному.
+     * Записи с ошибками формата прерывают импорт с IOException.
+     *
+     * @return количество прочитанных пользователей
+     */
+    public int importJSONLines(Path path, Consumer<AccountHolder> consumer) throws IOException {
+        int count = 0;
+        try (JsonParser parser = JSON_MAPPER.createParser(path.toFile())) {
+            AccountHolder accountHolder;
+            while ((accountHolder = JsonLedgerCodec.read(parser)) != null) {
+                if (accountHolder.getUsername() == null) {
+                    throw new IOException("Запись " + (count + 1) + ": отсутствует имя пользователя");
+                }
+                if (accountHolder.getFinancialAccount() == null) {
+                    accountHolder.setFinancialAccount(new FinancialAccount());
+                }
+                consumer.accept(accountHolder);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static JsonGenerator createGenerator(OutputStream out, boolean compact) throws IOException {
+        JsonGenerator generator = JSON_MAPPER.createGenerator(out);
+        if (!compact) {
+            generator.useDefaultPrettyPrinter();
+        }
+        return generator;
+    }
+
+    /**
+     * Инкрементальная резервная копия в каталог backups рядом с файлом данных.
+     * Записываются только фрагменты историй, которых еще нет в хранилище копий.
+     */
     public void backupData(Map<String, AccountHolder> users) {
         if (users == null || users.isEmpty()) {
             System.out.println("⚠️  Нет данных для резервного копирования.");
             return;
         }
 
-        String backupFilename = "backup_users_" +
-                System.currentTimeMillis() + ".data";
-        File backupFile = new File(backupFilename);
-
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(backupFile))) {
-            oos.writeObject(new HashMap<>(users));
-            System.out.println("✅ Резервная копия создана: " + backupFile.getAbsolutePath());
+        try {
+            BackupStore.Result result = backupFrozen(users);
+            if (result.isUnchanged()) {
+                System.out.println("ℹ️  С последней резервной копии изменений нет: " + result.getId());
+            } else {
+                System.out.printf("✅ Резервная копия создана: %s (новых фрагментов: %d, %d байт; без изменений: %d)%n",
+                        result.getId(), result.getChunksWritten(), result.getBytesWritten(), result.getChunksReused());
+            }
         } catch (IOException e) {
             System.err.println("❌ Ошибка при создании резервной копии: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    public void setBackupRetention(int retention) {
+        this.backupStore = new BackupStore(backupStore.getDirectory(), retention);
+    }
+
+    // Идентификаторы резервных копий от старых к новым
+    public List<String> listBackups() throws IOException {
+        return backupStore.list();
+    }
+
+    public Map<String, AccountHolder> restoreBackup(String id) throws IOException {
+        return backupStore.restore(id);
+    }
+
+    // Резервная копия аккаунтов на один момент времени, без поворота журнала
+    private BackupStore.Result backupFrozen(Map<String, AccountHolder> users) throws IOException {
+        synchronized (snapshotMonitor) {
+            synchronized (FREEZE_MONITOR) {
+                long[] epoch = new long[1];
+                AccountLocks.runAll(() -> epoch[0] = FinancialAccount.beginFreeze());
+                try {
+                    return backupStore.backup(frozen(users, epoch[0]));
+                } finally {
+                    FinancialAccount.endFreeze();
+                }
+            }
+        }
+    }
+
+    // Срез хранилища: образы аккаунтов и поколение журнала на один и тот же момент
+    private final class Cut {
+        private long epoch;
+        private int generation;
+        private long modifications;
+        private long takenNanos;
+        private IOException failure;
+
+        private void take() {
+            takenNanos = System.nanoTime();
+            modifications = FinancialAccount.getModificationCount();
+            epoch = FinancialAccount.beginFreeze();
+            try {
+                generation = journal.rotate();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+}
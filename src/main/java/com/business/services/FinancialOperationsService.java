@@ -1,83 +1,156 @@
 package com.business.services;
 
 import com.business.exception.CategoryMissingException;
+import com.business.entities.CategoryDictionary;
+import com.business.entities.CategoryTotals;
 import com.business.entities.FinancialEntry;
 import com.business.entities.AccountHolder;
 import com.business.entities.FinancialAccount;
+import com.business.entities.Money;
+import com.infrastructure.CsvStatementParser;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class FinancialOperationsService {
+    // Оповещения о бюджетах подписываются на аккаунт при первом расходе или установке бюджета
+    private final BudgetAlertEngine budgetAlertEngine = new BudgetAlertEngine();
+
+    public BudgetAlertEngine getBudgetAlertEngine() {
+        return budgetAlertEngine;
+    }
 
     public void addIncome(AccountHolder accountHolder, String category, double amount) {
         validateTransactionInput(category, amount);
         FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
         FinancialEntry financialEntry = new FinancialEntry(amount, category, true);
-        userFinancialAccount.addTransaction(financialEntry);
+        AccountLocks.run(accountHolder, () -> userFinancialAccount.addTransaction(financialEntry));
     }
 
     public void addOutcome(AccountHolder accountHolder, String category, double amount) {
         validateTransactionInput(category, amount);
         FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
         FinancialEntry financialEntry = new FinancialEntry(amount, category, false);
-        userFinancialAccount.addTransaction(financialEntry);
+        budgetAlertEngine.watch(accountHolder);
+        AccountLocks.run(accountHolder, () -> userFinancialAccount.addTransaction(financialEntry));
+    }
+
+    /**
+     * Пакетное добавление транзакций. Пакет проверяется целиком до изменений: при ошибке
+     * в любой транзакции аккаунт не меняется. Итоги пересчитываются и журнал пишется один раз на пакет.
+     */
+    public void addTransactions(AccountHolder accountHolder, Collection<FinancialEntry> financialEntries) {
+        if (financialEntries == null) {
+            throw new IllegalArgumentException("Пакет транзакций не может быть null");
+        }
+        List<FinancialEntry> batch = new ArrayList<>(financialEntries);
+        for (int i = 0; i < batch.size(); i++) {
+            FinancialEntry financialEntry = batch.get(i);
+            try {
+                if (financialEntry == null) {
+                    throw new IllegalArgumentException("Транзакция не может быть null");
+                }
+                if (financialEntry.getIsIncome() == null) {
+                    throw new IllegalArgumentException("Не указан тип транзакции");
+                }
+                validateTransactionInput(financialEntry.getCategory(), financialEntry.getAmountCents());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Транзакция №" + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
+        budgetAlertEngine.watch(accountHolder);
+        AccountLocks.run(accountHolder, () -> userFinancialAccount.addTransactions(batch));
+    }
+
+    /**
+     * Импорт банковской выписки в CSV (формат — в CsvStatementParser). Файл разбирается
+     * параллельно, принятые строки добавляются в аккаунт одним пакетом.
+     *
+     * @return результат разбора: число строк, скорость и отклоненные строки с причинами
+     */
+    public CsvStatementParser.Result importStatement(AccountHolder accountHolder, Path csvFile) throws IOException {
+        CsvStatementParser.Result result = CsvStatementParser.parse(csvFile);
+        addTransactions(accountHolder, result.getEntries());
+        return result;
     }
 
     private void validateTransactionInput(String category, double amount) {
+        validateTransactionInput(category, Double.isFinite(amount) ? Money.ofDouble(amount) : 0);
+    }
+
+    // Сумма проверяется уже в копейках: суммы меньше копейки округлились бы до нуля
+    private void validateTransactionInput(String category, long amountCents) {
         if (category == null || category.trim().isEmpty()) {
             throw new IllegalArgumentException("Категория не может быть пустой");
         }
-        if (amount <= 0) {
+        if (amountCents <= 0) {
             throw new IllegalArgumentException("Сумма должна быть положительной");
         }
     }
 
+    // Несколько показателей читаются под блокировкой аккаунта, чтобы параллельная запись
+    // из другой сессии не дала несогласованный ответ или ConcurrentModificationException
+    public <T> T read(AccountHolder accountHolder, Supplier<T> reader) {
+        return AccountLocks.call(accountHolder, reader);
+    }
+
     public double getAllIncome(AccountHolder accountHolder) {
-        FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
-        return userFinancialAccount.getFinancialEntries().stream()
-                .filter(FinancialEntry::getIsIncome)
-                .mapToDouble(FinancialEntry::getAmount)
-                .sum();
+        return accountHolder.getFinancialAccount().getTotalIncome();
     }
 
     public double getAllOutcome(AccountHolder accountHolder) {
-        FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
-        return userFinancialAccount.getFinancialEntries().stream()
-                .filter(transaction -> !transaction.getIsIncome())
-                .mapToDouble(FinancialEntry::getAmount)
-                .sum();
+        return accountHolder.getFinancialAccount().getTotalOutcome();
     }
 
     public double getCurrentBalance(AccountHolder accountHolder) {
-        return getAllIncome(accountHolder) - getAllOutcome(accountHolder);
+        return accountHolder.getFinancialAccount().getBalance();
     }
 
     public Map<String, Double> getIncomeByCategory(AccountHolder accountHolder) {
-        FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
-        return userFinancialAccount.getFinancialEntries().stream()
-                .filter(FinancialEntry::getIsIncome)
-                .collect(Collectors.groupingBy(
-                        FinancialEntry::getCategory,
-                        TreeMap::new,
-                        Collectors.summingDouble(FinancialEntry::getAmount)
-                ));
+        Map<String, Double> result = new TreeMap<>();
+        accountHolder.getFinancialAccount().getCategoryTotals().forEach((category, totals) -> {
+            if (totals.getIncomeCount() > 0) {
+                result.put(category, totals.getIncomeSum());
+            }
+        });
+        return result;
     }
 
     public Map<String, Double> getOutcomeByCategory(AccountHolder accountHolder) {
-        FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
-        return userFinancialAccount.getFinancialEntries().stream()
-                .filter(t -> !t.getIsIncome())
-                .collect(Collectors.groupingBy(
-                        FinancialEntry::getCategory,
-                        TreeMap::new,
-                        Collectors.summingDouble(FinancialEntry::getAmount)
-                ));
+        Map<String, Double> result = new TreeMap<>();
+        accountHolder.getFinancialAccount().getCategoryTotals().forEach((category, totals) -> {
+            if (totals.getOutcomeCount() > 0) {
+                result.put(category, totals.getOutcomeSum());
+            }
+        });
+        return result;
     }
 
     public Double getBudgetCategory(AccountHolder accountHolder, String category) {
-        return getBudget(accountHolder, category) - getSpent(accountHolder, category);
+        return Money.toDouble(getBudgetRemainderCents(accountHolder, category));
+    }
+
+    // Остаток бюджета в копейках: точное сравнение с нулем без допуска
+    public long getBudgetRemainderCents(AccountHolder accountHolder, String category) {
+        return getBudgetCents(accountHolder, category) - getSpentCents(accountHolder, category);
+    }
+
+    public long getBudgetCents(AccountHolder accountHolder, String category) {
+        Double budget = accountHolder.getFinancialAccount().getBudget(category);
+        return budget != null ? Money.ofDouble(budget) : 0;
+    }
+
+    public long getSpentCents(AccountHolder accountHolder, String category) {
+        CategoryTotals totals = accountHolder.getFinancialAccount().getCategoryTotals(category);
+        return totals != null ? totals.getOutcomeCents() : 0;
     }
 
     public double getBudget(AccountHolder accountHolder, String category) {
@@ -86,34 +159,49 @@ public class FinancialOperationsService {
     }
 
     public double getSpent(AccountHolder accountHolder, String category) {
-        return getOutcomeByCategory(accountHolder).getOrDefault(category, 0.0);
+        return Money.toDouble(getSpentCents(accountHolder, category));
+    }
+
+    // Баланс на момент времени: префиксные суммы по дням и транзакции самого дня
+    public double getBalanceAt(AccountHolder accountHolder, LocalDateTime timestamp) {
+        if (timestamp == null) {
+            throw new IllegalArgumentException("Время не может быть null");
+        }
+        return Money.toDouble(accountHolder.getFinancialAccount().getBalanceCentsAt(timestamp));
+    }
+
+    // Доходы минус расходы за период, границы включаются, null — без границы
+    public double getNetFlow(AccountHolder accountHolder, LocalDateTime from, LocalDateTime to) {
+        return Money.toDouble(accountHolder.getFinancialAccount().getNetFlowCents(from, to));
     }
 
     // Оповещать пользователя, если превышен лимит бюджета по категории
     public boolean budgetOverLimit(AccountHolder accountHolder, String category) {
-        return getBudgetCategory(accountHolder, category) < 0;
+        return getBudgetRemainderCents(accountHolder, category) < 0;
     }
 
     public boolean budgetIsZero(AccountHolder accountHolder, String category) {
-        return Math.abs(getBudgetCategory(accountHolder, category)) < 0.01;
+        return getBudgetRemainderCents(accountHolder, category) == 0;
     }
 
     public boolean budgetOverLimitPercent(AccountHolder accountHolder, String category, double percent) {
-        double budget = getBudget(accountHolder, category);
-        double spent = getSpent(accountHolder, category);
+        long budget = getBudgetCents(accountHolder, category);
+        long spent = getSpentCents(accountHolder, category);
         if (budget == 0) return false;
-        return (spent >= (budget * percent) / 100);
+        return spent * 100.0 >= budget * percent;
     }
 
     // Оповещать пользователя, если расходы превысили доходы.
     public boolean outcomeOverIncomeAll(AccountHolder accountHolder) {
-        return getAllOutcome(accountHolder) > getAllIncome(accountHolder);
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        return account.getTotalOutcomeCents() > account.getTotalIncomeCents();
     }
 
     public void setBudget(AccountHolder accountHolder, String category, double amount) {
         validateBudgetInput(category, amount);
         FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
-        userFinancialAccount.setBudget(category, amount);
+        budgetAlertEngine.watch(accountHolder);
+        AccountLocks.run(accountHolder, () -> userFinancialAccount.setBudget(category, amount));
     }
 
     private void validateBudgetInput(String category, double amount) {
@@ -130,10 +218,10 @@ public class FinancialOperationsService {
             throw new IllegalArgumentException("Категория не может быть пустой");
         }
         FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
-        if (!userFinancialAccount.getBudgetsCategories().containsKey(category)) {
+        boolean removed = AccountLocks.call(accountHolder, () -> userFinancialAccount.removeBudget(category));
+        if (!removed) {
             throw new CategoryMissingException("Бюджет для категории '" + category + "' не найден");
         }
-        userFinancialAccount.getBudgetsCategories().remove(category);
     }
 
     // Гибкий выбор категорий или периода, корректные уведомления при отсутствии данных
@@ -142,31 +230,101 @@ public class FinancialOperationsService {
             return new ArrayList<>();
         }
 
-        FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
-        return userFinancialAccount.getFinancialEntries().stream()
-                .filter(t -> categories.contains(t.getCategory()))
-                .collect(Collectors.toList());
+        // Для столбцового хранения сравниваются коды категорий без создания объектов транзакций
+        return accountHolder.getFinancialAccount().getTransactionsInCategories(categories);
     }
 
     public List<FinancialEntry> getTransactionByCategories(AccountHolder accountHolder, LocalDateTime timeFrom,
                                                            LocalDateTime timeTo, Set<String> categories) {
-        List<FinancialEntry> list = getTransactionByCategories(accountHolder, categories);
-        if (list.isEmpty()) {
-            return list;
+        if (categories == null || categories.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        return list.stream()
-                .filter(t -> !t.getTimestamp().isBefore(timeFrom) && !t.getTimestamp().isAfter(timeTo))
+        // Период выбирается бинарным поиском по индексу времени, просматриваются только транзакции из него
+        BitSet ids = CategoryDictionary.idsOf(categories);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return accountHolder.getFinancialAccount().getTransactionsBetween(timeFrom, timeTo).stream()
+                .filter(t -> t.getCategoryId() != CategoryDictionary.NO_CATEGORY && ids.get(t.getCategoryId()))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Итоги по категориям за период (границы включаются; null, LocalDateTime.MIN и MAX — без границы).
+     * Период раскладывается по самым крупным сводкам: полные месяцы берутся из месячных сводок,
+     * полные дни на краях — из дневных, и только неполные первый и последний день
+     * просматриваются по транзакциям. Поэтому отчет за несколько лет складывает десятки сводок.
+     *
+     * @param categories категории; пустой набор или null — все категории
+     * @return итоги по названию категории, без категорий без транзакций за период
+     */
+    public Map<String, CategoryTotals> getTotalsByCategory(AccountHolder accountHolder, LocalDateTime timeFrom,
+                                                           LocalDateTime timeTo, Set<String> categories) {
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        Collection<String> wanted = categories == null || categories.isEmpty()
+                ? account.getCategoryTotals().keySet() : categories;
+        LocalDateTime from = LocalDateTime.MIN.equals(timeFrom) ? null : timeFrom;
+        LocalDateTime to = LocalDateTime.MAX.equals(timeTo) ? null : timeTo;
+
+        Map<String, CategoryTotals> result = new TreeMap<>();
+        if (from != null && to != null && from.isAfter(to)) {
+            return result;
+        }
+        for (String category : wanted) {
+            int categoryId = CategoryDictionary.find(category);
+            if (account.getCategoryTotals(categoryId) == null) {
+                continue;
+            }
+            CategoryTotals totals = new CategoryTotals();
+            sumPeriod(account, categoryId, from, to, totals);
+            if (!totals.isEmpty()) {
+                result.put(category, totals);
+            }
+        }
+        return result;
+    }
+
+    private static void sumPeriod(FinancialAccount account, int categoryId, LocalDateTime from, LocalDateTime to,
+                                  CategoryTotals into) {
+        // Первый и последний дни, целиком попадающие в период
+        LocalDate firstDay = from == null ? null
+                : from.toLocalTime().equals(LocalTime.MIDNIGHT) ? from.toLocalDate() : from.toLocalDate().plusDays(1);
+        LocalDate lastDay = to == null ? null
+                : to.toLocalTime().equals(LocalTime.MAX) ? to.toLocalDate() : to.toLocalDate().minusDays(1);
+        if (firstDay != null && lastDay != null && firstDay.isAfter(lastDay)) {
+            // Период укладывается в неполные дни
+            account.sumTransactions(categoryId, from, to, into);
+            return;
+        }
+        if (from != null && !firstDay.equals(from.toLocalDate())) {
+            account.sumTransactions(categoryId, from, firstDay.atStartOfDay().minusNanos(1), into);
+        }
+        if (to != null && !lastDay.equals(to.toLocalDate())) {
+            account.sumTransactions(categoryId, lastDay.plusDays(1).atStartOfDay(), to, into);
+        }
+
+        // Первый и последний месяцы, целиком попадающие в полные дни
+        YearMonth firstMonth = firstDay == null ? null
+                : firstDay.getDayOfMonth() == 1 ? YearMonth.from(firstDay) : YearMonth.from(firstDay).plusMonths(1);
+        YearMonth lastMonth = lastDay == null ? null
+                : lastDay.equals(YearMonth.from(lastDay).atEndOfMonth()) ? YearMonth.from(lastDay) : YearMonth.from(lastDay).minusMonths(1);
+        if (firstMonth != null && lastMonth != null && firstMonth.isAfter(lastMonth)) {
+            account.sumDays(categoryId, firstDay, lastDay, into);
+            return;
+        }
+        if (firstDay != null && firstDay.getDayOfMonth() != 1) {
+            account.sumDays(categoryId, firstDay, firstMonth.atDay(1).minusDays(1), into);
+        }
+        if (lastDay != null && !lastDay.equals(lastMonth.atEndOfMonth())) {
+            account.sumDays(categoryId, lastMonth.plusMonths(1).atDay(1), lastDay, into);
+        }
+        account.sumMonths(categoryId, firstMonth, lastMonth, into);
+    }
+
     public List<String> getAllCategories(AccountHolder accountHolder) {
-        FinancialAccount userFinancialAccount = accountHolder.getFinancialAccount();
-        return userFinancialAccount.getFinancialEntries().stream()
-                .map(FinancialEntry::getCategory)
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
+        // Индекс категорий уже отсортирован по названию
+        return new ArrayList<>(accountHolder.getFinancialAccount().getCategoryTotals().keySet());
     }
 
     public List<String> getBudgetCategories(AccountHolder accountHolder) {
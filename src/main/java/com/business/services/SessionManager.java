@@ -0,0 +1,180 @@
+package com.business.services;
+
+import com.business.entities.AccountHolder;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сессии пользователей: непрозрачный токен -> пользователь.
+ * Неактивные сессии удаляются колесом таймеров: сессия лежит в ячейке по сроку истечения,
+ * и на каждом такте проверяется только одна ячейка. Обращение к сессии лишь обновляет
+ * время последней активности, а перенос в новую ячейку происходит, когда до нее дойдет колесо.
+ * Бессрочные сессии (например, консольная) в колесо не попадают и закрываются только явно.
+ */
+public class SessionManager {
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+    private static final Duration DEFAULT_TICK = Duration.ofSeconds(1);
+    private static final int WHEEL_SIZE = 512;
+    private static final int TOKEN_BYTES = 32;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Queue<Session>> byUser = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long idleTimeoutNanos;
+    private final long tickNanos;
+    private final Queue<Session>[] wheel;
+    private final ScheduledExecutorService timer;
+    private long currentTick;
+
+    public SessionManager() {
+        this(DEFAULT_IDLE_TIMEOUT, DEFAULT_TICK);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SessionManager(Duration idleTimeout, Duration tick) {
+        if (idleTimeout.isNegative() || idleTimeout.isZero() || tick.isNegative() || tick.isZero()) {
+            throw new IllegalArgumentException("Время жизни сессии и шаг таймера должны быть положительными");
+        }
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.tickNanos = tick.toNanos();
+        this.wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.currentTick = System.nanoTime() / tickNanos;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public String open(AccountHolder accountHolder) {
+        return open(accountHolder, true);
+    }
+
+    // Сессия без срока неактивности
+    public String openPersistent(AccountHolder accountHolder) {
+        return open(accountHolder, false);
+    }
+
+    private String open(AccountHolder accountHolder, boolean expiring) {
+        if (accountHolder == null) {
+            throw new IllegalArgumentException("Пользователь не может быть null");
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(token, accountHolder, System.nanoTime(), expiring);
+        sessions.put(token, session);
+        byUser.computeIfAbsent(accountHolder.getUsername(), u -> new ConcurrentLinkedQueue<>()).add(session);
+        if (expiring) {
+            schedule(session);
+        }
+        return token;
+    }
+
+    // Пользователь сессии с продлением ее активности, null для неизвестной или истекшей сессии
+    public AccountHolder find(String token) {
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (session.expiring && now - session.lastAccess >= idleTimeoutNanos) {
+            remove(session);
+            return null;
+        }
+        session.lastAccess = now;
+        return session.accountHolder;
+    }
+
+    public void close(String token) {
+        Session session = token != null ? sessions.get(token) : null;
+        if (session != null) {
+            remove(session);
+        }
+    }
+
+    // Закрывает все сессии пользователя, например после удаления аккаунта
+    public void closeAll(String username) {
+        Queue<Session> userSessions = username != null ? byUser.remove(username) : null;
+        if (userSessions != null) {
+            userSessions.forEach(this::remove);
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private void schedule(Session session) {
+        long deadlineTick = (session.lastAccess + idleTimeoutNanos + tickNanos - 1) / tickNanos;
+        wheel[(int) (deadlineTick & (WHEEL_SIZE - 1))].add(session);
+    }
+
+    private void remove(Session session) {
+        if (sessions.remove(session.token, session)) {
+            Queue<Session> userSessions = byUser.get(session.accountHolder.getUsername());
+            if (userSessions != null) {
+                userSessions.remove(session);
+                if (userSessions.isEmpty()) {
+                    byUser.remove(session.accountHolder.getUsername(), userSessions);
+                }
+            }
+        }
+    }
+
+    // Обрабатывает все ячейки, до которых дошло время; вызывается только потоком таймера
+    private void advance() {
+        long targetTick = System.nanoTime() / tickNanos;
+        long now = System.nanoTime();
+        for (; currentTick <= targetTick; currentTick++) {
+            Queue<Session> bucket = wheel[(int) (currentTick & (WHEEL_SIZE - 1))];
+            List<Session> due = new ArrayList<>();
+            for (Session session; (session = bucket.poll()) != null; ) {
+                due.add(session);
+            }
+            for (Session session : due) {
+                if (sessions.get(session.token) != session) {
+                    continue;
+                }
+                if (now - session.lastAccess >= idleTimeoutNanos) {
+                    remove(session);
+                } else {
+                    schedule(session);
+                }
+            }
+        }
+    }
+
+    private static final class Session {
+        private final String token;
+        private final AccountHolder accountHolder;
+        private final boolean expiring;
+        private volatile long lastAccess;
+
+        private Session(String token, AccountHolder accountHolder, long lastAccess, boolean expiring) {
+            this.token = token;
+            this.accountHolder = accountHolder;
+            this.lastAccess = lastAccess;
+            this.expiring = expiring;
+        }
+    }
+}
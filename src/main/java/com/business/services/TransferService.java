@@ -0,0 +1,84 @@
+package com.business.services;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialEntry;
+import com.business.entities.Money;
+import com.business.exception.InsufficientFundsException;
+import com.business.ports.UserStoragePort;
+
+import java.time.LocalDateTime;
+
+/**
+ * Переводы между пользователями. Проверка баланса и запись обеих транзакций
+ * выполняются под блокировками обоих аккаунтов, поэтому параллельные переводы
+ * не могут увести баланс отправителя в минус. Обе части перевода сохраняются
+ * хранилищем как одно целое, а если одна из них не удалась (в том числе в слушателе),
+ * уже проведенная часть откатывается.
+ */
+public class TransferService {
+    private final UserStoragePort userStoragePort;
+
+    public TransferService() {
+        this(null);
+    }
+
+    public TransferService(UserStoragePort userStoragePort) {
+        this.userStoragePort = userStoragePort;
+    }
+
+    public void transfer(AccountHolder sender, AccountHolder recipient, double amount, String description) {
+        if (sender == null || recipient == null) {
+            throw new IllegalArgumentException("Отправитель и получатель должны быть указаны");
+        }
+        if (sender.equals(recipient)) {
+            throw new IllegalArgumentException("Нельзя перевести деньги самому себе");
+        }
+        long amountCents = Double.isFinite(amount) ? Money.ofDouble(amount) : 0;
+        if (amountCents <= 0) {
+            throw new IllegalArgumentException("Сумма должна быть положительной");
+        }
+        String outgoing = description == null || description.trim().isEmpty()
+                ? "Перевод пользователю " + recipient.getUsername() : description.trim();
+        String incoming = "Перевод от " + sender.getUsername();
+
+        AccountLocks.run(sender, recipient, () -> {
+            long balanceCents = sender.getFinancialAccount().getBalanceCents();
+            if (amountCents > balanceCents) {
+                throw new InsufficientFundsException("Недостаточно средств. Доступно: " + Money.format(balanceCents));
+            }
+            // Одно время у обеих частей перевода
+            LocalDateTime timestamp = LocalDateTime.now();
+            FinancialEntry debit = FinancialEntry.ofCents(amountCents, outgoing, false, timestamp);
+            FinancialEntry credit = FinancialEntry.ofCents(amountCents, incoming, true, timestamp);
+            Runnable legs = () -> {
+                try {
+                    sender.getFinancialAccount().addTransaction(debit);
+                    recipient.getFinancialAccount().addTransaction(credit);
+                } catch (RuntimeException e) {
+                    rollback(recipient.getFinancialAccount(), credit, e);
+                    rollback(sender.getFinancialAccount(), debit, e);
+                    throw e;
+                }
+            };
+            if (userStoragePort != null) {
+                userStoragePort.atomically(legs);
+            } else {
+                legs.run();
+            }
+        });
+    }
+
+    // Транзакция могла попасть в аккаунт, даже если исключение бросил слушатель
+    private static void rollback(FinancialAccount account, FinancialEntry entry, RuntimeException cause) {
+        int index = account.indexOfTransaction(entry);
+        if (index < 0) {
+            return;
+        }
+        try {
+            account.removeTransaction(index);
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
@@ -1,14 +1,18 @@
 package com.business.services;
 
 import com.business.exception.CategoryMissingException;
+import com.business.exception.InsufficientFundsException;
 import com.business.exception.PasswordMismatchException;
 import com.business.exception.UserAlreadyExistsException;
 import com.business.exception.UserMissingException;
 import com.business.entities.FinancialEntry;
 import com.business.entities.AccountHolder;
+import com.business.entities.Money;
+import com.infrastructure.CsvStatementParser;
 import com.interf.DisplayService;
 
 import java.io.File;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -22,6 +26,7 @@ public class UserInteractionHandler {
     private final Scanner scanner;
     private final DataPersistenceService dataPersistenceService;
     private final DisplayService displayService;
+    private final TransferService transferService;
 
     public UserInteractionHandler(AuthenticationService authenticationService, FinancialOperationsService financialOperationsService,
                                   Scanner scanner, DataPersistenceService dataPersistenceService, DisplayService displayService) {
@@ -30,6 +35,7 @@ public class UserInteractionHandler {
         this.scanner = scanner;
         this.dataPersistenceService = dataPersistenceService;
         this.displayService = displayService;
+        this.transferService = new TransferService(authenticationService.getUserStoragePort());
     }
 
     // Метод изображения меню регистрации
@@ -167,7 +173,7 @@ public class UserInteractionHandler {
                 handleHelp();
                 break;
             case "8":
-                displayService.showAllTransactions(false);
+                displayService.showAllTransactions(authenticationService.getCurrentSession(), false);
                 System.out.println("\nНажмите Enter для продолжения...");
                 scanner.nextLine();
                 break;
@@ -212,6 +218,9 @@ public class UserInteractionHandler {
                 handleDeleteUser();
                 break;
             case "4":
+                handleImportStatement();
+                break;
+            case "5":
                 break;
             default:
                 System.out.println("❌ Некорректный ввод.");
@@ -223,9 +232,13 @@ public class UserInteractionHandler {
         switch (scanner.nextLine().trim().toUpperCase()) {
             case "Y":
             case "ДА":
-                String username = authenticationService.getCurrentAccountHolder().getUsername();
-                authenticationService.getUserMap().remove(username);
-                authenticationService.unLogin();
+                AccountHolder accountHolder = authenticationService.getCurrentAccountHolder();
+                if (accountHolder == null) {
+                    System.out.println("❌ Пользователь не авторизован.");
+                    break;
+                }
+                String username = accountHolder.getUsername();
+                authenticationService.deleteUser(username);
                 System.out.println("✅ Пользователь '" + username + "' успешно удален.");
                 break;
             case "N":
@@ -237,6 +250,36 @@ public class UserInteractionHandler {
         }
     }
 
+    private void handleImportStatement() {
+        AccountHolder accountHolder = authenticationService.getCurrentAccountHolder();
+        if (accountHolder == null) {
+            System.out.println("❌ Ошибка: пользователь не авторизован!");
+            return;
+        }
+
+        System.out.print("Введите имя CSV файла выписки: ");
+        File file = new File(scanner.nextLine().trim());
+        if (!file.isFile()) {
+            System.out.println("❌ Файл '" + file.getPath() + "' не найден.");
+            return;
+        }
+
+        try {
+            CsvStatementParser.Result result = financialOperationsService.importStatement(accountHolder, file.toPath());
+            System.out.printf("✅ Импортировано транзакций: %d из %d строк за %d мс (%.0f строк/с)%n",
+                    result.getEntries().size(), result.getRows(), result.getElapsed().toMillis(),
+                    result.getRowsPerSecond());
+            if (result.getRejectedCount() > 0) {
+                System.out.println("⚠️  Отклонено строк: " + result.getRejectedCount());
+                result.getRejected().stream()
+                        .limit(10)
+                        .forEach(rejected -> System.out.println("   " + rejected));
+            }
+        } catch (IOException e) {
+            System.out.println("❌ Ошибка при чтении выписки: " + e.getMessage());
+        }
+    }
+
     private void handleSaveJson() {
         try {
             AccountHolder currentAccountHolder = authenticationService.getCurrentAccountHolder();
@@ -279,25 +322,25 @@ public class UserInteractionHandler {
                 return;
             }
 
-            Map<String, AccountHolder> userMap = authenticationService.getUserMap();
-            if (userMap.containsKey(loadedAccountHolder.getUsername())) {
+            if (authenticationService.userExists(loadedAccountHolder.getUsername())) {
                 System.out.print("Пользователь '" + loadedAccountHolder.getUsername() +
                         "' уже существует. Перезаписать? (Y/N): ");
                 String answer = scanner.nextLine().trim().toUpperCase();
                 if (answer.equals("Y") || answer.equals("ДА")) {
-                    userMap.put(loadedAccountHolder.getUsername(), loadedAccountHolder);
+                    authenticationService.addUser(loadedAccountHolder);
                     System.out.println("✅ Данные пользователя обновлены.");
 
                     // Если это текущий пользователь, обновляем его
-                    if (authenticationService.getCurrentAccountHolder() != null &&
-                            authenticationService.getCurrentAccountHolder().getUsername().equals(loadedAccountHolder.getUsername())) {
+                    AccountHolder currentAccountHolder = authenticationService.getCurrentAccountHolder();
+                    if (currentAccountHolder != null &&
+                            currentAccountHolder.getUsername().equals(loadedAccountHolder.getUsername())) {
                         authenticationService.setCurrentAccountHolder(loadedAccountHolder);
                     }
                 } else {
                     System.out.println("Загрузка отменена.");
                 }
             } else {
-                userMap.put(loadedAccountHolder.getUsername(), loadedAccountHolder);
+                authenticationService.addUser(loadedAccountHolder);
                 System.out.println("✅ Пользователь '" + loadedAccountHolder.getUsername() + "' успешно добавлен.");
             }
         } catch (Exception e) {
@@ -324,7 +367,7 @@ public class UserInteractionHandler {
         String amountInput = scanner.nextLine().trim();
 
         try {
-            double amount = Double.parseDouble(amountInput);
+            double amount = Money.toDouble(Money.parse(amountInput));
             financialOperationsService.addIncome(accountHolder, category, amount);
             System.out.printf("✅ Добавлен доход: %s - %.2f%n", category, amount);
         } catch (NumberFormatException e) {
@@ -345,7 +388,7 @@ public class UserInteractionHandler {
                 handleAddOutcome();
                 break;
             case "3":
-                displayService.showAllTransactions(false);
+                displayService.showAllTransactions(authenticationService.getCurrentSession(), false);
                 System.out.println("\nНажмите Enter для продолжения...");
                 scanner.nextLine();
                 break;
@@ -381,7 +424,7 @@ public class UserInteractionHandler {
         String amountInput = scanner.nextLine().trim();
 
         try {
-            double amount = Double.parseDouble(amountInput);
+            double amount = Money.toDouble(Money.parse(amountInput));
             financialOperationsService.addOutcome(accountHolder, category, amount);
             System.out.printf("✅ Добавлен расход: %s - %.2f%n", category, amount);
 
@@ -422,7 +465,7 @@ public class UserInteractionHandler {
                 handleRemoveBudget();
                 break;
             case "3":
-                displayService.showCategories();
+                displayService.showCategories(authenticationService.getCurrentSession());
                 System.out.println("\nНажмите Enter для продолжения...");
                 scanner.nextLine();
                 break;
@@ -447,7 +490,7 @@ public class UserInteractionHandler {
         }
 
         try {
-            displayService.showAllTransactions(false);
+            displayService.showAllTransactions(authenticationService.getCurrentSession(), false);
             System.out.print("\nВведите номер транзакции для изменения: ");
             String transactionInput = scanner.nextLine().trim();
 
@@ -478,7 +521,7 @@ public class UserInteractionHandler {
                         System.out.print("Введите новую сумму: ");
                         String amountInput = scanner.nextLine().trim();
                         try {
-                            double amount = Double.parseDouble(amountInput);
+                            double amount = Money.toDouble(Money.parse(amountInput));
                             if (amount <= 0) {
                                 System.out.println("❌ Сумма должна быть положительной.");
                             } else {
@@ -527,7 +570,7 @@ public class UserInteractionHandler {
         }
 
         try {
-            displayService.showAllTransactions(false);
+            displayService.showAllTransactions(authenticationService.getCurrentSession(), false);
             System.out.print("\nВведите номер транзакции для удаления: ");
             String transactionInput = scanner.nextLine().trim();
 
@@ -537,9 +580,9 @@ public class UserInteractionHandler {
                 return;
             }
 
-            FinancialEntry removed = financialEntries.remove(transactionIndex);
-            System.out.printf("✅ Транзакция №%d удалена: %s - %.2f%n",
-                    (transactionIndex + 1), removed.getCategory(), removed.getAmount());
+            FinancialEntry removed = accountHolder.getFinancialAccount().removeTransaction(transactionIndex);
+            System.out.printf("✅ Транзакция №%d удалена: %s - %s%n",
+                    (transactionIndex + 1), removed.getCategory(), Money.format(removed.getAmountCents()));
 
         } catch (NumberFormatException e) {
             System.out.println("❌ Введите корректный номер.");
@@ -591,7 +634,7 @@ public class UserInteractionHandler {
             System.out.print("Введите сумму бюджета: ");
             String amountInput = scanner.nextLine().trim();
 
-            double amount = Double.parseDouble(amountInput);
+            double amount = Money.toDouble(Money.parse(amountInput));
             financialOperationsService.setBudget(accountHolder, category, amount);
             System.out.printf("✅ Бюджет для категории '%s' установлен: %.2f%n", category, amount);
 
@@ -611,7 +654,7 @@ public class UserInteractionHandler {
         }
 
         try {
-            displayService.showAllTransactions(true);
+            displayService.showAllTransactions(authenticationService.getCurrentSession(), true);
             String param = scanner.nextLine().trim();
             switch (param) {
                 case "1":
@@ -651,7 +694,7 @@ public class UserInteractionHandler {
                 return;
             }
 
-            AccountHolder recipient = authenticationService.getUserMap().get(username);
+            AccountHolder recipient = authenticationService.findUser(username);
             if (recipient == null) {
                 System.out.println("❌ Пользователь '" + username + "' не найден.");
                 return;
@@ -659,7 +702,7 @@ public class UserInteractionHandler {
 
             System.out.print("Введите сумму перевода: ");
             String amountInput = scanner.nextLine().trim();
-            double amount = Double.parseDouble(amountInput);
+            double amount = Money.toDouble(Money.parse(amountInput));
 
             if (amount <= 0) {
                 System.out.println("❌ Сумма должна быть положительной.");
@@ -674,19 +717,17 @@ public class UserInteractionHandler {
 
             System.out.print("Введите описание перевода (необязательно): ");
             String description = scanner.nextLine().trim();
-            if (description.isEmpty()) {
-                description = "Перевод пользователю " + username;
-            }
 
-            // Выполняем перевод
-            financialOperationsService.addOutcome(accountHolder, description, amount);
-            financialOperationsService.addIncome(recipient, "Перевод от " + accountHolder.getUsername(), amount);
+            // Баланс проверяется еще раз под блокировкой: за время ввода он мог измениться
+            transferService.transfer(accountHolder, recipient, amount, description);
 
             System.out.printf("✅ Успешно переведено %.2f пользователю '%s'%n", amount, username);
             System.out.printf("Ваш новый баланс: %.2f%n", financialOperationsService.getCurrentBalance(accountHolder));
 
         } catch (NumberFormatException e) {
             System.out.println("❌ Введите корректное число.");
+        } catch (InsufficientFundsException e) {
+            System.out.println("❌ " + e.getMessage());
         }
     }
 
@@ -695,13 +736,13 @@ public class UserInteractionHandler {
         String cases = scanner.nextLine().trim();
         switch (cases) {
             case "1":
-                displayService.showAllStatistic();
+                displayService.showAllStatistic(authenticationService.getCurrentSession());
                 break;
             case "2":
                 handleStatisticByCategory();
                 break;
             case "3":
-                displayService.showCategories();
+                displayService.showCategories(authenticationService.getCurrentSession());
                 break;
             case "4":
                 break;
@@ -762,6 +803,6 @@ public class UserInteractionHandler {
         String[] categories = categoriesInput.isEmpty() ?
                 new String[0] : categoriesInput.split(",\\s*");
 
-        displayService.showStatisticByCategory(firstTime, secondTime, categories);
+        displayService.showStatisticByCategory(authenticationService.getCurrentSession(), firstTime, secondTime, categories);
     }
 }
\ No newline at end of file
@@ -0,0 +1,453 @@
+package com.infrastructure;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialEntry;
+import com.business.entities.Money;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Инкрементальные резервные копии с адресацией по содержимому.
+ * История каждого пользователя режется на фрагменты по {@link #ENTRIES_PER_CHUNK} транзакций,
+ * фрагмент хранится один раз под своим SHA-256. Новые транзакции дописываются в конец истории,
+ * поэтому у следующей копии меняются только последние фрагменты.
+ *
+ * <pre>
+ * backups/chunks/ab/abcdef...   фрагменты: пароль и бюджеты пользователя или часть его транзакций
+ * backups/manifests/&lt;id&gt;        манифест: для каждого пользователя хеши его фрагментов
+ * </pre>
+ * Хранятся последние retention копий, фрагменты, на которые не ссылается ни один манифест, удаляются.
+ */
+public class BackupStore {
+    public static final int ENTRIES_PER_CHUNK = 4096;
+    public static final int DEFAULT_RETENTION = 20;
+
+    private static final int MAGIC = 0x464E424B; // "FNBK"
+    private static final short VERSION = 3;
+    // Копии версии 2 хранят null-категорию как пустую строку, версии 1 — еще и суммы как double;
+    // они по-прежнему восстанавливаются
+    private static final short VERSION_WITHOUT_CATEGORY_FLAG = 2;
+    private static final short VERSION_WITH_DOUBLE_AMOUNTS = 1;
+    private static final int HEADER_SIZE = 14;
+    private static final int HASH_SIZE = 32;
+    private static final String MANIFEST_PREFIX = "backup-";
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path directory;
+    private final Path chunksDirectory;
+    private final Path manifestsDirectory;
+    private final int retention;
+    // Хеши фрагментов последней копии: пользователь с той же версией аккаунта повторно не режется
+    private final Map<String, UserChunks> lastChunks = new HashMap<>();
+
+    public BackupStore(Path directory) {
+        this(directory, DEFAULT_RETENTION);
+    }
+
+    public BackupStore(Path directory, int retention) {
+        if (retention <= 0) {
+            throw new IllegalArgumentException("Число хранимых копий должно быть положительным");
+        }
+        this.directory = directory;
+        this.chunksDirectory = directory.resolve("chunks");
+        this.manifestsDirectory = directory.resolve("manifests");
+        this.retention = retention;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Создает копию. Если с прошлой копии ничего не изменилось, новый манифест не пишется.
+     *
+     * @param users пользователи; аккаунты не должны меняться во время вызова
+     * @return итог копирования
+     */
+    public synchronized Result backup(Map<String, AccountHolder> users) throws IOException {
+        return backup(users::forEach);
+    }
+
+    /**
+     * Создает копию за один обход пользователей: пользователь читается один раз и дальше
+     * не удерживается, в памяти остаются только хеши его фрагментов.
+     *
+     * @param users обход пользователей, например {@code storage::forEachUser}
+     * @return итог копирования
+     */
+    public synchronized Result backup(Consumer<BiConsumer<String, AccountHolder>> users) throws IOException {
+        Files.createDirectories(chunksDirectory);
+        Files.createDirectories(manifestsDirectory);
+
+        Result result = new Result();
+        Map<String, UserChunks> current = new TreeMap<>();
+        try {
+            users.accept((username, accountHolder) -> {
+                try {
+                    current.put(username, chunksOf(accountHolder, result));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        lastChunks.keySet().retainAll(current.keySet());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(current.size());
+        for (Map.Entry<String, UserChunks> user : current.entrySet()) {
+            out.writeUTF(user.getKey());
+            out.writeInt(user.getValue().hashes.size());
+            for (byte[] hash : user.getValue().hashes) {
+                out.write(hash);
+            }
+        }
+        out.flush();
+        byte[] manifestBody = body.toByteArray();
+        result.users = current.size();
+
+        List<String> existing = list();
+        if (!existing.isEmpty() && Arrays.equals(manifestBody, readBody(existing.get(existing.size() - 1)))) {
+            result.id = existing.get(existing.size() - 1);
+            result.unchanged = true;
+            return result;
+        }
+
+        long created = System.currentTimeMillis();
+        String id = MANIFEST_PREFIX + created;
+        for (int n = 1; Files.exists(manifestsDirectory.resolve(id)); n++) {
+            id = MANIFEST_PREFIX + created + "-" + n;
+        }
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream(HEADER_SIZE + manifestBody.length);
+        DataOutputStream header = new DataOutputStream(manifest);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeLong(created);
+        header.write(manifestBody);
+        header.flush();
+        writeAtomically(manifestsDirectory.resolve(id), manifest.toByteArray());
+        result.id = id;
+
+        applyRetention();
+        return result;
+    }
+
+    // Идентификаторы копий от старых к новым
+    public List<String> list() throws IOException {
+        if (!Files.isDirectory(manifestsDirectory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(manifestsDirectory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(MANIFEST_PREFIX) && !name.endsWith(".tmp"))
+                    .sorted((a, b) -> Long.compare(createdAt(a), createdAt(b)) != 0
+                            ? Long.compare(createdAt(a), createdAt(b)) : a.compareTo(b))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Восстанавливает пользователей из копии. Каждый фрагмент сверяется со своим хешем.
+     */
+    public Map<String, AccountHolder> restore(String id) throws IOException {
+        Path manifest = manifestsDirectory.resolve(id);
+        if (!Files.exists(manifest)) {
+            throw new IOException("Резервная копия не найдена: " + id);
+        }
+        byte[] manifestBytes = readManifest(id);
+        short version = ByteBuffer.wrap(manifestBytes).getShort(4);
+        byte[] body = Arrays.copyOfRange(manifestBytes, HEADER_SIZE, manifestBytes.length);
+        Map<String, AccountHolder> users = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            int userCount = in.readInt();
+            for (int i = 0; i < userCount; i++) {
+                String username = in.readUTF();
+                int chunkCount = in.readInt();
+                if (chunkCount < 1) {
+                    throw new IOException("Манифест " + id + " поврежден: у пользователя '" + username + "' нет фрагментов");
+                }
+                DataInputStream head = new DataInputStream(new ByteArrayInputStream(readChunk(readHash(in))));
+                AccountHolder accountHolder = new AccountHolder(username, head.readUTF());
+                Map<String, Double> budgets = new TreeMap<>();
+                int budgetCount = head.readInt();
+                for (int b = 0; b < budgetCount; b++) {
+                    budgets.put(head.readUTF(), head.readDouble());
+                }
+
+                List<FinancialEntry> entries = new ArrayList<>();
+                for (int c = 1; c < chunkCount; c++) {
+                    DataInputStream chunk = new DataInputStream(new ByteArrayInputStream(readChunk(readHash(in))));
+                    int entryCount = chunk.readInt();
+                    for (int e = 0; e < entryCount; e++) {
+                        entries.add(readEntry(chunk, version));
+                    }
+                }
+                accountHolder.setFinancialAccount(FinancialAccount.restore(budgets, entries));
+                users.put(username, accountHolder);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Манифест или фрагмент копии " + id + " обрезан", e);
+        }
+        return users;
+    }
+
+    // Первый фрагмент — пароль и бюджеты, далее транзакции по ENTRIES_PER_CHUNK
+    private UserChunks chunksOf(AccountHolder accountHolder, Result result) throws IOException {
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        UserChunks cached = lastChunks.get(accountHolder.getUsername());
+        if (cached != null && cached.instanceId == account.getInstanceId() && cached.version == account.getVersion()
+                && cached.password.equals(accountHolder.getPassword())) {
+            result.chunksReused += cached.hashes.size();
+            return cached;
+        }
+
+        UserChunks chunks = new UserChunks(account.getInstanceId(), account.getVersion(), accountHolder.getPassword());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(accountHolder.getPassword());
+        Map<String, Double> budgets = account.getBudgetsCategories();
+        out.writeInt(budgets.size());
+        for (Map.Entry<String, Double> budget : budgets.entrySet()) {
+            out.writeUTF(budget.getKey());
+            out.writeDouble(budget.getValue());
+        }
+        chunks.hashes.add(store(bytes, result));
+
+        List<FinancialEntry> entries = account.getFinancialEntries();
+        for (int from = 0; from < entries.size(); from += ENTRIES_PER_CHUNK) {
+            int to = Math.min(entries.size(), from + ENTRIES_PER_CHUNK);
+            bytes.reset();
+            out.writeInt(to - from);
+            for (int i = from; i < to; i++) {
+                writeEntry(out, entries.get(i));
+            }
+            chunks.hashes.add(store(bytes, result));
+        }
+        lastChunks.put(accountHolder.getUsername(), chunks);
+        return chunks;
+    }
+
+    private byte[] store(ByteArrayOutputStream bytes, Result result) throws IOException {
+        byte[] content = bytes.toByteArray();
+        byte[] hash = sha256(content);
+        Path chunk = chunkPath(hash);
+        if (Files.exists(chunk)) {
+            result.chunksReused++;
+        } else {
+            Files.createDirectories(chunk.getParent());
+            writeAtomically(chunk, content);
+            result.chunksWritten++;
+            result.bytesWritten += content.length;
+        }
+        return hash;
+    }
+
+    private byte[] readChunk(byte[] hash) throws IOException {
+        Path chunk = chunkPath(hash);
+        if (!Files.exists(chunk)) {
+            throw new IOException("Фрагмент копии отсутствует: " + HEX.formatHex(hash));
+        }
+        byte[] content = Files.readAllBytes(chunk);
+        if (!Arrays.equals(hash, sha256(content))) {
+            throw new IOException("Фрагмент копии поврежден: " + HEX.formatHex(hash));
+        }
+        return content;
+    }
+
+    private void applyRetention() throws IOException {
+        List<String> manifests = list();
+        if (manifests.size() <= retention) {
+            return;
+        }
+        for (String id : manifests.subList(0, manifests.size() - retention)) {
+            Files.deleteIfExists(manifestsDirectory.resolve(id));
+        }
+
+        Set<String> referenced = new HashSet<>();
+        for (String id : list()) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(readBody(id)))) {
+                int userCount = in.readInt();
+                for (int i = 0; i < userCount; i++) {
+                    in.readUTF();
+                    int chunkCount = in.readInt();
+                    for (int c = 0; c < chunkCount; c++) {
+                        referenced.add(HEX.formatHex(readHash(in)));
+                    }
+                }
+            }
+        }
+        try (Stream<Path> files = Files.walk(chunksDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file) && !referenced.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private byte[] readBody(String id) throws IOException {
+        byte[] manifest = readManifest(id);
+        return Arrays.copyOfRange(manifest, HEADER_SIZE, manifest.length);
+    }
+
+    private byte[] readManifest(String id) throws IOException {
+        byte[] manifest = Files.readAllBytes(manifestsDirectory.resolve(id));
+        short version = manifest.length < HEADER_SIZE ? 0 : ByteBuffer.wrap(manifest).getShort(4);
+        if (manifest.length < HEADER_SIZE
+                || ByteBuffer.wrap(manifest).getInt() != MAGIC
+                || version < VERSION_WITH_DOUBLE_AMOUNTS || version > VERSION) {
+            throw new IOException("Неверный формат манифеста: " + id);
+        }
+        return manifest;
+    }
+
+    private Path chunkPath(byte[] hash) {
+        String name = HEX.formatHex(hash);
+        return chunksDirectory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static long createdAt(String id) {
+        String rest = id.substring(MANIFEST_PREFIX.length());
+        int dash = rest.indexOf('-');
+        try {
+            return Long.parseLong(dash < 0 ? rest : rest.substring(0, dash));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void writeAtomically(Path path, byte[] content) throws IOException {
+        Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tempFile, content);
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] readHash(DataInputStream in) throws IOException {
+        byte[] hash = new byte[HASH_SIZE];
+        in.readFully(hash);
+        return hash;
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, FinancialEntry entry) throws IOException {
+        out.writeLong(entry.getAmountCents());
+        out.writeBoolean(entry.getCategory() != null);
+        if (entry.getCategory() != null) {
+            out.writeUTF(entry.getCategory());
+        }
+        out.writeBoolean(Boolean.TRUE.equals(entry.getIsIncome()));
+        LocalDateTime timestamp = entry.getTimestamp();
+        if (timestamp == null) {
+            out.writeLong(NO_TIMESTAMP);
+            out.writeInt(0);
+        } else {
+            out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(timestamp.getNano());
+        }
+    }
+
+    private static FinancialEntry readEntry(DataInputStream in, short version) throws IOException {
+        long amountCents = version == VERSION_WITH_DOUBLE_AMOUNTS ? Money.ofDouble(in.readDouble()) : in.readLong();
+        String category;
+        if (version > VERSION_WITHOUT_CATEGORY_FLAG) {
+            category = in.readBoolean() ? in.readUTF() : null;
+        } else {
+            String stored = in.readUTF();
+            category = stored.isEmpty() ? null : stored;
+        }
+        boolean income = in.readBoolean();
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return FinancialEntry.ofCents(amountCents, category, income,
+                seconds == NO_TIMESTAMP ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+    }
+
+    private static final class UserChunks {
+        // Аккаунт узнается по номеру, а не по ссылке: кэш не удерживает аккаунты в памяти
+        private final long instanceId;
+        private final long version;
+        private final String password;
+        private final List<byte[]> hashes = new ArrayList<>();
+
+        private UserChunks(long instanceId, long version, String password) {
+            this.instanceId = instanceId;
+            this.version = version;
+            this.password = password;
+        }
+    }
+
+    /**
+     * Итог одного копирования.
+     */
+    public static final class Result {
+        private String id;
+        private boolean unchanged;
+        private int users;
+        private int chunksWritten;
+        private int chunksReused;
+        private long bytesWritten;
+
+        public String getId() {
+            return id;
+        }
+
+        // Копия совпала с предыдущей, новый манифест не создавался
+        public boolean isUnchanged() {
+            return unchanged;
+        }
+
+        public int getUsers() {
+            return users;
+        }
+
+        public int getChunksWritten() {
+            return chunksWritten;
+        }
+
+        public int getChunksReused() {
+            return chunksReused;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+}
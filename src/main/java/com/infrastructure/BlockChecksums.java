@@ -0,0 +1,261 @@
+package com.infrastructure;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32C;
+
+/**
+ * Контрольные суммы CRC32C по блокам фиксированного размера.
+ * При записи суммы считаются по уже сформированным байтам, поэтому файл не перечитывается,
+ * и дописываются в конец файла:
+ * <pre>
+ * [CRC32C блока 0] ... [CRC32C блока n-1] [размер блока] [число блоков] [magic] [CRC32C хвоста]
+ * </pre>
+ * При чтении проверяются только блоки, которые действительно читаются: при выборочном чтении —
+ * через {@link Footer#verify}, при последовательном — через {@link Footer#verifying}, по ходу чтения.
+ */
+final class BlockChecksums {
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final int FOOTER_MAGIC = 0x464E434B; // "FNCK"
+    static final int TRAILER_SIZE = 16;
+
+    private final CRC32C current = new CRC32C();
+    private int[] checksums = new int[16];
+    private int blockCount;
+    private int filled;
+
+    // Учитывает байты от position до limit, не сдвигая позицию буфера
+    void update(ByteBuffer bytes) {
+        ByteBuffer data = bytes.duplicate();
+        while (data.hasRemaining()) {
+            int chunk = Math.min(data.remaining(), BLOCK_SIZE - filled);
+            int limit = data.limit();
+            data.limit(data.position() + chunk);
+            current.update(data);
+            data.limit(limit);
+            filled += chunk;
+            if (filled == BLOCK_SIZE) {
+                finishBlock();
+            }
+        }
+    }
+
+    void writeFooter(FileChannel channel) throws IOException {
+        if (filled > 0) {
+            finishBlock();
+        }
+        ByteBuffer footer = ByteBuffer.allocate(blockCount * 4 + TRAILER_SIZE);
+        for (int i = 0; i < blockCount; i++) {
+            footer.putInt(checksums[i]);
+        }
+        footer.putInt(BLOCK_SIZE).putInt(blockCount).putInt(FOOTER_MAGIC);
+        CRC32C crc = new CRC32C();
+        crc.update(footer.array(), 0, footer.position());
+        footer.putInt((int) crc.getValue()).flip();
+        while (footer.hasRemaining()) {
+            channel.write(footer);
+        }
+    }
+
+    private void finishBlock() {
+        if (blockCount == checksums.length) {
+            checksums = Arrays.copyOf(checksums, blockCount * 2);
+        }
+        checksums[blockCount++] = (int) current.getValue();
+        current.reset();
+        filled = 0;
+    }
+
+    /**
+     * Читает хвост с контрольными суммами.
+     *
+     * @throws SnapshotCorruptedException если хвост отсутствует или поврежден
+     */
+    static Footer readFooter(FileChannel channel, String name) throws IOException {
+        long size = channel.size();
+        if (size < TRAILER_SIZE) {
+            throw new SnapshotCorruptedException(name + ": файл обрезан, нет контрольных сумм");
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        readFully(channel, trailer, size - TRAILER_SIZE);
+        int blockSize = trailer.getInt(0);
+        int blockCount = trailer.getInt(4);
+        if (trailer.getInt(8) != FOOTER_MAGIC || blockSize <= 0 || blockCount < 0
+                || (long) blockCount * 4 + TRAILER_SIZE > size) {
+            throw new SnapshotCorruptedException(name + ": файл обрезан или поврежден, нет контрольных сумм");
+        }
+
+        long footerOffset = size - TRAILER_SIZE - (long) blockCount * 4;
+        ByteBuffer footer = ByteBuffer.allocate(blockCount * 4 + TRAILER_SIZE);
+        readFully(channel, footer, footerOffset);
+        CRC32C crc = new CRC32C();
+        crc.update(footer.array(), 0, footer.capacity() - 4);
+        if ((int) crc.getValue() != footer.getInt(footer.capacity() - 4)) {
+            throw new SnapshotCorruptedException(name + ": повреждена таблица контрольных сумм");
+        }
+        if ((footerOffset + blockSize - 1) / blockSize != blockCount) {
+            throw new SnapshotCorruptedException(name + ": размер данных " + footerOffset
+                    + " байт не соответствует числу блоков " + blockCount);
+        }
+        int[] checksums = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            checksums[i] = footer.getInt(i * 4);
+        }
+        return new Footer(name, footerOffset, blockSize, checksums);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new SnapshotCorruptedException("Файл обрезан");
+            }
+        }
+    }
+
+    /**
+     * Прочитанная таблица сумм. Проверенные блоки запоминаются и повторно не считаются.
+     */
+    static final class Footer {
+        private final String name;
+        private final long dataLength;
+        private final int blockSize;
+        private final int[] checksums;
+        private final BitSet verified;
+
+        private Footer(String name, long dataLength, int blockSize, int[] checksums) {
+            this.name = name;
+            this.dataLength = dataLength;
+            this.blockSize = blockSize;
+            this.checksums = checksums;
+            this.verified = new BitSet(checksums.length);
+        }
+
+        long dataLength() {
+            return dataLength;
+        }
+
+        /**
+         * Проверяет блоки, пересекающие диапазон [offset, offset + length).
+         *
+         * @param data весь файл (например, отображенный в память) или null, тогда блоки читаются из channel
+         */
+        void verify(FileChannel channel, ByteBuffer data, long offset, long length) throws IOException {
+            if (length <= 0) {
+                return;
+            }
+            if (offset < 0 || offset + length > dataLength) {
+                throw new SnapshotCorruptedException(name + ": ссылка на байты " + offset + "–" + (offset + length - 1)
+                        + " за пределами данных (" + dataLength + " байт)");
+            }
+            int first = (int) (offset / blockSize);
+            int last = (int) ((offset + length - 1) / blockSize);
+            CRC32C crc = new CRC32C();
+            ByteBuffer scratch = null;
+            for (int block = first; block <= last; block++) {
+                synchronized (verified) {
+                    if (verified.get(block)) {
+                        continue;
+                    }
+                }
+                long start = (long) block * blockSize;
+                int size = (int) Math.min(blockSize, dataLength - start);
+                crc.reset();
+                if (data != null) {
+                    crc.update(data.duplicate().position((int) start).limit((int) start + size));
+                } else {
+                    if (scratch == null) {
+                        scratch = ByteBuffer.allocateDirect(blockSize);
+                    }
+                    scratch.clear().limit(size);
+                    readFully(channel, scratch, start);
+                    scratch.flip();
+                    crc.update(scratch);
+                }
+                check(block, (int) crc.getValue());
+            }
+        }
+
+        /**
+         * Канал для чтения файла подряд с начала: каждый блок проверяется, как только прочитан целиком,
+         * поэтому файл не читается второй раз ради проверки.
+         */
+        VerifyingChannel verifying(FileChannel channel) {
+            return new VerifyingChannel(channel);
+        }
+
+        private void check(int block, int actual) throws SnapshotCorruptedException {
+            if (actual != checksums[block]) {
+                long start = (long) block * blockSize;
+                long end = Math.min(start + blockSize, dataLength) - 1;
+                throw new SnapshotCorruptedException(String.format(
+                        "%s: поврежден блок %d (байты %d–%d): CRC32C %08x, ожидалось %08x",
+                        name, block, start, end, actual, checksums[block]));
+            }
+            synchronized (verified) {
+                verified.set(block);
+            }
+        }
+
+        final class VerifyingChannel implements ReadableByteChannel {
+            private final FileChannel channel;
+            private final CRC32C crc = new CRC32C();
+            // Сколько байт файла от начала уже учтено
+            private long position;
+
+            private VerifyingChannel(FileChannel channel) {
+                this.channel = channel;
+            }
+
+            @Override
+            public int read(ByteBuffer destination) throws IOException {
+                int start = destination.position();
+                int read = channel.read(destination);
+                if (read > 0) {
+                    ByteBuffer bytes = destination.duplicate();
+                    bytes.limit(start + read).position(start);
+                    update(bytes);
+                }
+                return read;
+            }
+
+            // Учитывает следующие по порядку байты файла, например прочитанные до создания канала
+            void update(ByteBuffer bytes) throws SnapshotCorruptedException {
+                ByteBuffer data = bytes.duplicate();
+                while (data.hasRemaining() && position < dataLength) {
+                    int block = (int) (position / blockSize);
+                    long end = Math.min((long) (block + 1) * blockSize, dataLength);
+                    int chunk = (int) Math.min(data.remaining(), end - position);
+                    int limit = data.limit();
+                    data.limit(data.position() + chunk);
+                    crc.update(data);
+                    data.limit(limit);
+                    position += chunk;
+                    if (position == end) {
+                        check(block, (int) crc.getValue());
+                        crc.reset();
+                    }
+                }
+            }
+
+            // Проверяет блоки, до конца которых чтение не дошло (например, разбор прервался)
+            void finish() throws IOException {
+                long start = position - position % blockSize;
+                verify(channel, null, start, dataLength - start);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.infrastructure;
+
+import com.business.entities.FinancialEntry;
+import com.business.entities.Money;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Разбор банковской выписки в CSV.
+ * Файл отображается в память и делится на фрагменты по границам строк, фрагменты
+ * разбираются параллельно в ForkJoinPool, результат собирается в исходном порядке строк.
+ *
+ * Формат строки: {@code дата;категория;сумма[;тип]} (разделитель — ';' или ',', определяется
+ * по первой строке). Дата: {@code yyyy-MM-dd[ HH:mm[:ss]]}, {@code yyyy-MM-ddTHH:mm[:ss]} или
+ * {@code dd.MM.yyyy[ HH:mm[:ss]]}. Без типа знак суммы задает доход (+) или расход (-),
+ * тип — «доход»/«income»/«+» или «расход»/«expense»/«outcome»/«-». Поля можно брать в кавычки,
+ * но перевод строки внутри поля не поддерживается. Первая строка, которая не разбирается
+ * и не начинается с цифры, считается заголовком.
+ */
+public final class CsvStatementParser {
+    private static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+    // Окно для поиска конца строки на границе фрагмента
+    private static final int SCAN_WINDOW = 64 << 10;
+    // Больше отклоненных строк не сохраняется, остальные только считаются
+    private static final int MAX_REJECTED = 1000;
+
+    private CsvStatementParser() {
+    }
+
+    public static Result parse(Path path) throws IOException {
+        return parse(path, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize примерный размер фрагмента в байтах, фрагмент продлевается до конца строки
+     */
+    public static Result parse(Path path, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Размер фрагмента должен быть положительным");
+        }
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return new Result(new ArrayList<>(), new ArrayList<>(), 0, 0, System.nanoTime() - started);
+            }
+            byte separator = detectSeparator(channel, size);
+            long[] bounds = splitByLines(channel, size, chunkSize);
+
+            Chunk[] chunks = new Chunk[bounds.length - 1];
+            ForkJoinPool.commonPool().invoke(new ParseTask(channel, bounds, separator, chunks, 0, chunks.length));
+
+            int accepted = 0;
+            for (Chunk chunk : chunks) {
+                accepted += chunk.entries.size();
+            }
+            List<FinancialEntry> entries = new ArrayList<>(accepted);
+            List<Rejected> rejected = new ArrayList<>();
+            long rejectedCount = 0;
+            long lineOffset = 0;
+            for (Chunk chunk : chunks) {
+                entries.addAll(chunk.entries);
+                for (Rejected row : chunk.rejected) {
+                    if (rejected.size() < MAX_REJECTED) {
+                        rejected.add(new Rejected(lineOffset + row.line, row.text, row.reason));
+                    }
+                }
+                rejectedCount += chunk.rejectedCount;
+                lineOffset += chunk.lines;
+            }
+            return new Result(entries, rejected, rejectedCount, accepted + rejectedCount, System.nanoTime() - started);
+        }
+    }
+
+    private static byte detectSeparator(FileChannel channel, long size) throws IOException {
+        ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, SCAN_WINDOW));
+        boolean comma = false;
+        while (head.hasRemaining()) {
+            byte b = head.get();
+            if (b == '\n') {
+                break;
+            }
+            if (b == ';') {
+                return ';';
+            }
+            comma |= b == ',';
+        }
+        return comma ? (byte) ',' : (byte) ';';
+    }
+
+    // Границы фрагментов: каждая, кроме первой и последней, стоит сразу после '\n'
+    private static long[] splitByLines(FileChannel channel, long size, int chunkSize) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long position = chunkSize;
+        while (position < size) {
+            long lineEnd = findLineEnd(channel, position, size);
+            if (lineEnd >= size) {
+                break;
+            }
+            bounds.add(lineEnd);
+            position = lineEnd + chunkSize;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long findLineEnd(FileChannel channel, long from, long size) throws IOException {
+        long position = from;
+        while (position < size) {
+            int length = (int) Math.min(SCAN_WINDOW, size - position);
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = 0; i < length; i++) {
+                if (window.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += length;
+        }
+        return size;
+    }
+
+    private static Chunk parseChunk(ByteBuffer buffer, byte separator, boolean first) {
+        Chunk chunk = new Chunk();
+        int limit = buffer.limit();
+        int position = 0;
+        if (first && limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB
+                && buffer.get(2) == (byte) 0xBF) {
+            position = 3;
+        }
+        byte[] line = new byte[256];
+        while (position < limit) {
+            int length = 0;
+            while (position < limit) {
+                byte b = buffer.get(position++);
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+            chunk.lines++;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (isBlank(line, length)) {
+                continue;
+            }
+            try {
+                chunk.entries.add(parseLine(line, length, separator));
+            } catch (IllegalArgumentException e) {
+                if (first && chunk.lines == 1 && !Character.isDigit(firstVisible(line, length))) {
+                    continue;
+                }
+                chunk.reject(new String(line, 0, length, StandardCharsets.UTF_8), e.getMessage());
+            }
+        }
+        return chunk;
+    }
+
+    private static FinancialEntry parseLine(byte[] line, int length, byte separator) {
+        String[] fields = split(line, length, separator);
+        if (fields.length < 3 || fields.length > 4) {
+            throw new IllegalArgumentException("ожидалось 3 или 4 поля, получено " + fields.length);
+        }
+        LocalDateTime timestamp = parseTimestamp(fields[0]);
+        String category = fields[1];
+        if (category.isEmpty()) {
+            throw new IllegalArgumentException("пустая категория");
+        }
+        long amountCents = parseAmount(fields[2]);
+        boolean income = fields.length == 4 && !fields[3].isEmpty() ? parseType(fields[3]) : amountCents > 0;
+        return FinancialEntry.ofCents(Math.abs(amountCents), category, income, timestamp);
+    }
+
+    private static String[] split(byte[] line, int length, byte separator) {
+        List<String> fields = new ArrayList<>(4);
+        int start = 0;
+        boolean quoted = false;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && line[i] == '"') {
+                quoted = !quoted;
+            } else if (i == length || (!quoted && line[i] == separator)) {
+                fields.add(field(line, start, i));
+                start = i + 1;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("незакрытая кавычка");
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    private static String field(byte[] line, int start, int end) {
+        while (start < end && line[start] == ' ') {
+            start++;
+        }
+        while (end > start && line[end - 1] == ' ') {
+            end--;
+        }
+        if (end - start >= 2 && line[start] == '"' && line[end - 1] == '"') {
+            return new String(line, start + 1, end - start - 2, StandardCharsets.UTF_8).replace("\"\"", "\"").trim();
+        }
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime parseTimestamp(String text) {
+        int year;
+        int month;
+        int day;
+        if (text.length() >= 10 && text.charAt(4) == '-' && text.charAt(7) == '-') {
+            year = digits(text, 0, 4);
+            month = digits(text, 5, 2);
+            day = digits(text, 8, 2);
+        } else if (text.length() >= 10 && text.charAt(2) == '.' && text.charAt(5) == '.') {
+            day = digits(text, 0, 2);
+            month = digits(text, 3, 2);
+            year = digits(text, 6, 4);
+        } else {
+            throw new IllegalArgumentException("неверный формат даты: " + text);
+        }
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        if (text.length() > 10) {
+            char delimiter = text.charAt(10);
+            if ((delimiter != ' ' && delimiter != 'T') || (text.length() != 16 && text.length() != 19)
+                    || text.charAt(13) != ':' || (text.length() == 19 && text.charAt(16) != ':')) {
+                throw new IllegalArgumentException("неверный формат времени: " + text);
+            }
+            hour = digits(text, 11, 2);
+            minute = digits(text, 14, 2);
+            if (text.length() == 19) {
+                second = digits(text, 17, 2);
+            }
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("несуществующая дата: " + text);
+        }
+    }
+
+    private static int digits(String text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("неверный формат даты: " + text);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Сумма разбирается сразу в копейки; допускается десятичная запятая, пробелы между разрядами убираются
+    private static long parseAmount(String text) {
+        long amountCents;
+        try {
+            amountCents = Money.parse(text.replace(" ", "").replace("\u00A0", ""));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("неверная сумма: " + text);
+        }
+        if (amountCents == 0) {
+            throw new IllegalArgumentException("нулевая сумма");
+        }
+        return amountCents;
+    }
+
+    private static boolean parseType(String text) {
+        switch (text.toLowerCase()) {
+            case "доход":
+            case "income":
+            case "+":
+                return true;
+            case "расход":
+            case "expense":
+            case "outcome":
+            case "-":
+                return false;
+            default:
+                throw new IllegalArgumentException("неизвестный тип операции: " + text);
+        }
+    }
+
+    private static boolean isBlank(byte[] line, int length) {
+        for (int i = 0; i < length; i++) {
+            if (line[i] != ' ' && line[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char firstVisible(byte[] line, int length) {
+        for (int i = 0; i < length; i++) {
+            if (line[i] != ' ' && line[i] != '"') {
+                return (char) line[i];
+            }
+        }
+        return ' ';
+    }
+
+    // Делит диапазон фрагментов пополам, пока не останется один фрагмент
+    private static final class ParseTask extends RecursiveAction {
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final byte separator;
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        private ParseTask(FileChannel channel, long[] bounds, byte separator, Chunk[] chunks, int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.separator = separator;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(channel, bounds, separator, chunks, from, middle),
+                        new ParseTask(channel, bounds, separator, chunks, middle, to));
+                return;
+            }
+            try {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[from], bounds[from + 1] - bounds[from]);
+                chunks[from] = parseChunk(buffer, separator, from == 0);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось прочитать фрагмент выписки", e);
+            }
+        }
+    }
+
+    private static final class Chunk {
+        private final List<FinancialEntry> entries = new ArrayList<>();
+        private final List<Rejected> rejected = new ArrayList<>();
+        private long rejectedCount;
+        private long lines;
+
+        private void reject(String text, String reason) {
+            if (rejected.size() < MAX_REJECTED) {
+                rejected.add(new Rejected(lines, text, reason));
+            }
+            rejectedCount++;
+        }
+    }
+
+    public static final class Result {
+        private final List<FinancialEntry> entries;
+        private final List<Rejected> rejected;
+        private final long rejectedCount;
+        private final long rows;
+        private final long elapsedNanos;
+
+        private Result(List<FinancialEntry> entries, List<Rejected> rejected, long rejectedCount, long rows,
+                       long elapsedNanos) {
+            this.entries = entries;
+            this.rejected = rejected;
+            this.rejectedCount = rejectedCount;
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // Разобранные транзакции в порядке строк файла
+        public List<FinancialEntry> getEntries() {
+            return Collections.unmodifiableList(entries);
+        }
+
+        // Первые отклоненные строки (не больше 1000), полное число — getRejectedCount
+        public List<Rejected> getRejected() {
+            return Collections.unmodifiableList(rejected);
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        // Непустые строки с данными, без заголовка
+        public long getRows() {
+            return rows;
+        }
+
+        public Duration getElapsed() {
+            return Duration.ofNanos(elapsedNanos);
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos > 0 ? rows * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    public static final class Rejected {
+        private final long line;
+        private final String text;
+        private final String reason;
+
+        private Rejected(long line, String text, String reason) {
+            this.line = line;
+            this.text = text;
+            this.reason = reason;
+        }
+
+        // Номер строки в файле, начиная с 1
+        public long getLine() {
+            return line;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "строка " + line + ": " + reason;
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package com.infrastructure;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialAccountListener;
+import com.business.entities.FinancialEntry;
+import com.business.ports.UserStoragePort;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Хранилище пользователей на диске: каждый пользователь лежит в отдельном файле
+ * (формат снимка SnapshotCodec с одним пользователем), в памяти постоянно хранится
+ * только индекс имен. Пользователи подгружаются при обращении и вытесняются
+ * по принципу LRU, когда оценка занятой памяти превышает заданный предел.
+ * Измененные пользователи записываются на диск перед вытеснением под блокировкой
+ * этого пользователя, поэтому запись не пересекается с его изменением в другом потоке.
+ */
+public class DiskUserRepository implements UserStoragePort, Closeable {
+    private static final String FILE_EXTENSION = ".user";
+
+    // Грубая оценка размера объектов в куче
+    private static final long USER_BYTES = 512;
+    private static final long ENTRY_BYTES = 160;
+    private static final long BUDGET_BYTES = 96;
+
+    private final Path directory;
+    private final long memoryLimitBytes;
+    private final Function<String, Lock> userLocks;
+    private final Set<String> index = new HashSet<>();
+    private final LinkedHashMap<String, AccountHolder> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> weights = new HashMap<>();
+    private final Set<String> dirty = new HashSet<>();
+    // Вытесненные пользователи, на которых еще могут ссылаться снаружи (например, текущий пользователь)
+    private final Map<String, UserReference> evicted = new HashMap<>();
+    private final ReferenceQueue<AccountHolder> collected = new ReferenceQueue<>();
+    private long cachedBytes;
+
+    // Без общих блокировок пользователей: только для работы из одного потока
+    public DiskUserRepository(Path directory, long memoryLimitBytes) throws IOException {
+        this(directory, memoryLimitBytes, username -> new ReentrantLock());
+    }
+
+    /**
+     * @param userLocks блокировка пользователя, под которой его аккаунт меняют сервисы
+     */
+    public DiskUserRepository(Path directory, long memoryLimitBytes, Function<String, Lock> userLocks) throws IOException {
+        if (memoryLimitBytes <= 0) {
+            throw new IllegalArgumentException("Предел памяти должен быть больше нуля");
+        }
+        this.directory = directory;
+        this.memoryLimitBytes = memoryLimitBytes;
+        this.userLocks = userLocks;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                index.add(decodeName(name.substring(0, name.length() - FILE_EXTENSION.length())));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void save(String username, AccountHolder accountHolder) {
+        if (username == null || accountHolder == null) {
+            throw new IllegalArgumentException("Имя пользователя и пользователь не могут быть null");
+        }
+        index.add(username);
+        evicted.remove(username);
+        admit(username, accountHolder);
+        write(username, accountHolder);
+        dirty.remove(username);
+        evictIfNeeded();
+    }
+
+    @Override
+    public synchronized AccountHolder find(String username) {
+        if (username == null || !index.contains(username)) {
+            return null;
+        }
+        AccountHolder accountHolder = cache.get(username);
+        if (accountHolder != null) {
+            return accountHolder;
+        }
+
+        purgeCollected();
+        UserReference reference = evicted.remove(username);
+        accountHolder = reference != null ? reference.get() : null;
+        if (accountHolder == null) {
+            accountHolder = read(username);
+        }
+        admit(username, accountHolder);
+        evictIfNeeded();
+        return accountHolder;
+    }
+
+    @Override
+    public synchronized void delete(String username) {
+        if (username == null || !index.remove(username)) {
+            return;
+        }
+        AccountHolder accountHolder = forget(username);
+        if (accountHolder != null) {
+            detachTracker(accountHolder);
+        }
+        UserReference reference = evicted.remove(username);
+        if (reference != null && reference.get() != null) {
+            detachTracker(reference.get());
+        }
+        dirty.remove(username);
+        try {
+            Files.deleteIfExists(fileOf(username));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось удалить данные пользователя '" + username + "'", e);
+        }
+    }
+
+    /**
+     * Возвращает всех пользователей. Требует чтения всех файлов с диска,
+     * поэтому для больших баз стоит обращаться к пользователям через find.
+     */
+    @Override
+    public synchronized Map<String, AccountHolder> findAll() {
+        Map<String, AccountHolder> users = new HashMap<>(index.size() * 2);
+        for (String username : index) {
+            AccountHolder accountHolder = cache.get(username);
+            if (accountHolder == null) {
+                UserReference reference = evicted.get(username);
+                accountHolder = reference != null ? reference.get() : null;
+            }
+            users.put(username, accountHolder != null ? accountHolder : read(username));
+        }
+        return users;
+    }
+
+    /**
+     * Пользователи только для чтения: карта поверх индекса имен. Пользователь, которого нет
+     * в памяти, читается с диска при обращении к нему и в кэш не попадает.
+     */
+    @Override
+    public Map<String, AccountHolder> view() {
+        return new UserView();
+    }
+
+    // Пользователи читаются с диска по одному и не накапливаются в памяти
+    @Override
+    public void forEachUser(BiConsumer<String, AccountHolder> action) {
+        Iterator<Map.Entry<String, AccountHolder>> users = new UserIterator();
+        while (users.hasNext()) {
+            Map.Entry<String, AccountHolder> user = users.next();
+            action.accept(user.getKey(), user.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void setAllUsers(Map<String, AccountHolder> users) {
+        for (String username : new HashSet<>(index)) {
+            delete(username);
+        }
+        if (users != null) {
+            users.forEach(this::save);
+        }
+    }
+
+    @Override
+    public synchronized boolean containsUser(String username) {
+        return username != null && index.contains(username);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized int getCachedCount() {
+        return cache.size();
+    }
+
+    public synchronized boolean isCached(String username) {
+        return username != null && cache.containsKey(username);
+    }
+
+    /**
+     * Записывает на диск всех измененных пользователей, каждого под его блокировкой.
+     * Нельзя вызывать, удерживая блокировку какого-либо пользователя.
+     */
+    public void flush() {
+        List<String> usernames;
+        synchronized (this) {
+            usernames = new ArrayList<>(dirty);
+        }
+        for (String username : usernames) {
+            Lock lock = userLocks.apply(username);
+            lock.lock();
+            try {
+                synchronized (this) {
+                    AccountHolder accountHolder = dirty.remove(username) ? resident(username) : null;
+                    if (accountHolder != null) {
+                        write(username, accountHolder);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    // Пользователь из памяти без изменения порядка вытеснения, или null, если он есть только на диске
+    private synchronized AccountHolder resident(String username) {
+        UserReference reference = evicted.get(username);
+        AccountHolder accountHolder = reference != null ? reference.get() : null;
+        if (accountHolder == null && cache.containsKey(username)) {
+            accountHolder = cache.get(username);
+        }
+        return accountHolder;
+    }
+
+    // Чтение без допуска в кэш; null, если пользователя удалили во время обхода
+    private AccountHolder peek(String username, Map<String, AccountHolder> cached) {
+        AccountHolder accountHolder = cached.get(username);
+        if (accountHolder == null) {
+            accountHolder = resident(username);
+        }
+        if (accountHolder != null) {
+            return accountHolder;
+        }
+        try {
+            // Файл подменяется атомарно, поэтому читается без блокировки хранилища
+            return read(username);
+        } catch (UncheckedIOException e) {
+            if (!containsUser(username)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void admit(String username, AccountHolder accountHolder) {
+        AccountHolder previous = forget(username);
+        if (previous != null && previous != accountHolder) {
+            detachTracker(previous);
+        }
+        long weight = estimate(accountHolder);
+        cache.put(username, accountHolder);
+        weights.put(username, weight);
+        cachedBytes += weight;
+        accountHolder.getFinancialAccount().addListener(new DirtyTracker(username, accountHolder));
+    }
+
+    private AccountHolder forget(String username) {
+        AccountHolder accountHolder = cache.remove(username);
+        if (accountHolder != null) {
+            cachedBytes -= weights.remove(username);
+        }
+        return accountHolder;
+    }
+
+    private void evictIfNeeded() {
+        purgeCollected();
+        Iterator<Map.Entry<String, AccountHolder>> eldest = cache.entrySet().iterator();
+        // Последнего использованного пользователя не вытесняем, даже если он один превышает предел
+        while (cachedBytes > memoryLimitBytes && cache.size() > 1 && eldest.hasNext()) {
+            Map.Entry<String, AccountHolder> entry = eldest.next();
+            String username = entry.getKey();
+            if (dirty.contains(username) && !writeBack(username, entry.getValue())) {
+                continue;
+            }
+            eldest.remove();
+            cachedBytes -= weights.remove(username);
+            evicted.put(username, new UserReference(username, entry.getValue(), collected));
+        }
+    }
+
+    // Если пользователь уже вытеснен, но изменился через внешнюю ссылку, возвращаем его в кэш
+    private synchronized void markDirty(String username, AccountHolder accountHolder) {
+        if (!index.contains(username)) {
+            return;
+        }
+        if (cache.get(username) == accountHolder) {
+            long weight = estimate(accountHolder);
+            cachedBytes += weight - weights.put(username, weight);
+        } else {
+            evicted.remove(username);
+            admit(username, accountHolder);
+        }
+        dirty.add(username);
+        evictIfNeeded();
+    }
+
+    // Вызывается под блокировкой хранилища и, возможно, другого пользователя, поэтому блокировку
+    // вытесняемого не ждем: занятого пользователя сейчас меняют, и его разумнее оставить в кэше
+    private boolean writeBack(String username, AccountHolder accountHolder) {
+        Lock lock = userLocks.apply(username);
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            write(username, accountHolder);
+            dirty.remove(username);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void purgeCollected() {
+        UserReference reference;
+        while ((reference = (UserReference) collected.poll()) != null) {
+            evicted.remove(reference.username, reference);
+        }
+    }
+
+    private AccountHolder read(String username) {
+        try {
+            AccountHolder accountHolder = SnapshotCodec.read(fileOf(username)).get(username);
+            if (accountHolder == null) {
+                throw new IOException("Файл не содержит пользователя '" + username + "'");
+            }
+            return accountHolder;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать данные пользователя '" + username + "'", e);
+        }
+    }
+
+    private void write(String username, AccountHolder accountHolder) {
+        Path file = fileOf(username);
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            SnapshotCodec.write(tempFile, Collections.singletonMap(username, accountHolder));
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать данные пользователя '" + username + "'", e);
+        }
+    }
+
+    // SnapshotCodec сбрасывает на диск сам файл, а переименование надежно только после сброса каталога
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Например, на Windows каталог нельзя открыть как файл
+        }
+    }
+
+    private void detachTracker(AccountHolder accountHolder) {
+        accountHolder.getFinancialAccount().removeListener(new DirtyTracker(accountHolder.getUsername(), accountHolder));
+    }
+
+    private static long estimate(AccountHolder accountHolder) {
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        return USER_BYTES
+                + ENTRY_BYTES * account.getFinancialEntries().size()
+                + BUDGET_BYTES * account.getBudgetsCategories().size();
+    }
+
+    private Path fileOf(String username) {
+        return directory.resolve(encodeName(username) + FILE_EXTENSION);
+    }
+
+    // Имя пользователя может содержать любые символы, поэтому в имени файла оно хранится в hex
+    private static String encodeName(String username) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : username.getBytes(StandardCharsets.UTF_8)) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return name.toString();
+    }
+
+    private static String decodeName(String name) {
+        byte[] bytes = new byte[name.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(name.substring(2 * i, 2 * i + 2), 16);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Помечает пользователя измененным при любом изменении его аккаунта.
+     */
+    private final class DirtyTracker implements FinancialAccountListener {
+        private final String username;
+        private final AccountHolder accountHolder;
+
+        private DirtyTracker(String username, AccountHolder accountHolder) {
+            this.username = username;
+            this.accountHolder = accountHolder;
+        }
+
+        @Override
+        public void onTransactionAdded(FinancialAccount account, FinancialEntry entry) {
+            markDirty(username, accountHolder);
+        }
+
+        @Override
+        public void onTransactionsAdded(FinancialAccount account, List<FinancialEntry> entries) {
+            markDirty(username, accountHolder);
+        }
+
+        @Override
+        public void onTransactionRemoved(FinancialAccount account, int index, FinancialEntry entry) {
+            markDirty(username, accountHolder);
+        }
+
+        @Override
+        public void onTransactionChanged(FinancialAccount account, int index, FinancialEntry entry) {
+            markDirty(username, accountHolder);
+        }
+
+        @Override
+        public void onBudgetSet(FinancialAccount account, String category, double amount) {
+            markDirty(username, accountHolder);
+        }
+
+        @Override
+        public void onBudgetRemoved(FinancialAccount account, String category) {
+            markDirty(username, accountHolder);
+        }
+
+        // Один трекер на пользователя в рамках хранилища
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DirtyTracker)) return false;
+            DirtyTracker other = (DirtyTracker) o;
+            return owner() == other.owner() && username.equals(other.username);
+        }
+
+        @Override
+        public int hashCode() {
+            return username.hashCode();
+        }
+
+        private DiskUserRepository owner() {
+            return DiskUserRepository.this;
+        }
+    }
+
+    /**
+     * Обход пользователей по снимку индекса имен. Измененные пользователи всегда в памяти,
+     * поэтому с диска читаются только те, чьи файлы актуальны.
+     */
+    private final class UserIterator implements Iterator<Map.Entry<String, AccountHolder>> {
+        private final Iterator<String> usernames;
+        private final Map<String, AccountHolder> cached;
+        private Map.Entry<String, AccountHolder> next;
+
+        private UserIterator() {
+            synchronized (DiskUserRepository.this) {
+                usernames = new ArrayList<>(index).iterator();
+                // Кэш ограничен пределом памяти, поэтому копия ссылок на него дешевая
+                cached = new HashMap<>(cache);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && usernames.hasNext()) {
+                String username = usernames.next();
+                AccountHolder accountHolder = peek(username, cached);
+                if (accountHolder != null) {
+                    next = new AbstractMap.SimpleImmutableEntry<>(username, accountHolder);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, AccountHolder> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, AccountHolder> user = next;
+            next = null;
+            return user;
+        }
+    }
+
+    /**
+     * Карта пользователей только для чтения, которая отражает текущее содержимое хранилища.
+     */
+    private final class UserView extends AbstractMap<String, AccountHolder> {
+        @Override
+        public AccountHolder get(Object key) {
+            if (!(key instanceof String) || !containsUser((String) key)) {
+                return null;
+            }
+            return peek((String) key, Collections.emptyMap());
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && containsUser((String) key);
+        }
+
+        @Override
+        public int size() {
+            return DiskUserRepository.this.size();
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super String, ? super AccountHolder> action) {
+            forEachUser(action::accept);
+        }
+
+        @Override
+        public Set<Map.Entry<String, AccountHolder>> entrySet() {
+            return new AbstractSet<Map.Entry<String, AccountHolder>>() {
+                @Override
+                public Iterator<Map.Entry<String, AccountHolder>> iterator() {
+                    return new UserIterator();
+                }
+
+                @Override
+                public int size() {
+                    return DiskUserRepository.this.size();
+                }
+            };
+        }
+    }
+
+    private static final class UserReference extends WeakReference<AccountHolder> {
+        private final String username;
+
+        private UserReference(String username, AccountHolder accountHolder, ReferenceQueue<AccountHolder> queue) {
+            super(accountHolder, queue);
+            this.username = username;
+        }
+    }
+}
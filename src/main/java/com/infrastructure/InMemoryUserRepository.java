@@ -3,12 +3,13 @@ package com.infrastructure;
 import com.business.entities.AccountHolder;
 import com.business.ports.UserStoragePort;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class InMemoryUserRepository implements UserStoragePort {
-    private Map<String, AccountHolder> userMap = new ConcurrentHashMap<>();
+    private final Map<String, AccountHolder> userMap = new ConcurrentHashMap<>();
 
     @Override
     public void save(String username, AccountHolder accountHolder) {
@@ -35,12 +36,17 @@ public class InMemoryUserRepository implements UserStoragePort {
         return new HashMap<>(userMap); // Возвращаем копию для безопасности
     }
 
+    // Живое представление без копирования: карта остается той же при setAllUsers
+    @Override
+    public Map<String, AccountHolder> view() {
+        return Collections.unmodifiableMap(userMap);
+    }
+
     @Override
     public void setAllUsers(Map<String, AccountHolder> users) {
-        if (users == null) {
-            this.userMap = new ConcurrentHashMap<>();
-        } else {
-            this.userMap = new ConcurrentHashMap<>(users);
+        userMap.clear();
+        if (users != null) {
+            userMap.putAll(users);
         }
     }
 
@@ -0,0 +1,83 @@
+package com.infrastructure;
+
+import com.business.entities.AccountHolder;
+import com.business.ports.UserStoragePort;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Хранилище пользователей, которое записывает все изменения в журнал.
+ * Создание и удаление пользователей журналируются здесь, изменения
+ * транзакций и бюджетов — через слушателей, подключенных к аккаунтам.
+ */
+public class JournalingUserRepository implements UserStoragePort {
+    private final UserStoragePort delegate;
+    private final LedgerJournal journal;
+
+    public JournalingUserRepository(UserStoragePort delegate, LedgerJournal journal) {
+        this.delegate = delegate;
+        this.journal = journal;
+    }
+
+    @Override
+    public void save(String username, AccountHolder accountHolder) {
+        delegate.save(username, accountHolder);
+        journal.appendUserPut(accountHolder);
+        journal.attach(username, accountHolder);
+    }
+
+    @Override
+    public AccountHolder find(String username) {
+        AccountHolder accountHolder = delegate.find(username);
+        if (accountHolder != null) {
+            journal.attach(username, accountHolder);
+        }
+        return accountHolder;
+    }
+
+    @Override
+    public void delete(String username) {
+        if (username == null || !delegate.containsUser(username)) {
+            return;
+        }
+        delegate.delete(username);
+        journal.detach(username);
+        journal.appendUserDelete(username);
+    }
+
+    // Массовые обходы только читают пользователей: слушатели журнала подключаются в find и save,
+    // через которые идут все изменения, поэтому обход не удерживает и не загружает аккаунты
+    @Override
+    public Map<String, AccountHolder> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Map<String, AccountHolder> view() {
+        return delegate.view();
+    }
+
+    @Override
+    public void forEachUser(BiConsumer<String, AccountHolder> action) {
+        delegate.forEachUser(action);
+    }
+
+    // Записи всех изменений попадают в журнал одной групповой записью
+    @Override
+    public void atomically(Runnable changes) {
+        journal.group(changes);
+    }
+
+    @Override
+    public void setAllUsers(Map<String, AccountHolder> users) {
+        delegate.setAllUsers(users);
+        journal.detachAll();
+        delegate.forEachUser(journal::attach);
+    }
+
+    @Override
+    public boolean containsUser(String username) {
+        return delegate.containsUser(username);
+    }
+}
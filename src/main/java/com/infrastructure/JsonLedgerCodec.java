@@ -0,0 +1,189 @@
+package com.infrastructure;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialEntry;
+import com.business.entities.Money;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Потоковая запись и чтение пользователя в JSON тем же форматом, что дает ObjectMapper
+ * для AccountHolder. Транзакции пишутся и читаются по одной, без дерева JSON и без
+ * промежуточного списка, поэтому память не зависит от размера файла.
+ * Генератор и парсер должны быть созданы ObjectMapper'ом с JavaTimeModule (для дат).
+ */
+public final class JsonLedgerCodec {
+
+    private JsonLedgerCodec() {
+    }
+
+    public static void write(JsonGenerator generator, AccountHolder accountHolder) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("username", accountHolder.getUsername());
+        generator.writeStringField("password", accountHolder.getPassword());
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        if (account == null) {
+            generator.writeNullField("financialAccount");
+        } else {
+            generator.writeObjectFieldStart("financialAccount");
+            generator.writeArrayFieldStart("financialEntries");
+            for (FinancialEntry entry : account.getFinancialEntries()) {
+                writeEntry(generator, entry);
+            }
+            generator.writeEndArray();
+            generator.writeObjectFieldStart("budgetsCategories");
+            for (Map.Entry<String, Double> budget : account.getBudgetsCategories().entrySet()) {
+                generator.writeNumberField(budget.getKey(), budget.getValue());
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Читает одного пользователя. Парсер стоит перед объектом или на его START_OBJECT;
+     * после чтения он стоит на END_OBJECT. Неизвестные поля пропускаются.
+     *
+     * @return пользователь или null, если поток закончился
+     */
+    public static AccountHolder read(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken() == JsonToken.START_OBJECT ? JsonToken.START_OBJECT : parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        String username = null;
+        String password = null;
+        FinancialAccount account = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "username":
+                    username = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    break;
+                case "password":
+                    password = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    break;
+                case "financialAccount":
+                    account = value == JsonToken.VALUE_NULL ? null : readAccount(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        AccountHolder accountHolder = new AccountHolder();
+        try {
+            if (username != null) {
+                accountHolder.setUsername(username);
+            }
+            if (password != null) {
+                accountHolder.setPassword(password);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(parser, e.getMessage(), e);
+        }
+        accountHolder.setFinancialAccount(account);
+        return accountHolder;
+    }
+
+    private static FinancialAccount readAccount(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        List<FinancialEntry> entries = new ArrayList<>();
+        Map<String, Double> budgets = new TreeMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("financialEntries") && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    entries.add(readEntry(parser));
+                }
+            } else if (field.equals("budgetsCategories") && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String category = parser.currentName();
+                    parser.nextToken();
+                    budgets.put(category, parser.getValueAsDouble());
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return FinancialAccount.restore(budgets, entries);
+    }
+
+    private static void writeEntry(JsonGenerator generator, FinancialEntry entry) throws IOException {
+        generator.writeStartObject();
+        // Сумма пишется точной десятичной записью из копеек, без промежуточного double
+        generator.writeFieldName("amount");
+        generator.writeNumber(Money.format(entry.getAmountCents()));
+        generator.writeStringField("category", entry.getCategory());
+        if (entry.getIsIncome() != null) {
+            generator.writeBooleanField("isIncome", entry.getIsIncome());
+        } else {
+            generator.writeNullField("isIncome");
+        }
+        // Дата пишется сериализатором JavaTimeModule, как и при записи ObjectMapper'ом
+        generator.writeFieldName("timestamp");
+        generator.writeObject(entry.getTimestamp());
+        generator.writeEndObject();
+    }
+
+    private static FinancialEntry readEntry(JsonParser parser) throws IOException {
+        long amountCents = 0;
+        String category = null;
+        Boolean income = null;
+        LocalDateTime timestamp = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "amount":
+                    amountCents = readAmount(parser);
+                    break;
+                case "category":
+                    category = parser.getText();
+                    break;
+                case "isIncome":
+                    income = parser.getValueAsBoolean();
+                    break;
+                case "timestamp":
+                    timestamp = parser.readValueAs(LocalDateTime.class);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return FinancialEntry.ofCents(amountCents, category, income, timestamp);
+    }
+
+    // Старые файлы содержат суммы double (в том числе 1.0E7), новые — десятичную запись копеек
+    private static long readAmount(JsonParser parser) throws IOException {
+        try {
+            return Money.parse(parser.getText());
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(parser, "Некорректная сумма: " + parser.getText(), e);
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Ожидалось " + expected + ", получено " + actual);
+        }
+    }
+}
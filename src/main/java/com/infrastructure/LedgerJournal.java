@@ -0,0 +1,690 @@
+package com.infrastructure;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialAccountListener;
+import com.business.entities.FinancialEntry;
+import com.business.entities.Money;
+import com.business.ports.UserStoragePort;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений (write-ahead log) пользовательских данных.
+ * Каждое изменение дописывается в конец файла отдельной записью, поэтому стоимость
+ * записи зависит от размера изменения, а не от размера всей базы.
+ * При загрузке записи журнала применяются поверх последнего снимка.
+ *
+ * Формат: заголовок (magic, версия), далее записи [длина][CRC32][тип + данные].
+ * С версии 2 суммы транзакций пишутся в копейках (long), с версии 3 перед категорией
+ * пишется признак ее наличия (null и пустая строка различаются). Файл прежней версии
+ * читается и дописывается в своем формате, пока его не сменит поворот или уплотнение.
+ * Изменения, которые должны восстановиться только вместе (например, две части перевода),
+ * пишутся одной групповой записью, см. {@link #group(Runnable)}.
+ *
+ * Перед фоновым снимком журнал поворачивается: текущий файл становится сегментом
+ * {@code <журнал>.<поколение>}, а запись продолжается в новый файл. Снимок хранит номер
+ * поколения, поэтому при загрузке сегменты, уже вошедшие в снимок, пропускаются.
+ */
+public class LedgerJournal implements Closeable {
+    private static final int MAGIC = 0x464E4A4C; // "FNJL"
+    private static final short VERSION = 3;
+    private static final short VERSION_WITHOUT_CATEGORY_FLAG = 2;
+    private static final short VERSION_WITH_DOUBLE_AMOUNTS = 1;
+    private static final int HEADER_SIZE = 6;
+
+    private static final byte USER_PUT = 1;
+    private static final byte USER_DELETE = 2;
+    private static final byte ENTRY_ADD = 3;
+    private static final byte ENTRY_REMOVE = 4;
+    private static final byte ENTRY_UPDATE = 5;
+    private static final byte BUDGET_SET = 6;
+    private static final byte BUDGET_REMOVE = 7;
+    private static final byte ENTRY_ADD_BATCH = 8;
+    private static final byte GROUP = 9;
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    // Номер поколения хранится в снимке в двух байтах и сравнивается по модулю
+    private static final int GENERATIONS = 1 << 16;
+
+    private final Path path;
+    private final Map<String, JournalListener> listenersByUser = new ConcurrentHashMap<>();
+    // Записи открытой в этом потоке группы, см. group
+    private final ThreadLocal<List<PendingRecord>> groups = new ThreadLocal<>();
+    private FileChannel channel;
+    private long recordCount;
+    private long compactionThreshold = Long.MAX_VALUE;
+    private Runnable compactionHandler;
+    private boolean compacting;
+    private int generation;
+    // Версия текущего файла: записи в него пишутся в формате этой версии
+    private short fileVersion = VERSION;
+
+    public LedgerJournal(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    // Вызывается, когда в журнале накопилось threshold записей
+    public synchronized void setCompaction(long threshold, Runnable handler) {
+        this.compactionThreshold = threshold;
+        this.compactionHandler = handler;
+    }
+
+    public synchronized void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader();
+        } else {
+            ByteBuffer version = ByteBuffer.allocate(2);
+            channel.read(version, 4);
+            fileVersion = version.getShort(0);
+        }
+        channel.position(channel.size());
+    }
+
+    /**
+     * Закрывает текущий файл как сегмент нового поколения и начинает запись в новый файл.
+     * Снимок, записанный с возвращенным номером, содержит этот сегмент и все предыдущие.
+     *
+     * @return номер поколения для снимка
+     */
+    public synchronized int rotate() throws IOException {
+        generation = (generation + 1) % GENERATIONS;
+        if (channel == null) {
+            return generation;
+        }
+        channel.force(false);
+        channel.close();
+        channel = null;
+        recordCount = 0;
+        try {
+            Files.move(path, segmentPath(generation), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            open();
+        }
+        return generation;
+    }
+
+    // Удаляет сегменты, вошедшие в снимок с поколением snapshotGeneration
+    public synchronized void dropSegments(int snapshotGeneration) throws IOException {
+        for (Path segment : segments()) {
+            if (isCovered(segmentGeneration(segment), snapshotGeneration)) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    // Сбрасывает журнал после того, как его содержимое попало в снимок
+    public synchronized void reset() throws IOException {
+        for (Path segment : segments()) {
+            Files.deleteIfExists(segment);
+        }
+        if (channel == null) {
+            Files.deleteIfExists(path);
+            recordCount = 0;
+            return;
+        }
+        channel.truncate(0);
+        writeHeader();
+        channel.force(false);
+        recordCount = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка при закрытии журнала: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * Применяет записи журнала к хранилищу пользователей. Загружаются только
+     * пользователи, упомянутые в журнале.
+     * Повреждённый хвост (например, после падения во время записи) отбрасывается.
+     *
+     * @param snapshotGeneration поколение журнала из снимка: сегменты до него включительно уже в снимке
+     * @return количество применённых записей
+     */
+    public synchronized int replay(UserStoragePort users, int snapshotGeneration) throws IOException {
+        generation = snapshotGeneration;
+        List<Path> pending = new ArrayList<>();
+        for (Path segment : segments()) {
+            if (!isCovered(segmentGeneration(segment), snapshotGeneration)) {
+                pending.add(segment);
+            }
+        }
+        pending.sort(Comparator.comparingInt(segment -> Math.floorMod(segmentGeneration(segment) - snapshotGeneration, GENERATIONS)));
+
+        int applied = 0;
+        for (Path segment : pending) {
+            applied += replayFile(segment, users, false, null);
+            generation = segmentGeneration(segment);
+        }
+        int current = replayFile(path, users, true, null);
+        recordCount = current;
+        return applied + current;
+    }
+
+    /**
+     * Применяет к хранилищу записи одного пользователя из сегментов между двумя снимками:
+     * новее fromGeneration и не новее toGeneration. Состояние журнала не меняется.
+     * Нужно, чтобы восстановить пользователя из предыдущего снимка, когда его данные
+     * в основном снимке повреждены.
+     *
+     * @return количество примененных записей
+     */
+    public synchronized int replayUser(String username, UserStoragePort users, int fromGeneration, int toGeneration)
+            throws IOException {
+        List<Path> pending = new ArrayList<>();
+        for (Path segment : segments()) {
+            int segmentGeneration = segmentGeneration(segment);
+            if (!isCovered(segmentGeneration, fromGeneration) && isCovered(segmentGeneration, toGeneration)) {
+                pending.add(segment);
+            }
+        }
+        pending.sort(Comparator.comparingInt(segment -> Math.floorMod(segmentGeneration(segment) - fromGeneration, GENERATIONS)));
+
+        int applied = 0;
+        for (Path segment : pending) {
+            applied += replayFile(segment, users, false, username);
+        }
+        return applied;
+    }
+
+    // onlyUser — применять записи только этого пользователя (null — всех)
+    private int replayFile(Path file, UserStoragePort users, boolean truncateTail, String onlyUser) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_SIZE) {
+            return 0;
+        }
+
+        int applied = 0;
+        long validLength = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Неверный формат файла журнала: " + file);
+            }
+            short version = in.readShort();
+            if (version < VERSION_WITH_DOUBLE_AMOUNTS || version > VERSION) {
+                throw new IOException("Неподдерживаемая версия журнала: " + version);
+            }
+
+            byte[] payload;
+            while ((payload = readRecord(in)) != null) {
+                apply(users, new DataInputStream(new ByteArrayInputStream(payload)), version, onlyUser);
+                validLength += 8 + payload.length;
+                applied++;
+            }
+        }
+
+        if (validLength < Files.size(file)) {
+            System.err.println("⚠️  Журнал " + file.getFileName() + " повреждён после записи №" + applied + ", хвост отброшен.");
+            if (!truncateTail) {
+                return applied;
+            }
+            if (channel != null) {
+                channel.truncate(validLength);
+                channel.position(validLength);
+            } else {
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    ch.truncate(validLength);
+                }
+            }
+        }
+        return applied;
+    }
+
+    // Сегмент входит в снимок, если его поколение не новее поколения снимка (по модулю GENERATIONS)
+    private static boolean isCovered(int segmentGeneration, int snapshotGeneration) {
+        return (short) (segmentGeneration - snapshotGeneration) <= 0;
+    }
+
+    private Path segmentPath(int segmentGeneration) {
+        return path.resolveSibling(path.getFileName() + "." + segmentGeneration);
+    }
+
+    private int segmentGeneration(Path segment) {
+        return Integer.parseInt(segment.getFileName().toString().substring(path.getFileName().toString().length() + 1));
+    }
+
+    private List<Path> segments() throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".";
+        List<Path> result = new ArrayList<>();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return result;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.length() > prefix.length() && name.length() - prefix.length() <= 5
+                        && name.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+                    result.add(path.resolveSibling(name));
+                }
+            });
+        }
+        return result;
+    }
+
+    public void attach(String username, AccountHolder accountHolder) {
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        if (account == null) {
+            return;
+        }
+        JournalListener listener = listenersByUser.computeIfAbsent(username, JournalListener::new);
+        listener.attachTo(account);
+    }
+
+    public void detach(String username) {
+        JournalListener listener = listenersByUser.remove(username);
+        if (listener != null) {
+            listener.attachTo(null);
+        }
+    }
+
+    public void detachAll() {
+        listenersByUser.keySet().forEach(this::detach);
+    }
+
+    public void appendUserPut(AccountHolder accountHolder) {
+        append(USER_PUT, out -> {
+            out.writeUTF(accountHolder.getUsername());
+            out.writeUTF(accountHolder.getPassword());
+            FinancialAccount account = accountHolder.getFinancialAccount();
+            Map<String, Double> budgets = account.getBudgetsCategories();
+            out.writeInt(budgets.size());
+            for (Map.Entry<String, Double> budget : budgets.entrySet()) {
+                out.writeUTF(budget.getKey());
+                out.writeDouble(budget.getValue());
+            }
+            List<FinancialEntry> entries = account.getFinancialEntries();
+            out.writeInt(entries.size());
+            for (FinancialEntry entry : entries) {
+                writeEntry(out, entry);
+            }
+        });
+    }
+
+    public void appendUserDelete(String username) {
+        append(USER_DELETE, out -> out.writeUTF(username));
+    }
+
+    /**
+     * Выполняет changes так, что все записи, сделанные ими в этом потоке, попадают в журнал
+     * одной записью: при восстановлении применяются все или ни одной. Если changes бросают
+     * исключение, накопленные записи отбрасываются, а откат изменений в памяти остается
+     * за вызывающим. Вложенная группа становится частью внешней.
+     */
+    public void group(Runnable changes) {
+        if (groups.get() != null) {
+            changes.run();
+            return;
+        }
+        List<PendingRecord> pending = new ArrayList<>();
+        groups.set(pending);
+        try {
+            changes.run();
+        } finally {
+            groups.remove();
+        }
+        if (pending.size() == 1) {
+            PendingRecord record = pending.get(0);
+            appendRecord(record.type, record.writer);
+        } else if (!pending.isEmpty()) {
+            // Каждая запись группы хранится со своей длиной, чтобы пропуск одной не сбивал разбор следующих
+            appendRecord(GROUP, out -> {
+                out.writeInt(pending.size());
+                for (PendingRecord record : pending) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+                    DataOutputStream nested = new DataOutputStream(bytes);
+                    nested.writeByte(record.type);
+                    record.writer.write(nested);
+                    nested.flush();
+                    out.writeInt(bytes.size());
+                    bytes.writeTo(out);
+                }
+            });
+        }
+    }
+
+    private void apply(UserStoragePort users, DataInputStream in, short version, String onlyUser) throws IOException {
+        byte type = in.readByte();
+        if (type == GROUP) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                apply(users, new DataInputStream(new ByteArrayInputStream(payload)), version, onlyUser);
+            }
+            return;
+        }
+        if (type == USER_PUT) {
+            String username = in.readUTF();
+            if (onlyUser != null && !onlyUser.equals(username)) {
+                return;
+            }
+            AccountHolder accountHolder = new AccountHolder(username, in.readUTF());
+            FinancialAccount account = accountHolder.getFinancialAccount();
+            int budgets = in.readInt();
+            for (int i = 0; i < budgets; i++) {
+                account.setBudget(in.readUTF(), in.readDouble());
+            }
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                account.addTransaction(readEntry(in, version));
+            }
+            users.save(accountHolder.getUsername(), accountHolder);
+            return;
+        }
+
+        String username = in.readUTF();
+        if (onlyUser != null && !onlyUser.equals(username)) {
+            return;
+        }
+        if (type == USER_DELETE) {
+            users.delete(username);
+            return;
+        }
+
+        AccountHolder accountHolder = users.find(username);
+        if (accountHolder == null) {
+            System.err.println("⚠️  Журнал ссылается на неизвестного пользователя '" + username + "', запись пропущена.");
+            return;
+        }
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        switch (type) {
+            case ENTRY_ADD:
+                account.addTransaction(readEntry(in, version));
+                break;
+            case ENTRY_ADD_BATCH:
+                int count = in.readInt();
+                List<FinancialEntry> batch = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    batch.add(readEntry(in, version));
+                }
+                account.addTransactions(batch);
+                break;
+            case ENTRY_REMOVE:
+                int removeIndex = in.readInt();
+                if (removeIndex < account.getFinancialEntries().size()) {
+                    account.removeTransaction(removeIndex);
+                }
+                break;
+            case ENTRY_UPDATE:
+                int updateIndex = in.readInt();
+                FinancialEntry updated = readEntry(in, version);
+                if (updateIndex < account.getFinancialEntries().size()) {
+                    account.getFinancialEntries().get(updateIndex).assign(updated);
+                }
+                break;
+            case BUDGET_SET:
+                account.setBudget(in.readUTF(), in.readDouble());
+                break;
+            case BUDGET_REMOVE:
+                account.removeBudget(in.readUTF());
+                break;
+            default:
+                throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+
+    private byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length <= 0 || length > (1 << 30)) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            return checksum(payload) == crc ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void append(byte type, RecordWriter writer) {
+        List<PendingRecord> pending = groups.get();
+        if (pending != null) {
+            // Данные записи сериализуются при записи группы, в формате файла на тот момент
+            pending.add(new PendingRecord(type, writer));
+            return;
+        }
+        appendRecord(type, writer);
+    }
+
+    private void appendRecord(byte type, RecordWriter writer) {
+        Runnable compaction = null;
+        synchronized (this) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeByte(type);
+                writer.write(out);
+                out.flush();
+                byte[] payload = bytes.toByteArray();
+
+                ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+                record.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                recordCount++;
+            } catch (IOException e) {
+                System.err.println("❌ Ошибка записи в журнал: " + e.getMessage());
+                return;
+            }
+            if (recordCount >= compactionThreshold && compactionHandler != null && !compacting) {
+                compacting = true;
+                compaction = compactionHandler;
+            }
+        }
+
+        if (compaction != null) {
+            try {
+                compaction.run();
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).flip();
+        fileVersion = VERSION;
+        channel.write(header, 0);
+        channel.position(HEADER_SIZE);
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    // Вызывается из append под блокировкой журнала
+    private void writeEntry(DataOutputStream out, FinancialEntry entry) throws IOException {
+        if (fileVersion == VERSION_WITH_DOUBLE_AMOUNTS) {
+            out.writeDouble(entry.getAmount());
+        } else {
+            out.writeLong(entry.getAmountCents());
+        }
+        if (fileVersion > VERSION_WITHOUT_CATEGORY_FLAG) {
+            out.writeBoolean(entry.getCategory() != null);
+            if (entry.getCategory() != null) {
+                out.writeUTF(entry.getCategory());
+            }
+        } else {
+            out.writeUTF(entry.getCategory() != null ? entry.getCategory() : "");
+        }
+        out.writeBoolean(Boolean.TRUE.equals(entry.getIsIncome()));
+        LocalDateTime timestamp = entry.getTimestamp();
+        if (timestamp == null) {
+            out.writeLong(NO_TIMESTAMP);
+            out.writeInt(0);
+        } else {
+            out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(timestamp.getNano());
+        }
+    }
+
+    private static FinancialEntry readEntry(DataInputStream in, short version) throws IOException {
+        long amountCents = version == VERSION_WITH_DOUBLE_AMOUNTS ? Money.ofDouble(in.readDouble()) : in.readLong();
+        String category;
+        if (version > VERSION_WITHOUT_CATEGORY_FLAG) {
+            category = in.readBoolean() ? in.readUTF() : null;
+        } else {
+            // Прежние версии писали null как пустую строку, а пустых категорий сервис не допускает
+            String stored = in.readUTF();
+            category = stored.isEmpty() ? null : stored;
+        }
+        boolean income = in.readBoolean();
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return FinancialEntry.ofCents(amountCents, category, income,
+                seconds == NO_TIMESTAMP ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class PendingRecord {
+        private final byte type;
+        private final RecordWriter writer;
+
+        private PendingRecord(byte type, RecordWriter writer) {
+            this.type = type;
+            this.writer = writer;
+        }
+    }
+
+    /**
+     * Пишет в журнал изменения одного аккаунта.
+     */
+    private final class JournalListener implements FinancialAccountListener {
+        private final String username;
+        private FinancialAccount account;
+
+        private JournalListener(String username) {
+            this.username = username;
+        }
+
+        private synchronized void attachTo(FinancialAccount newAccount) {
+            if (account == newAccount) {
+                return;
+            }
+            if (account != null) {
+                account.removeListener(this);
+            }
+            account = newAccount;
+            if (account != null) {
+                account.addListener(this);
+            }
+        }
+
+        @Override
+        public void onTransactionAdded(FinancialAccount account, FinancialEntry entry) {
+            append(ENTRY_ADD, out -> {
+                out.writeUTF(username);
+                writeEntry(out, entry);
+            });
+        }
+
+        // Пакет пишется одной записью: при восстановлении он применяется целиком или не применяется
+        @Override
+        public void onTransactionsAdded(FinancialAccount account, List<FinancialEntry> entries) {
+            append(ENTRY_ADD_BATCH, out -> {
+                out.writeUTF(username);
+                out.writeInt(entries.size());
+                for (FinancialEntry entry : entries) {
+                    writeEntry(out, entry);
+                }
+            });
+        }
+
+        @Override
+        public void onTransactionRemoved(FinancialAccount account, int index, FinancialEntry entry) {
+            append(ENTRY_REMOVE, out -> {
+                out.writeUTF(username);
+                out.writeInt(index);
+            });
+        }
+
+        @Override
+        public void onTransactionChanged(FinancialAccount account, int index, FinancialEntry entry) {
+            append(ENTRY_UPDATE, out -> {
+                out.writeUTF(username);
+                out.writeInt(index);
+                writeEntry(out, entry);
+            });
+        }
+
+        @Override
+        public void onBudgetSet(FinancialAccount account, String category, double amount) {
+            append(BUDGET_SET, out -> {
+                out.writeUTF(username);
+                out.writeUTF(category);
+                out.writeDouble(amount);
+            });
+        }
+
+        @Override
+        public void onBudgetRemoved(FinancialAccount account, String category) {
+            append(BUDGET_REMOVE, out -> {
+                out.writeUTF(username);
+                out.writeUTF(category);
+            });
+        }
+    }
+}
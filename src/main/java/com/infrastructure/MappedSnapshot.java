@@ -0,0 +1,186 @@
+package com.infrastructure;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Снимок users.data, отображенный в память через FileChannel.map.
+ * При открытии читаются только заголовок, таблица строк и каталог пользователей,
+ * транзакции конкретного пользователя декодируются при обращении к нему.
+ * Контрольные суммы проверяются так же лениво: при открытии — для заголовка, строк и каталога,
+ * остальные блоки — при первом обращении к пользователю, чьи данные в них лежат.
+ * Поврежденный блок пользователя сообщается из {@link #decode(String)} как SnapshotCorruptedException.
+ */
+public class MappedSnapshot implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer mapped;
+    private final String[] strings;
+    private final Map<String, DirectoryEntry> directory;
+    // null для файлов без контрольных сумм
+    private final BlockChecksums.Footer checksums;
+    // Суммы в старом формате (double), а не в копейках
+    private final short version;
+
+    private MappedSnapshot(FileChannel channel, ByteBuffer mapped, String[] strings,
+                           Map<String, DirectoryEntry> directory, BlockChecksums.Footer checksums,
+                           short version) {
+        this.channel = channel;
+        this.mapped = mapped;
+        this.strings = strings;
+        this.directory = directory;
+        this.checksums = checksums;
+        this.version = version;
+    }
+
+    public static MappedSnapshot open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            // Файлы больше 2 ГБ нельзя отобразить одним буфером — тогда блоки отображаются по запросу
+            ByteBuffer mapped = size <= Integer.MAX_VALUE
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+
+            ByteBuffer header = region(channel, mapped, 0, SnapshotCodec.HEADER_SIZE);
+            if (header.getInt() != SnapshotCodec.MAGIC) {
+                throw new IOException("Неверный формат файла данных: " + path);
+            }
+            short version = header.getShort();
+            if (!SnapshotCodec.isSupported(version)) {
+                throw new IOException("Неподдерживаемая версия файла данных: " + version);
+            }
+            header.getShort();
+            int userCount = header.getInt();
+            int stringCount = header.getInt();
+            long stringTableOffset = header.getLong();
+            long directoryOffset = header.getLong();
+
+            long dataLength = size;
+            BlockChecksums.Footer checksums = null;
+            if (SnapshotCodec.hasChecksums(version)) {
+                checksums = BlockChecksums.readFooter(channel, path.getFileName().toString());
+                checksums.verify(channel, mapped, 0,
+                        directoryOffset + (long) userCount * SnapshotCodec.DIRECTORY_RECORD_SIZE);
+                dataLength = checksums.dataLength();
+            }
+
+            ByteBuffer table = region(channel, mapped, stringTableOffset, directoryOffset - stringTableOffset);
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                byte[] bytes = new byte[table.getInt()];
+                table.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            ByteBuffer records = region(channel, mapped, directoryOffset,
+                    (long) userCount * SnapshotCodec.DIRECTORY_RECORD_SIZE);
+            Map<String, DirectoryEntry> directory = new HashMap<>(userCount * 2);
+            for (int i = 0; i < userCount; i++) {
+                String username = strings[records.getInt()];
+                DirectoryEntry entry = new DirectoryEntry(records.getInt(), records.getInt(),
+                        records.getInt(), records.getLong());
+                if (entry.offset < 0 || entry.offset + entry.length() > dataLength) {
+                    throw new SnapshotCorruptedException(path.getFileName() + ": данные пользователя '" + username
+                            + "' за пределами файла");
+                }
+                directory.put(username, entry);
+            }
+            return new MappedSnapshot(channel, mapped, strings, directory, checksums, version);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Set<String> usernames() {
+        return Collections.unmodifiableSet(directory.keySet());
+    }
+
+    public boolean contains(String username) {
+        return username != null && directory.containsKey(username);
+    }
+
+    public int size() {
+        return directory.size();
+    }
+
+    /**
+     * Декодирует пользователя вместе с бюджетами и транзакциями.
+     * Блоки с его данными проверяются по контрольным суммам при первом обращении.
+     *
+     * @return пользователь или null, если его нет в снимке
+     * @throws SnapshotCorruptedException если данные пользователя повреждены
+     */
+    public AccountHolder decode(String username) throws IOException {
+        DirectoryEntry entry = username != null ? directory.get(username) : null;
+        if (entry == null) {
+            return null;
+        }
+
+        if (checksums != null) {
+            checksums.verify(channel, mapped, entry.offset, entry.length());
+        }
+        ByteBuffer block = region(channel, mapped, entry.offset, entry.length());
+
+        AccountHolder holder = new AccountHolder(username, strings[entry.passwordId]);
+
+        Map<String, Double> budgets = new TreeMap<>();
+        for (int i = 0; i < entry.budgetCount; i++) {
+            budgets.put(strings[block.getInt()], block.getDouble());
+        }
+
+        List<FinancialEntry> entries = new ArrayList<>(entry.entryCount);
+        for (int i = 0; i < entry.entryCount; i++) {
+            entries.add(SnapshotCodec.getEntry(block, strings, version));
+        }
+        holder.setFinancialAccount(FinancialAccount.restore(budgets, entries));
+        return holder;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static ByteBuffer region(FileChannel channel, ByteBuffer mapped, long offset, long length)
+            throws IOException {
+        if (mapped != null) {
+            return mapped.duplicate().position((int) offset).limit((int) (offset + length)).slice();
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private static final class DirectoryEntry {
+        private final int passwordId;
+        private final int budgetCount;
+        private final int entryCount;
+        private final long offset;
+
+        private DirectoryEntry(int passwordId, int budgetCount, int entryCount, long offset) {
+            this.passwordId = passwordId;
+            this.budgetCount = budgetCount;
+            this.entryCount = entryCount;
+            this.offset = offset;
+        }
+
+        private long length() {
+            return (long) budgetCount * SnapshotCodec.BUDGET_RECORD_SIZE
+                    + (long) entryCount * SnapshotCodec.ENTRY_RECORD_SIZE;
+        }
+    }
+}
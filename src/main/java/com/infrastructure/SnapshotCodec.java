@@ -0,0 +1,377 @@
+package com.infrastructure;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialEntry;
+import com.business.entities.Money;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Компактный бинарный формат снимка пользователей (users.data).
+ *
+ * Структура файла:
+ * <pre>
+ * заголовок       magic, версия, поколение журнала, число пользователей и строк, смещения секций
+ * таблица строк   имена пользователей, пароли и категории (каждая строка один раз)
+ * каталог         на каждого пользователя: id имени, id пароля, число бюджетов,
+ *                 число транзакций, смещение его блока
+ * блоки           бюджеты [id категории, сумма] и транзакции фиксированной длины
+ *                 [сумма, секунды эпохи, наносекунды, id категории, флаги]
+ * </pre>
+ * Начиная с версии 2 за блоками идут контрольные суммы CRC32C по 64 КБ (см. BlockChecksums).
+ * С версии 3 сумма транзакции хранится в копейках (long), в версиях 1 и 2 — как double.
+ * С версии 4 транзакция без категории хранит id категории {@link #NO_CATEGORY}, прежние писали пустую строку.
+ * Поколение журнала — номер первого сегмента журнала, не вошедшего в снимок (см. LedgerJournal#rotate).
+ */
+public final class SnapshotCodec {
+    public static final int MAGIC = 0x464E5353; // "FNSS"
+    public static final short VERSION = 4;
+    // Старые версии по-прежнему читаются: суммы double переводятся в копейки при загрузке
+    static final short VERSION_WITHOUT_NO_CATEGORY = 3;
+    static final short VERSION_WITH_DOUBLE_AMOUNTS = 2;
+    static final short VERSION_WITHOUT_CHECKSUMS = 1;
+
+    static final int HEADER_SIZE = 40;
+    static final int DIRECTORY_RECORD_SIZE = 24;
+    static final int BUDGET_RECORD_SIZE = 12;
+    static final int ENTRY_RECORD_SIZE = 25;
+
+    // id категории транзакции без категории: строки с таким номером в таблице нет
+    static final int NO_CATEGORY = -1;
+
+    static final byte FLAG_INCOME = 1;
+    static final byte FLAG_NO_TIMESTAMP = 2;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final short LEGACY_MAGIC = (short) 0xACED;
+
+    private SnapshotCodec() {
+    }
+
+    // Файл записан стандартной Java-сериализацией (ObjectOutputStream)
+    public static boolean isLegacyFormat(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(2);
+            channel.read(head, 0);
+            return head.position() == 2 && head.getShort(0) == LEGACY_MAGIC;
+        }
+    }
+
+    public static void write(Path path, Map<String, AccountHolder> users) throws IOException {
+        write(path, users, 0);
+    }
+
+    public static void write(Path path, Map<String, AccountHolder> users, int journalGeneration) throws IOException {
+        write(path, users::forEach, journalGeneration);
+    }
+
+    /**
+     * Записывает снимок за один обход пользователей: каждый пользователь читается один раз
+     * и дальше не удерживается. Блоки пишутся во временный файл, пока собираются таблица строк
+     * и каталог, а затем переносятся в снимок вслед за ними.
+     *
+     * @param users обход пользователей, например {@code storage::forEachUser}
+     */
+    public static void write(Path path, Consumer<BiConsumer<String, AccountHolder>> users, int journalGeneration)
+            throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        // На пользователя: id имени, id пароля, число бюджетов, число транзакций
+        List<int[]> directory = new ArrayList<>();
+        Path blocksFile = path.resolveSibling(path.getFileName() + ".blocks");
+        try (FileChannel blocks = FileChannel.open(blocksFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            try {
+                users.accept((username, holder) -> {
+                    try {
+                        directory.add(writeBlock(blocks, buffer, strings, holder));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            flush(blocks, buffer, null);
+
+            long stringTableSize = 0;
+            List<byte[]> encodedStrings = new ArrayList<>(strings.size());
+            for (String value : strings.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                encodedStrings.add(bytes);
+                stringTableSize += 4 + bytes.length;
+            }
+            long directoryOffset = HEADER_SIZE + stringTableSize;
+            long ledgerOffset = directoryOffset + (long) directory.size() * DIRECTORY_RECORD_SIZE;
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                BlockChecksums checksums = new BlockChecksums();
+
+                buffer.putInt(MAGIC).putShort(VERSION).putShort((short) journalGeneration)
+                        .putInt(directory.size()).putInt(strings.size())
+                        .putLong(HEADER_SIZE).putLong(directoryOffset).putLong(ledgerOffset);
+
+                for (byte[] bytes : encodedStrings) {
+                    ensure(channel, buffer, checksums, 4);
+                    buffer.putInt(bytes.length);
+                    putBytes(channel, buffer, checksums, bytes);
+                }
+
+                long blockOffset = ledgerOffset;
+                for (int[] record : directory) {
+                    ensure(channel, buffer, checksums, DIRECTORY_RECORD_SIZE);
+                    buffer.putInt(record[0]).putInt(record[1]).putInt(record[2]).putInt(record[3]).putLong(blockOffset);
+                    blockOffset += (long) record[2] * BUDGET_RECORD_SIZE + (long) record[3] * ENTRY_RECORD_SIZE;
+                }
+
+                // Блоки переносятся из временного файла через тот же буфер, чтобы посчитать их контрольные суммы
+                long position = 0;
+                long length = blocks.size();
+                while (position < length) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer, checksums);
+                    }
+                    int read = blocks.read(buffer, position);
+                    if (read < 0) {
+                        throw new EOFException("Временный файл блоков обрезан: " + blocksFile);
+                    }
+                    position += read;
+                }
+
+                flush(channel, buffer, checksums);
+                checksums.writeFooter(channel);
+                // Данные должны оказаться на диске до того, как файл подменит предыдущий снимок
+                channel.force(true);
+            }
+        }
+    }
+
+    // Пишет бюджеты и транзакции пользователя и возвращает его запись каталога;
+    // число записей считается по записанному, поэтому каталог всегда совпадает с блоками
+    private static int[] writeBlock(FileChannel blocks, ByteBuffer buffer, Map<String, Integer> strings,
+                                    AccountHolder holder) throws IOException {
+        FinancialAccount account = holder.getFinancialAccount();
+        int[] record = {intern(strings, holder.getUsername()), intern(strings, holder.getPassword()), 0, 0};
+        for (Map.Entry<String, Double> budget : account.getBudgetsCategories().entrySet()) {
+            ensure(blocks, buffer, null, BUDGET_RECORD_SIZE);
+            buffer.putInt(intern(strings, budget.getKey())).putDouble(budget.getValue());
+            record[2]++;
+        }
+        for (FinancialEntry entry : account.getFinancialEntries()) {
+            ensure(blocks, buffer, null, ENTRY_RECORD_SIZE);
+            putEntry(buffer, entry, entry.getCategory() != null ? intern(strings, entry.getCategory()) : NO_CATEGORY);
+            record[3]++;
+        }
+        return record;
+    }
+
+    // Поколение журнала из заголовка; 0 для снимков, записанных до появления поколений
+    public static int readJournalGeneration(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(8);
+            channel.read(head, 0);
+            if (head.position() < 8 || head.getInt(0) != MAGIC) {
+                return 0;
+            }
+            return head.getShort(6) & 0xFFFF;
+        }
+    }
+
+    public static Map<String, AccountHolder> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip();
+
+            fill(channel, buffer, HEADER_SIZE);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Неверный формат файла данных: " + path);
+            }
+            short version = buffer.getShort();
+            if (!isSupported(version)) {
+                throw new IOException("Неподдерживаемая версия файла данных: " + version);
+            }
+            ReadableByteChannel in = channel;
+            BlockChecksums.Footer.VerifyingChannel verifying = null;
+            if (hasChecksums(version)) {
+                verifying = BlockChecksums.readFooter(channel, path.getFileName().toString()).verifying(channel);
+                // В буфере уже лежит начало файла
+                verifying.update(buffer.duplicate().rewind());
+                in = verifying;
+            }
+            try {
+                return read(in, buffer, version);
+            } catch (SnapshotCorruptedException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                // Разбор мог сорваться на поврежденных байтах: тогда сообщаем о повреждении
+                if (verifying != null) {
+                    verifying.finish();
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Разбор после заголовка: строки, каталог и блоки пользователей подряд
+    private static Map<String, AccountHolder> read(ReadableByteChannel channel, ByteBuffer buffer, short version)
+            throws IOException {
+        buffer.getShort();
+        int userCount = buffer.getInt();
+        int stringCount = buffer.getInt();
+        buffer.getLong();
+        buffer.getLong();
+        buffer.getLong();
+
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            fill(channel, buffer, 4);
+            byte[] bytes = new byte[buffer.getInt()];
+            getBytes(channel, buffer, bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int[][] directory = new int[userCount][];
+        for (int i = 0; i < userCount; i++) {
+            fill(channel, buffer, DIRECTORY_RECORD_SIZE);
+            directory[i] = new int[]{buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()};
+            buffer.getLong();
+        }
+
+        Map<String, AccountHolder> users = new HashMap<>(userCount * 2);
+        for (int[] record : directory) {
+            AccountHolder holder = new AccountHolder(strings[record[0]], strings[record[1]]);
+
+            Map<String, Double> budgets = new TreeMap<>();
+            for (int i = 0; i < record[2]; i++) {
+                fill(channel, buffer, BUDGET_RECORD_SIZE);
+                budgets.put(strings[buffer.getInt()], buffer.getDouble());
+            }
+
+            List<FinancialEntry> entries = new ArrayList<>(record[3]);
+            for (int i = 0; i < record[3]; i++) {
+                fill(channel, buffer, ENTRY_RECORD_SIZE);
+                entries.add(getEntry(buffer, strings, version));
+            }
+            holder.setFinancialAccount(FinancialAccount.restore(budgets, entries));
+            users.put(holder.getUsername(), holder);
+        }
+        return users;
+    }
+
+    static void putEntry(ByteBuffer buffer, FinancialEntry entry, int categoryId) {
+        LocalDateTime timestamp = entry.getTimestamp();
+        byte flags = Boolean.TRUE.equals(entry.getIsIncome()) ? FLAG_INCOME : 0;
+        if (timestamp == null) {
+            flags |= FLAG_NO_TIMESTAMP;
+        }
+        buffer.putLong(entry.getAmountCents())
+                .putLong(timestamp != null ? timestamp.toEpochSecond(ZoneOffset.UTC) : 0L)
+                .putInt(timestamp != null ? timestamp.getNano() : 0)
+                .putInt(categoryId)
+                .put(flags);
+    }
+
+    static boolean isSupported(short version) {
+        return version >= VERSION_WITHOUT_CHECKSUMS && version <= VERSION;
+    }
+
+    static boolean hasChecksums(short version) {
+        return version != VERSION_WITHOUT_CHECKSUMS;
+    }
+
+    static FinancialEntry getEntry(ByteBuffer buffer, String[] strings, short version) {
+        long amountCents = version <= VERSION_WITH_DOUBLE_AMOUNTS ? Money.ofDouble(buffer.getDouble()) : buffer.getLong();
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        int categoryId = buffer.getInt();
+        String category;
+        if (version > VERSION_WITHOUT_NO_CATEGORY) {
+            category = categoryId == NO_CATEGORY ? null : strings[categoryId];
+        } else {
+            // Прежние версии писали null как пустую строку, а пустых категорий сервис не допускает
+            category = strings[categoryId].isEmpty() ? null : strings[categoryId];
+        }
+        byte flags = buffer.get();
+        LocalDateTime timestamp = (flags & FLAG_NO_TIMESTAMP) != 0
+                ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+        return FinancialEntry.ofCents(amountCents, category, (flags & FLAG_INCOME) != 0, timestamp);
+    }
+
+    // Номер строки в таблице; новая строка получает следующий номер
+    private static int intern(Map<String, Integer> strings, String value) {
+        return strings.computeIfAbsent(value, key -> strings.size());
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, BlockChecksums checksums, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer, checksums);
+        }
+    }
+
+    // checksums == null — байты пишутся без контрольных сумм (временный файл блоков)
+    private static void flush(FileChannel channel, ByteBuffer buffer, BlockChecksums checksums) throws IOException {
+        buffer.flip();
+        if (checksums != null) {
+            checksums.update(buffer);
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void putBytes(FileChannel channel, ByteBuffer buffer, BlockChecksums checksums, byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensure(channel, buffer, checksums, 1);
+            int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    // Гарантирует, что в буфере для чтения есть не меньше bytes байт
+    private static void fill(ReadableByteChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Файл данных обрезан");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void getBytes(ReadableByteChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            fill(channel, buffer, 1);
+            int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.get(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+}
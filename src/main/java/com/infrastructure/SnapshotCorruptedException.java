@@ -0,0 +1,13 @@
+package com.infrastructure;
+
+import java.io.IOException;
+
+/**
+ * Контрольная сумма блока снимка не совпала: файл поврежден (например, запись
+ * оборвалась или диск вернул испорченные данные).
+ */
+public class SnapshotCorruptedException extends IOException {
+    public SnapshotCorruptedException(String message) {
+        super(message);
+    }
+}
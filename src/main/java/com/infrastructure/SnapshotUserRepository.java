@@ -0,0 +1,289 @@
+package com.infrastructure;
+
+import com.business.entities.AccountHolder;
+import com.business.ports.UserStoragePort;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Хранилище пользователей поверх отображенного в память снимка.
+ * Пользователь из снимка декодируется при первом обращении через find
+ * и дальше хранится в памяти вместе с новыми и измененными пользователями.
+ * Обход всех пользователей (view, forEachUser, findAll) декодирует их по одному
+ * и в память не добавляет.
+ * Если данные пользователя в снимке повреждены, он берется из {@link Recovery};
+ * восстановленный пользователь остается в памяти.
+ */
+public class SnapshotUserRepository implements UserStoragePort {
+    private final Map<String, AccountHolder> loaded = new ConcurrentHashMap<>();
+    private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+    private volatile MappedSnapshot snapshot;
+    private volatile Recovery recovery = SnapshotUserRepository::unrecoverable;
+
+    /**
+     * Источник пользователя, чьи данные в снимке не прочитались.
+     */
+    @FunctionalInterface
+    public interface Recovery {
+        // null, если пользователя восстановить не удалось (причина уже выведена)
+        AccountHolder recover(String username, IOException failure);
+    }
+
+    public synchronized void attachSnapshot(MappedSnapshot snapshot) {
+        attachSnapshot(snapshot, SnapshotUserRepository::unrecoverable);
+    }
+
+    public synchronized void attachSnapshot(MappedSnapshot snapshot, Recovery recovery) {
+        releaseSnapshot();
+        loaded.clear();
+        this.snapshot = snapshot;
+        this.recovery = recovery;
+    }
+
+    @Override
+    public void save(String username, AccountHolder accountHolder) {
+        if (username == null || accountHolder == null) {
+            throw new IllegalArgumentException("Имя пользователя и пользователь не могут быть null");
+        }
+        synchronized (this) {
+            loaded.put(username, accountHolder);
+            deleted.remove(username);
+        }
+    }
+
+    @Override
+    public AccountHolder find(String username) {
+        if (username == null) {
+            return null;
+        }
+        AccountHolder accountHolder = loaded.get(username);
+        if (accountHolder != null || snapshot == null) {
+            return accountHolder;
+        }
+        synchronized (this) {
+            return findInSnapshot(username);
+        }
+    }
+
+    @Override
+    public synchronized void delete(String username) {
+        if (username == null) {
+            return;
+        }
+        loaded.remove(username);
+        if (snapshot != null && snapshot.contains(username)) {
+            deleted.add(username);
+        }
+    }
+
+    @Override
+    public Map<String, AccountHolder> findAll() {
+        Map<String, AccountHolder> users = new HashMap<>();
+        forEachUser(users::put);
+        return users;
+    }
+
+    @Override
+    public Map<String, AccountHolder> view() {
+        return new UserView();
+    }
+
+    @Override
+    public void forEachUser(BiConsumer<String, AccountHolder> action) {
+        Iterator<Map.Entry<String, AccountHolder>> users = new UserIterator();
+        while (users.hasNext()) {
+            Map.Entry<String, AccountHolder> user = users.next();
+            action.accept(user.getKey(), user.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void setAllUsers(Map<String, AccountHolder> users) {
+        releaseSnapshot();
+        loaded.clear();
+        if (users != null) {
+            loaded.putAll(users);
+        }
+    }
+
+    @Override
+    public boolean containsUser(String username) {
+        if (username == null) {
+            return false;
+        }
+        if (loaded.containsKey(username)) {
+            return true;
+        }
+        MappedSnapshot current = snapshot;
+        return current != null && current.contains(username) && !deleted.contains(username);
+    }
+
+    public synchronized int size() {
+        if (snapshot == null) {
+            return loaded.size();
+        }
+        int size = loaded.size();
+        for (String username : snapshot.usernames()) {
+            if (!loaded.containsKey(username) && !deleted.contains(username)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    // Пользователь уже декодирован из снимка
+    public boolean isLoaded(String username) {
+        return username != null && loaded.containsKey(username);
+    }
+
+    private AccountHolder findInSnapshot(String username) {
+        AccountHolder accountHolder = loaded.get(username);
+        if (accountHolder != null || snapshot == null || deleted.contains(username)) {
+            return accountHolder;
+        }
+        try {
+            accountHolder = snapshot.decode(username);
+        } catch (IOException e) {
+            return recover(username, e);
+        }
+        if (accountHolder != null) {
+            loaded.put(username, accountHolder);
+        }
+        return accountHolder;
+    }
+
+    // Пользователь из памяти, а если его там нет — декодированный из снимка без сохранения в памяти
+    private AccountHolder peek(String username) {
+        AccountHolder accountHolder = loaded.get(username);
+        MappedSnapshot current = snapshot;
+        if (accountHolder != null || current == null || deleted.contains(username)) {
+            return accountHolder;
+        }
+        try {
+            return current.decode(username);
+        } catch (IOException e) {
+            return recover(username, e);
+        }
+    }
+
+    // Восстановленный пользователь сразу остается в памяти, чтобы не восстанавливать его снова
+    private AccountHolder recover(String username, IOException failure) {
+        AccountHolder recovered = recovery.recover(username, failure);
+        if (recovered == null) {
+            return null;
+        }
+        AccountHolder current = loaded.putIfAbsent(username, recovered);
+        return current != null ? current : recovered;
+    }
+
+    private static AccountHolder unrecoverable(String username, IOException failure) {
+        System.err.println("❌ Не удалось прочитать данные пользователя '" + username + "': " + failure.getMessage());
+        return null;
+    }
+
+    private void releaseSnapshot() {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            snapshot.close();
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка при закрытии файла данных: " + e.getMessage());
+        }
+        snapshot = null;
+        deleted.clear();
+    }
+
+    // Обходит имена, собранные при создании; пользователь берется в момент обращения к нему
+    private final class UserIterator implements Iterator<Map.Entry<String, AccountHolder>> {
+        private final Iterator<String> usernames;
+        private Map.Entry<String, AccountHolder> next;
+
+        private UserIterator() {
+            synchronized (SnapshotUserRepository.this) {
+                List<String> names = new ArrayList<>(loaded.keySet());
+                if (snapshot != null) {
+                    for (String username : snapshot.usernames()) {
+                        if (!loaded.containsKey(username) && !deleted.contains(username)) {
+                            names.add(username);
+                        }
+                    }
+                }
+                usernames = names.iterator();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && usernames.hasNext()) {
+                String username = usernames.next();
+                AccountHolder accountHolder = peek(username);
+                if (accountHolder != null) {
+                    next = new AbstractMap.SimpleImmutableEntry<>(username, accountHolder);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, AccountHolder> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, AccountHolder> user = next;
+            next = null;
+            return user;
+        }
+    }
+
+    /**
+     * Карта пользователей только для чтения поверх каталога снимка и пользователей в памяти.
+     */
+    private final class UserView extends AbstractMap<String, AccountHolder> {
+        @Override
+        public AccountHolder get(Object key) {
+            return key instanceof String && containsUser((String) key) ? peek((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && containsUser((String) key);
+        }
+
+        @Override
+        public int size() {
+            return SnapshotUserRepository.this.size();
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super String, ? super AccountHolder> action) {
+            forEachUser(action::accept);
+        }
+
+        @Override
+        public Set<Map.Entry<String, AccountHolder>> entrySet() {
+            return new AbstractSet<Map.Entry<String, AccountHolder>>() {
+                @Override
+                public Iterator<Map.Entry<String, AccountHolder>> iterator() {
+                    return new UserIterator();
+                }
+
+                @Override
+                public int size() {
+                    return SnapshotUserRepository.this.size();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.interf;
+
+import com.business.entities.AccountHolder;
+import com.business.services.DataPersistenceService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Просмотр и восстановление резервных копий. Запускается при остановленном приложении:
+ * восстановленные пользователи записываются в файл данных (прежний остается как .prev).
+ *
+ * <pre>
+ * java -cp financecontrol.jar com.interf.BackupTool list [users.data]
+ * java -cp financecontrol.jar com.interf.BackupTool restore &lt;id&gt; [users.data]
+ * </pre>
+ */
+public final class BackupTool {
+
+    private BackupTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || (!args[0].equals("list") && !args[0].equals("restore"))
+                || (args[0].equals("restore") && args.length < 2)) {
+            System.out.println("Использование: BackupTool list [файл данных] | restore <id> [файл данных]");
+            System.exit(1);
+        }
+
+        boolean restore = args[0].equals("restore");
+        int fileArgument = restore ? 2 : 1;
+        Path dataFile = args.length > fileArgument ? Paths.get(args[fileArgument]) : Paths.get("users.data");
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+
+        if (!restore) {
+            List<String> backups = service.listBackups();
+            if (backups.isEmpty()) {
+                System.out.println("ℹ️  Резервных копий нет.");
+            }
+            backups.forEach(System.out::println);
+            return;
+        }
+
+        Map<String, AccountHolder> users = service.restoreBackup(args[1]);
+        System.out.println("✅ Восстановлено пользователей: " + users.size());
+        service.save(users);
+    }
+}
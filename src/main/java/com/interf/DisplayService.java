@@ -2,8 +2,12 @@ package com.interf;
 
 import com.interf.enums.OperationDescriptions;
 import com.interf.enums.UsageExamples;
+import com.business.entities.CategoryTotals;
+import com.business.entities.FinancialAccount;
 import com.business.entities.FinancialEntry;
+import com.business.entities.Money;
 import com.business.entities.AccountHolder;
+import com.business.services.BudgetAlertEngine;
 import com.business.services.FinancialOperationsService;
 import com.business.services.AuthenticationService;
 
@@ -21,11 +25,6 @@ public class DisplayService {
      */
     private AuthenticationService authenticationService;
 
-    /**
-     * Константа для процентного предела бюджета.
-     */
-    private static final int LIMIT_PERCENTAGE = 80;
-
     /**
      * Экземпляр сервиса финансовых операций.
      */
@@ -72,17 +71,19 @@ public class DisplayService {
 
     /**
      * Отображает главное меню.
+     *
+     * @param session сессия пользователя
      */
-    public void showMainMenu() {
-        AccountHolder currentAccountHolder = authenticationService.getCurrentAccountHolder();
+    public void showMainMenu(final String session) {
+        AccountHolder currentAccountHolder = authenticationService.findAccountHolder(session);
         System.out.println("\n" + "=".repeat(40));
         System.out.println("        ГЛАВНОЕ МЕНЮ");
         System.out.println("=".repeat(40));
         System.out.println("Текущий пользователь: " +
                 (currentAccountHolder != null ? currentAccountHolder.getUsername() : "не авторизован"));
         if (currentAccountHolder != null) {
-            System.out.printf("Текущий баланс: %.2f%n",
-                    financialOperationsService.getCurrentBalance(currentAccountHolder));
+            System.out.println("Текущий баланс: "
+                    + Money.format(currentAccountHolder.getFinancialAccount().getBalanceCents()));
         }
         System.out.println("=".repeat(40));
         System.out.println("1. Управление транзакциями");
@@ -107,9 +108,10 @@ public class DisplayService {
         System.out.println("1. Загрузить данные пользователя из файла");
         System.out.println("2. Сохранить данные пользователя в файл");
         System.out.println("3. Удалить текущего пользователя");
-        System.out.println("4. Вернуться в главное меню");
+        System.out.println("4. Импортировать банковскую выписку (CSV)");
+        System.out.println("5. Вернуться в главное меню");
         System.out.println("=".repeat(50));
-        System.out.print("Выберите действие (1-4): ");
+        System.out.print("Выберите действие (1-5): ");
     }
 
     /**
@@ -145,10 +147,13 @@ public class DisplayService {
     }
 
     /**
-     * Отображает все транзакции для текущего пользователя с пагинацией.
+     * Отображает все транзакции пользователя сессии с пагинацией.
+     *
+     * @param session сессия пользователя
+     * @param showActions показать меню действий после списка
      */
-    public void showAllTransactions(boolean showActions) {
-        AccountHolder accountHolder = authenticationService.getCurrentAccountHolder();
+    public void showAllTransactions(final String session, boolean showActions) {
+        AccountHolder accountHolder = authenticationService.findAccountHolder(session);
         if (accountHolder == null) {
             System.out.println("Ошибка: пользователь не авторизован!");
             return;
@@ -179,7 +184,7 @@ public class DisplayService {
             System.out.printf("%-4d %-15s %-12s %-25s %-10s%n",
                     index++,
                     type,
-                    String.format("%s%.2f", sign, t.getAmount()),
+                    Money.formatTo(new StringBuilder(sign), t.getAmountCents()),
                     t.getCategory(),
                     formattedDate);
         }
@@ -195,10 +200,12 @@ public class DisplayService {
     }
 
     /**
-     * Отображает всю статистику для текущего пользователя.
+     * Отображает всю статистику пользователя сессии.
+     *
+     * @param session сессия пользователя
      */
-    public void showAllStatistic() {
-        AccountHolder accountHolder = authenticationService.getCurrentAccountHolder();
+    public void showAllStatistic(final String session) {
+        AccountHolder accountHolder = authenticationService.findAccountHolder(session);
         if (accountHolder == null) {
             System.out.println("Ошибка: пользователь не авторизован!");
             return;
@@ -208,9 +215,10 @@ public class DisplayService {
         System.out.println("                  СТАТИСТИКА");
         System.out.println("=".repeat(60));
         System.out.println("\n--- Общие данные ---");
-        System.out.printf("Общая сумма доходов: %.2f%n", financialOperationsService.getAllIncome(accountHolder));
-        System.out.printf("Общая сумма расходов: %.2f%n", financialOperationsService.getAllOutcome(accountHolder));
-        System.out.printf("Текущий баланс: %.2f%n", financialOperationsService.getCurrentBalance(accountHolder));
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        System.out.println("Общая сумма доходов: " + Money.format(account.getTotalIncomeCents()));
+        System.out.println("Общая сумма расходов: " + Money.format(account.getTotalOutcomeCents()));
+        System.out.println("Текущий баланс: " + Money.format(account.getBalanceCents()));
 
         if (financialOperationsService.outcomeOverIncomeAll(accountHolder)) {
             System.out.println("\n⚠️  ВНИМАНИЕ: Расходы превышают доходы!");
@@ -223,7 +231,7 @@ public class DisplayService {
         printIncomes(financialOperationsService.getIncomeByCategory(accountHolder));
 
         System.out.println("\n--- Расходы по категориям ---");
-        printOutcomes(financialOperationsService.getOutcomeByCategory(accountHolder));
+        printOutcomes(accountHolder, financialOperationsService.getOutcomeByCategory(accountHolder));
         System.out.println("=".repeat(60));
     }
 
@@ -245,15 +253,17 @@ public class DisplayService {
     /**
      * Отображает статистику по категориям и периоду времени.
      *
+     * @param session сессия пользователя
      * @param firstTime начальное время
      * @param secondTime конечное время
      * @param categories массив категорий
      */
-    public void showStatisticByCategory(final LocalDateTime firstTime,
+    public void showStatisticByCategory(final String session,
+                                        final LocalDateTime firstTime,
                                         final LocalDateTime secondTime,
                                         final String[] categories) {
         try {
-            AccountHolder accountHolder = authenticationService.getCurrentAccountHolder();
+            AccountHolder accountHolder = authenticationService.findAccountHolder(session);
             if (accountHolder == null) {
                 System.out.println("Ошибка: пользователь не авторизован!");
                 return;
@@ -293,37 +303,34 @@ public class DisplayService {
                     .filter(cat -> !cat.isEmpty())
                     .collect(Collectors.toSet());
 
-            List<FinancialEntry> list = financialOperationsService.getTransactionByCategories(
+            // Итоги складываются из сводок по месяцам и дням, транзакции просматриваются только на краях периода
+            Map<String, CategoryTotals> totals = financialOperationsService.getTotalsByCategory(
                     accountHolder, firstTime, secondTime, filteredCategories);
 
-            if (list.isEmpty()) {
+            if (totals.isEmpty()) {
                 System.out.println("\nНет транзакций по выбранным категориям в указанный период.");
             } else {
-                Map<String, Double> mapOfIncomes = list.stream()
-                        .filter(FinancialEntry::getIsIncome)
-                        .collect(Collectors.toMap(
-                                FinancialEntry::getCategory,
-                                FinancialEntry::getAmount,
-                                Double::sum,
-                                TreeMap::new
-                        ));
+                Map<String, Double> mapOfIncomes = new TreeMap<>();
+                Map<String, Double> mapOfOutcomes = new TreeMap<>();
+                int count = 0;
+                for (Map.Entry<String, CategoryTotals> entry : totals.entrySet()) {
+                    CategoryTotals categoryTotals = entry.getValue();
+                    if (categoryTotals.getIncomeCount() > 0) {
+                        mapOfIncomes.put(entry.getKey(), categoryTotals.getIncomeSum());
+                    }
+                    if (categoryTotals.getOutcomeCount() > 0) {
+                        mapOfOutcomes.put(entry.getKey(), categoryTotals.getOutcomeSum());
+                    }
+                    count += categoryTotals.getIncomeCount() + categoryTotals.getOutcomeCount();
+                }
                 if (!mapOfIncomes.isEmpty()) {
                     printIncomes(mapOfIncomes);
                 }
-
-                Map<String, Double> mapOfOutcomes = list.stream()
-                        .filter(t -> !t.getIsIncome())
-                        .collect(Collectors.toMap(
-                                FinancialEntry::getCategory,
-                                FinancialEntry::getAmount,
-                                Double::sum,
-                                TreeMap::new
-                        ));
                 if (!mapOfOutcomes.isEmpty()) {
-                    printOutcomes(mapOfOutcomes);
+                    printOutcomes(accountHolder, mapOfOutcomes);
                 }
 
-                System.out.printf("%nВсего найдено транзакций: %d%n", list.size());
+                System.out.printf("%nВсего найдено транзакций: %d%n", count);
             }
 
         } catch (Exception e) {
@@ -366,10 +373,10 @@ public class DisplayService {
     /**
      * Выводит статистику расходов с информацией о бюджетах.
      *
+     * @param accountHolder пользователь, чьи бюджеты выводятся
      * @param getOutcome карта категорий к суммам расходов
      */
-    public void printOutcomes(final Map<String, Double> getOutcome) {
-        AccountHolder accountHolder = authenticationService.getCurrentAccountHolder();
+    public void printOutcomes(final AccountHolder accountHolder, final Map<String, Double> getOutcome) {
         if (accountHolder == null) return;
 
         if (getOutcome != null && !getOutcome.isEmpty()) {
@@ -384,13 +391,11 @@ public class DisplayService {
                 System.out.printf("%-20s %-15.2f %-15.2f %-15.2f",
                         k, budget, v, remaining);
 
-                // Показываем предупреждения
-                if (financialOperationsService.budgetOverLimit(accountHolder, k)) {
-                    System.out.print(" ⚠️ ПЕРЕРАСХОД!");
-                } else if (financialOperationsService.budgetIsZero(accountHolder, k)) {
-                    System.out.print(" ⚠️ Бюджет исчерпан!");
-                } else if (financialOperationsService.budgetOverLimitPercent(accountHolder, k, LIMIT_PERCENTAGE)) {
-                    System.out.print(" ⚠️ Осталось менее 20% бюджета!");
+                // Достигнутый порог уже известен движку оповещений, пересчет не нужен
+                BudgetAlertEngine.Alert alert = financialOperationsService.getBudgetAlertEngine()
+                        .getActiveAlert(accountHolder, k);
+                if (alert != null) {
+                    System.out.print(" ⚠️ " + alert.getMessage());
                 }
                 System.out.println();
             });
@@ -400,10 +405,27 @@ public class DisplayService {
     }
 
     /**
-     * Показывает доступные категории.
+     * Выводит и забирает из очереди новые оповещения о бюджетах пользователя сессии.
+     *
+     * @param session сессия пользователя
+     */
+    public void printAlerts(final String session) {
+        AccountHolder accountHolder = authenticationService.findAccountHolder(session);
+        if (accountHolder == null) return;
+
+        for (BudgetAlertEngine.Alert alert : financialOperationsService.getBudgetAlertEngine()
+                .drain(accountHolder.getUsername())) {
+            System.out.println("⚠️ " + alert);
+        }
+    }
+
+    /**
+     * Показывает доступные категории пользователя сессии.
+     *
+     * @param session сессия пользователя
      */
-    public void showCategories() {
-        AccountHolder accountHolder = authenticationService.getCurrentAccountHolder();
+    public void showCategories(final String session) {
+        AccountHolder accountHolder = authenticationService.findAccountHolder(session);
         if (accountHolder == null) {
             System.out.println("Ошибка: пользователь не авторизован!");
             return;
@@ -0,0 +1,334 @@
+package com.interf;
+
+import com.business.entities.AccountHolder;
+import com.business.entities.Money;
+import com.business.exception.CategoryMissingException;
+import com.business.exception.InsufficientFundsException;
+import com.business.exception.PasswordMismatchException;
+import com.business.exception.SessionMissingException;
+import com.business.exception.UserAlreadyExistsException;
+import com.business.exception.UserMissingException;
+import com.business.services.AuthenticationService;
+import com.business.services.BudgetAlertEngine;
+import com.business.services.DataPersistenceService;
+import com.business.services.FinancialOperationsService;
+import com.business.services.TransferService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP API поверх сервисного слоя для работы без консоли.
+ * Каждый запрос обрабатывается в своем виртуальном потоке (на JDK без них — в пуле потоков).
+ * Пользователь определяется по токену сессии в заголовке {@code Authorization: Bearer <токен>}.
+ *
+ * <pre>
+ * POST   /api/register   {"username", "password"}      -> {"token"}
+ * POST   /api/login      {"username", "password"}      -> {"token"}
+ * POST   /api/logout
+ * POST   /api/income     {"category", "amount"}
+ * POST   /api/outcome    {"category", "amount"}
+ * POST   /api/transfer   {"recipient", "amount", "description"}
+ * GET    /api/budgets
+ * POST   /api/budgets    {"category", "amount"}
+ * DELETE /api/budgets?category=...
+ * GET    /api/statistics
+ * GET    /api/export
+ * GET    /api/alerts                                   -> [{"category", "threshold", "overLimit", "budget", "spent", "message"}]
+ * </pre>
+ */
+public class HttpApiServer {
+    private static final ObjectMapper JSON = new ObjectMapper().registerModule(new JavaTimeModule());
+    private static final String BEARER = "Bearer ";
+
+    private final AuthenticationService authenticationService;
+    private final FinancialOperationsService financialOperationsService;
+    private final DataPersistenceService dataPersistenceService;
+    private final TransferService transferService;
+    private final Map<String, Route> routes = new HashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public HttpApiServer(AuthenticationService authenticationService, FinancialOperationsService financialOperationsService,
+                         DataPersistenceService dataPersistenceService) {
+        this.authenticationService = authenticationService;
+        this.financialOperationsService = financialOperationsService;
+        this.dataPersistenceService = dataPersistenceService;
+        this.transferService = new TransferService(authenticationService.getUserStoragePort());
+
+        routes.put("POST /api/register", this::register);
+        routes.put("POST /api/login", this::login);
+        routes.put("POST /api/logout", this::logout);
+        routes.put("POST /api/income", this::addIncome);
+        routes.put("POST /api/outcome", this::addOutcome);
+        routes.put("POST /api/transfer", this::transfer);
+        routes.put("GET /api/budgets", this::budgets);
+        routes.put("POST /api/budgets", this::setBudget);
+        routes.put("DELETE /api/budgets", this::removeBudget);
+        routes.put("GET /api/alerts", this::alerts);
+        routes.put("GET /api/statistics", this::statistics);
+        routes.put("GET /api/export", this::export);
+    }
+
+    public synchronized void start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Сервер уже запущен");
+        }
+        executor = requestExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    // Виртуальные потоки появились в JDK 21, проект собирается под 17, поэтому ищем их через reflection
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Route route = routes.get(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            if (route == null) {
+                sendJson(exchange, 404, JSON.writeValueAsBytes(error("Неизвестный запрос")));
+                return;
+            }
+            int status = 200;
+            Object body;
+            try {
+                body = route.handle(exchange);
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                body = error(e.getMessage());
+            } catch (SessionMissingException | UserMissingException | PasswordMismatchException e) {
+                status = 401;
+                body = error(e.getMessage());
+            } catch (CategoryMissingException e) {
+                status = 404;
+                body = error(e.getMessage());
+            } catch (UserAlreadyExistsException | InsufficientFundsException e) {
+                status = 409;
+                body = error(e.getMessage());
+            } catch (RuntimeException e) {
+                status = 500;
+                body = error("Внутренняя ошибка: " + e.getMessage());
+            }
+            if (body instanceof byte[]) {
+                sendJson(exchange, status, (byte[]) body);
+            } else {
+                sendJson(exchange, status, JSON.writeValueAsBytes(body));
+            }
+        }
+    }
+
+    private Object register(HttpExchange exchange) throws IOException {
+        JsonNode request = readBody(exchange);
+        String username = text(request, "username");
+        String password = text(request, "password");
+        authenticationService.registerUser(username, password);
+        return Map.of("token", authenticationService.openSession(username, password));
+    }
+
+    private Object login(HttpExchange exchange) throws IOException {
+        JsonNode request = readBody(exchange);
+        return Map.of("token", authenticationService.openSession(text(request, "username"), text(request, "password")));
+    }
+
+    private Object logout(HttpExchange exchange) {
+        authenticationService.closeSession(token(exchange));
+        return Map.of();
+    }
+
+    private Object addIncome(HttpExchange exchange) throws IOException {
+        AccountHolder accountHolder = accountHolder(exchange);
+        JsonNode request = readBody(exchange);
+        financialOperationsService.addIncome(accountHolder, text(request, "category"), number(request, "amount"));
+        return Map.of("balance", financialOperationsService.getCurrentBalance(accountHolder));
+    }
+
+    private Object addOutcome(HttpExchange exchange) throws IOException {
+        AccountHolder accountHolder = accountHolder(exchange);
+        JsonNode request = readBody(exchange);
+        financialOperationsService.addOutcome(accountHolder, text(request, "category"), number(request, "amount"));
+        return Map.of("balance", financialOperationsService.getCurrentBalance(accountHolder));
+    }
+
+    private Object transfer(HttpExchange exchange) throws IOException {
+        AccountHolder sender = accountHolder(exchange);
+        JsonNode request = readBody(exchange);
+        String username = text(request, "recipient");
+        AccountHolder recipient = authenticationService.findUser(username);
+        if (recipient == null) {
+            throw new UserMissingException("Пользователь '" + username + "' не найден");
+        }
+        JsonNode description = request.get("description");
+        transferService.transfer(sender, recipient, number(request, "amount"),
+                description != null ? description.asText() : null);
+        return Map.of("balance", financialOperationsService.getCurrentBalance(sender));
+    }
+
+    private Object budgets(HttpExchange exchange) {
+        AccountHolder accountHolder = accountHolder(exchange);
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String category : financialOperationsService.getBudgetCategories(accountHolder)) {
+            result.put(category, Map.of(
+                    "budget", financialOperationsService.getBudget(accountHolder, category),
+                    "spent", financialOperationsService.getSpent(accountHolder, category),
+                    "remaining", financialOperationsService.getBudgetCategory(accountHolder, category)));
+        }
+        return result;
+    }
+
+    private Object setBudget(HttpExchange exchange) throws IOException {
+        AccountHolder accountHolder = accountHolder(exchange);
+        JsonNode request = readBody(exchange);
+        financialOperationsService.setBudget(accountHolder, text(request, "category"), number(request, "amount"));
+        return budgets(exchange);
+    }
+
+    private Object removeBudget(HttpExchange exchange) {
+        AccountHolder accountHolder = accountHolder(exchange);
+        financialOperationsService.removeBudget(accountHolder, query(exchange).get("category"));
+        return budgets(exchange);
+    }
+
+    // Новые оповещения о бюджетах; прочитанные оповещения из очереди удаляются
+    private Object alerts(HttpExchange exchange) {
+        AccountHolder accountHolder = accountHolder(exchange);
+        financialOperationsService.getBudgetAlertEngine().watch(accountHolder);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (BudgetAlertEngine.Alert alert : financialOperationsService.getBudgetAlertEngine()
+                .drain(accountHolder.getUsername())) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("category", alert.getCategory());
+            item.put("threshold", alert.getThreshold());
+            item.put("overLimit", alert.isOverLimit());
+            item.put("budget", Money.toDouble(alert.getBudgetCents()));
+            item.put("spent", Money.toDouble(alert.getSpentCents()));
+            item.put("message", alert.getMessage());
+            result.add(item);
+        }
+        return result;
+    }
+
+    private Object statistics(HttpExchange exchange) {
+        AccountHolder accountHolder = accountHolder(exchange);
+        return financialOperationsService.read(accountHolder, () -> {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("income", financialOperationsService.getAllIncome(accountHolder));
+            result.put("outcome", financialOperationsService.getAllOutcome(accountHolder));
+            result.put("balance", financialOperationsService.getCurrentBalance(accountHolder));
+            result.put("incomeByCategory", financialOperationsService.getIncomeByCategory(accountHolder));
+            result.put("outcomeByCategory", financialOperationsService.getOutcomeByCategory(accountHolder));
+            return result;
+        });
+    }
+
+    private Object export(HttpExchange exchange) {
+        return dataPersistenceService.exportJSON(accountHolder(exchange));
+    }
+
+    private AccountHolder accountHolder(HttpExchange exchange) {
+        return authenticationService.getAccountHolder(token(exchange));
+    }
+
+    private static String token(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith(BEARER)) {
+            throw new SessionMissingException("Нужен заголовок Authorization: Bearer <токен>");
+        }
+        return header.substring(BEARER.length()).trim();
+    }
+
+    private static JsonNode readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            JsonNode node = JSON.readTree(in);
+            if (node == null || !node.isObject()) {
+                throw new IllegalArgumentException("Тело запроса должно быть JSON-объектом");
+            }
+            return node;
+        }
+    }
+
+    private static String text(JsonNode request, String field) {
+        JsonNode value = request.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("Поле '" + field + "' обязательно");
+        }
+        return value.asText();
+    }
+
+    private static double number(JsonNode request, String field) {
+        JsonNode value = request.get(field);
+        if (value == null || !value.isNumber()) {
+            throw new IllegalArgumentException("Поле '" + field + "' должно быть числом");
+        }
+        return value.asDouble();
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> result = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return result;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private static ObjectNode error(String message) {
+        return JSON.createObjectNode().put("error", message);
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Route {
+        Object handle(HttpExchange exchange) throws IOException;
+    }
+}
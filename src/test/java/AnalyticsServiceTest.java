@@ -0,0 +1,82 @@
+import com.business.entities.AccountHolder;
+import com.business.services.AnalyticsService;
+import com.business.services.FinancialOperationsService;
+import com.infrastructure.InMemoryUserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnalyticsServiceTest {
+    private static final int USERS = 5000;
+
+    private FinancialOperationsService financialOperationsService;
+    private InMemoryUserRepository repository;
+
+    @BeforeEach
+    public void setUp() {
+        financialOperationsService = new FinancialOperationsService();
+        repository = new InMemoryUserRepository();
+    }
+
+    @Test
+    @DisplayName("Параллельный отчет совпадает с последовательным подсчетом")
+    public void analyzeTest() {
+        // Given
+        long balanceCents = 0;
+        long foodCents = 0;
+        long rentCents = 0;
+        int overBudget = 0;
+        for (int i = 0; i < USERS; i++) {
+            AccountHolder accountHolder = new AccountHolder("analytics" + i, "pass");
+            int food = i % 10 + 1;
+            financialOperationsService.addIncome(accountHolder, "analytics-salary", 100d);
+            financialOperationsService.addOutcome(accountHolder, "analytics-food", food);
+            balanceCents += (100 - food) * 100L;
+            foodCents += food * 100L;
+            if (i % 100 == 0) {
+                financialOperationsService.addOutcome(accountHolder, "analytics-rent", 50d);
+                balanceCents -= 5000;
+                rentCents += 5000;
+            }
+            if (i % 7 == 0) {
+                financialOperationsService.setBudget(accountHolder, "analytics-food", 5d);
+                overBudget += food > 5 ? 1 : 0;
+            }
+            repository.save(accountHolder.getUsername(), accountHolder);
+        }
+
+        // When
+        AnalyticsService.Report report = new AnalyticsService(repository, new ForkJoinPool(4)).analyze(2);
+        AnalyticsService.Report serial = new AnalyticsService(repository, new ForkJoinPool(1)).analyze(2);
+
+        // Then
+        assertEquals(USERS, report.getUsers());
+        assertEquals(balanceCents, report.getTotalBalanceCents());
+        List<String> top = report.getTopCategories().stream()
+                .map(AnalyticsService.CategoryAmount::getCategory).collect(Collectors.toList());
+        assertEquals(List.of("analytics-food", "analytics-rent"), top);
+        assertEquals(foodCents, report.getTopCategories().get(0).getAmountCents());
+        assertEquals(rentCents, report.getTopCategories().get(1).getAmountCents());
+        assertEquals(overBudget, report.getOverBudget().size());
+        assertTrue(report.getOverBudget().stream().allMatch(o -> o.getSpentCents() > o.getBudgetCents()));
+        assertEquals(serial.getTotalBalanceCents(), report.getTotalBalanceCents());
+        assertEquals(serial.getOverBudget().size(), report.getOverBudget().size());
+    }
+
+    @Test
+    @DisplayName("Отчет по пустому хранилищу")
+    public void analyzeEmptyTest() {
+        AnalyticsService.Report report = new AnalyticsService(repository).analyze(5);
+
+        assertEquals(0, report.getUsers());
+        assertEquals(0d, report.getTotalBalance());
+        assertTrue(report.getTopCategories().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new AnalyticsService(repository).analyze(-1));
+    }
+}
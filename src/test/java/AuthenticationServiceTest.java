@@ -1,13 +1,16 @@
 import com.business.exception.PasswordMismatchException;
+import com.business.exception.SessionMissingException;
 import com.business.exception.UserAlreadyExistsException;
 import com.business.exception.UserMissingException;
 import com.business.entities.AccountHolder;
 import com.business.services.AuthenticationService;
+import com.business.services.SessionManager;
 import com.infrastructure.InMemoryUserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -271,4 +274,57 @@ public class AuthenticationServiceTest {
             authenticationService.login("", "");
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Карта пользователей - представление без копирования")
+    public void userMapViewTest() {
+        Map<String, AccountHolder> userMap = authenticationService.getUserMap();
+        authenticationService.registration("viewer", "password");
+
+        assertTrue(userMap.containsKey("viewer"));
+        assertSame(authenticationService.findUser("viewer"), userMap.get("viewer"));
+        assertTrue(authenticationService.userExists("viewer"));
+        assertThrows(UnsupportedOperationException.class, () -> userMap.remove("viewer"));
+    }
+
+    @Test
+    @DisplayName("Несколько пользователей работают одновременно в своих сессиях")
+    public void concurrentSessionsTest() {
+        authenticationService.registration("alice", "password");
+        authenticationService.registration("bobby", "password");
+
+        String alice = authenticationService.openSession("alice", "password");
+        String bobby = authenticationService.openSession("bobby", "password");
+
+        assertNotEquals(alice, bobby);
+        assertEquals("alice", authenticationService.getAccountHolder(alice).getUsername());
+        assertEquals("bobby", authenticationService.getAccountHolder(bobby).getUsername());
+
+        authenticationService.closeSession(alice);
+        assertThrows(SessionMissingException.class, () -> authenticationService.getAccountHolder(alice));
+        assertEquals("bobby", authenticationService.getAccountHolder(bobby).getUsername());
+
+        authenticationService.deleteUser("bobby");
+        assertThrows(SessionMissingException.class, () -> authenticationService.getAccountHolder(bobby));
+    }
+
+    @Test
+    @DisplayName("Неактивные сессии истекают, консольная сессия остается")
+    public void idleSessionExpiresTest() throws InterruptedException {
+        SessionManager sessionManager = new SessionManager(Duration.ofMillis(100), Duration.ofMillis(10));
+        try {
+            authenticationService = new AuthenticationService(new InMemoryUserRepository(), sessionManager);
+            authenticationService.registration("user", "password");
+            String session = authenticationService.openSession("user", "password");
+            assertEquals(2, sessionManager.size());
+
+            Thread.sleep(400);
+
+            assertEquals(1, sessionManager.size());
+            assertTrue(authenticationService.isLoggedIn());
+            assertThrows(SessionMissingException.class, () -> authenticationService.getAccountHolder(session));
+        } finally {
+            sessionManager.shutdown();
+        }
+    }
+}
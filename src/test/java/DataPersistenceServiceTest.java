@@ -1,6 +1,12 @@
 import com.business.entities.FinancialEntry;
 import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.ports.UserStoragePort;
 import com.business.services.DataPersistenceService;
+import com.business.services.FinancialOperationsService;
+import com.infrastructure.InMemoryUserRepository;
+import com.infrastructure.SnapshotCodec;
+import com.infrastructure.SnapshotUserRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -8,11 +14,19 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -37,6 +51,8 @@ public class DataPersistenceServiceTest {
     public void tearDown() throws IOException {
         // Очистка созданных файлов после каждого теста
         Files.deleteIfExists(Path.of("users.data"));
+        Files.deleteIfExists(Path.of("users.data.prev"));
+        Files.deleteIfExists(Path.of("users.journal"));
         Files.deleteIfExists(Path.of("testUser.json"));
         Files.deleteIfExists(Path.of("nonexistent.json"));
         Files.deleteIfExists(Path.of("completeUser.json"));
@@ -44,7 +60,6 @@ public class DataPersistenceServiceTest {
         Files.deleteIfExists(Path.of("emptyUser.json"));
         Files.deleteIfExists(Path.of("timestampUser.json"));
         Files.deleteIfExists(Path.of("corrupted.json"));
-        Files.deleteIfExists(Path.of("backup_users_0.data"));
     }
 
     @Test
@@ -266,21 +281,28 @@ public class DataPersistenceServiceTest {
 
     @Test
     @DisplayName("Резервное копирование данных")
-    public void backupDataTest() {
+    public void backupDataTest() throws IOException {
         // Given
+        DataPersistenceService service = new DataPersistenceService(tempDir.resolve("users.data"));
         Map<String, AccountHolder> users = new HashMap<>();
         users.put("user1", new AccountHolder("user1", "pass1"));
+        users.put("testUser", testAccountHolder);
 
         // When
-        dataPersistenceService.backupData(users);
-
-        // Then - проверяем что файл создан (ищем файл с паттерном backup_users_*.data)
-        File backupDir = new File(".");
-        File[] backupFiles = backupDir.listFiles((dir, name) ->
-                name.startsWith("backup_users_") && name.endsWith(".data"));
-
-        assertNotNull(backupFiles);
-        assertTrue(backupFiles.length > 0);
+        service.backupData(users);
+        service.backupData(users);
+        testAccountHolder.getFinancialAccount().addTransaction(new FinancialEntry(20.0, "taxi", false));
+        service.backupData(users);
+
+        // Then - одинаковые копии не дублируются, последняя восстанавливается целиком
+        List<String> backups = service.listBackups();
+        assertEquals(2, backups.size());
+        Map<String, AccountHolder> restored = service.restoreBackup(backups.get(1));
+        assertEquals(2, restored.size());
+        assertEquals(testAccountHolder.getFinancialAccount().getFinancialEntries(),
+                restored.get("testUser").getFinancialAccount().getFinancialEntries());
+        assertEquals(300.0, restored.get("testUser").getFinancialAccount().getBudget("food"), 0);
+        assertEquals(2, service.restoreBackup(backups.get(0)).get("testUser").getFinancialAccount().getFinancialEntries().size());
     }
 
     @Test
@@ -316,4 +338,461 @@ public class DataPersistenceServiceTest {
         // Cleanup
         nonJsonFile.delete();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Изменения в режиме журнала восстанавливаются после перезапуска без полного сохранения")
+    public void journalReplayAfterRestartTest() {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService firstRun = new DataPersistenceService(dataFile);
+        UserStoragePort storage = firstRun.enableJournal(new InMemoryUserRepository());
+        storage.setAllUsers(firstRun.load());
+
+        AccountHolder accountHolder = new AccountHolder("journalUser", "password");
+        storage.save("journalUser", accountHolder);
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(500.0, "salary", true));
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(70.0, "food", false));
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(30.0, "taxi", false));
+        accountHolder.getFinancialAccount().setBudget("food", 100.0);
+        accountHolder.getFinancialAccount().getFinancialEntries().get(1).setAmount(80.0);
+        accountHolder.getFinancialAccount().removeTransaction(2);
+        firstRun.shutdown(storage::findAll);
+
+        // When
+        Map<String, AccountHolder> loadedUsers = new DataPersistenceService(dataFile).load();
+
+        // Then
+        assertFalse(Files.exists(dataFile));
+        AccountHolder loaded = loadedUsers.get("journalUser");
+        assertNotNull(loaded);
+        assertEquals(2, loaded.getFinancialAccount().getFinancialEntries().size());
+        assertEquals(80.0, loaded.getFinancialAccount().getFinancialEntries().get(1).getAmount(), 0);
+        assertEquals(100.0, loaded.getFinancialAccount().getBudget("food"), 0);
+    }
+
+    @Test
+    @DisplayName("Пакет транзакций пишется в журнал одной записью и восстанавливается целиком")
+    public void journalBatchRecordTest() {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService firstRun = new DataPersistenceService(dataFile);
+        UserStoragePort storage = firstRun.enableJournal(new InMemoryUserRepository());
+        storage.setAllUsers(firstRun.load());
+        AccountHolder accountHolder = new AccountHolder("batchUser", "password");
+        storage.save("batchUser", accountHolder);
+
+        // When
+        new FinancialOperationsService().addTransactions(accountHolder, List.of(
+                new FinancialEntry(500.0, "salary", true),
+                new FinancialEntry(70.0, "food", false),
+                new FinancialEntry(30.0, "taxi", false)));
+        long records = firstRun.getJournalRecordCount();
+        firstRun.shutdown(storage::findAll);
+        AccountHolder loaded = new DataPersistenceService(dataFile).load().get("batchUser");
+
+        // Then
+        assertEquals(2, records);
+        assertEquals(3, loaded.getFinancialAccount().getFinancialEntries().size());
+        assertEquals(400.0, loaded.getFinancialAccount().getBalance(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Транзакция без категории восстанавливается из журнала с категорией null")
+    public void journalNullCategoryTest() {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService firstRun = new DataPersistenceService(dataFile);
+        UserStoragePort storage = firstRun.enableJournal(new InMemoryUserRepository());
+        storage.setAllUsers(firstRun.load());
+        AccountHolder accountHolder = new AccountHolder("nullCategoryUser", "password");
+        storage.save("nullCategoryUser", accountHolder);
+
+        // When
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(10.0, null, true));
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(20.0, "food", false));
+        accountHolder.getFinancialAccount().getFinancialEntries().get(1).setCategory(null);
+        firstRun.shutdown(storage::findAll);
+        AccountHolder loaded = new DataPersistenceService(dataFile).load().get("nullCategoryUser");
+
+        // Then
+        List<FinancialEntry> entries = loaded.getFinancialAccount().getFinancialEntries();
+        assertNull(entries.get(0).getCategory());
+        assertNull(entries.get(1).getCategory());
+        assertEquals(accountHolder.getFinancialAccount().getFinancialEntries(), entries);
+    }
+
+    @Test
+    @DisplayName("Транзакция без категории сохраняет категорию null в снимке и резервной копии")
+    public void snapshotNullCategoryTest() throws IOException {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+        AccountHolder accountHolder = new AccountHolder("nullCategoryUser", "password");
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(10.0, null, true));
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(20.0, "food", false));
+        Map<String, AccountHolder> users = new HashMap<>();
+        users.put("nullCategoryUser", accountHolder);
+
+        // When
+        service.save(users);
+        service.backupData(users);
+        AccountHolder loaded = new DataPersistenceService(dataFile).load().get("nullCategoryUser");
+        SnapshotUserRepository repository = new SnapshotUserRepository();
+        new DataPersistenceService(dataFile).loadInto(repository);
+        AccountHolder mapped = repository.find("nullCategoryUser");
+        AccountHolder restored = service.restoreBackup(service.listBackups().get(0)).get("nullCategoryUser");
+
+        // Then
+        for (AccountHolder copy : List.of(loaded, mapped, restored)) {
+            List<FinancialEntry> entries = copy.getFinancialAccount().getFinancialEntries();
+            assertNull(entries.get(0).getCategory());
+            assertEquals("food", entries.get(1).getCategory());
+            assertEquals(accountHolder.getFinancialAccount().getFinancialEntries(), entries);
+        }
+    }
+
+    @Test
+    @DisplayName("Уплотнение журнала переносит изменения в снимок")
+    public void journalCompactionTest() throws IOException {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+        UserStoragePort storage = service.enableJournal(new InMemoryUserRepository());
+        service.setCompactionThreshold(3);
+
+        // When
+        AccountHolder accountHolder = new AccountHolder("compactUser", "password");
+        storage.save("compactUser", accountHolder);
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(10.0, "a", true));
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(20.0, "b", true));
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(30.0, "c", true));
+        storage.delete("compactUser");
+        service.shutdown(storage::findAll);
+
+        // Then
+        assertTrue(Files.exists(dataFile));
+        assertTrue(Files.size(tempDir.resolve("users.journal")) < Files.size(dataFile));
+        assertTrue(new DataPersistenceService(dataFile).load().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Бинарный снимок сохраняет транзакции без потерь")
+    public void binarySnapshotRoundTripTest() {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+        Map<String, AccountHolder> users = new HashMap<>();
+        users.put("testUser", testAccountHolder);
+
+        // When
+        service.save(users);
+        Map<String, AccountHolder> loadedUsers = service.load();
+
+        // Then
+        AccountHolder loaded = loadedUsers.get("testUser");
+        assertEquals("password123", loaded.getPassword());
+        assertEquals(testAccountHolder.getFinancialAccount().getFinancialEntries(),
+                loaded.getFinancialAccount().getFinancialEntries());
+        assertEquals(300.0, loaded.getFinancialAccount().getBudget("food"), 0);
+    }
+
+    @Test
+    @DisplayName("Файл в формате Java-сериализации загружается и преобразуется в бинарный формат")
+    public void legacySnapshotMigrationTest() throws IOException {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        HashMap<String, AccountHolder> users = new HashMap<>();
+        users.put("testUser", testAccountHolder);
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(dataFile.toFile()))) {
+            oos.writeObject(users);
+        }
+
+        // When
+        Map<String, AccountHolder> loadedUsers = new DataPersistenceService(dataFile).load();
+
+        // Then
+        assertEquals(2, loadedUsers.get("testUser").getFinancialAccount().getFinancialEntries().size());
+        assertFalse(SnapshotCodec.isLegacyFormat(dataFile));
+        assertEquals(2, new DataPersistenceService(dataFile).load()
+                .get("testUser").getFinancialAccount().getFinancialEntries().size());
+    }
+
+    @Test
+    @DisplayName("Ленивая загрузка снимка: транзакции декодируются при первом обращении")
+    public void lazySnapshotLoadTest() {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        Map<String, AccountHolder> users = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            AccountHolder accountHolder = new AccountHolder("lazyUser" + i, "password");
+            accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(100.0 * (i + 1), "salary", true));
+            accountHolder.getFinancialAccount().setBudget("food", 50.0);
+            users.put(accountHolder.getUsername(), accountHolder);
+        }
+        DataPersistenceService firstRun = new DataPersistenceService(dataFile);
+        firstRun.save(users);
+        UserStoragePort journaled = firstRun.enableJournal(new InMemoryUserRepository());
+        journaled.setAllUsers(firstRun.load());
+        journaled.find("lazyUser1").getFinancialAccount().addTransaction(new FinancialEntry(40.0, "food", false));
+        journaled.delete("lazyUser2");
+        firstRun.shutdown(journaled::findAll);
+
+        // When
+        SnapshotUserRepository repository = new SnapshotUserRepository();
+        int count = new DataPersistenceService(dataFile).loadInto(repository);
+
+        // Then
+        assertEquals(2, count);
+        assertFalse(repository.isLoaded("lazyUser0"));
+        assertTrue(repository.isLoaded("lazyUser1"));
+        assertTrue(repository.containsUser("lazyUser0"));
+        assertFalse(repository.containsUser("lazyUser2"));
+        assertNull(repository.find("lazyUser2"));
+
+        AccountHolder lazyUser = repository.find("lazyUser0");
+        assertTrue(repository.isLoaded("lazyUser0"));
+        assertEquals(1, lazyUser.getFinancialAccount().getFinancialEntries().size());
+        assertEquals(100.0, lazyUser.getFinancialAccount().getFinancialEntries().get(0).getAmount(), 0);
+        assertEquals(50.0, lazyUser.getFinancialAccount().getBudget("food"), 0);
+        assertEquals(2, repository.find("lazyUser1").getFinancialAccount().getFinancialEntries().size());
+        assertEquals(2, repository.findAll().size());
+    }
+
+    @Test
+    @DisplayName("Пользователь, прочитанный и измененный во время среза, попадает в снимок в состоянии на срез")
+    public void decodeDuringCutTest() {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        Map<String, AccountHolder> users = new HashMap<>();
+        for (int i = 0; i < 2; i++) {
+            AccountHolder accountHolder = new AccountHolder("cutUser" + i, "password");
+            accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(10.0, "salary", true));
+            accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(20.0, "salary", true));
+            users.put(accountHolder.getUsername(), accountHolder);
+        }
+        new DataPersistenceService(dataFile).save(users);
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+        SnapshotUserRepository repository = new SnapshotUserRepository();
+        service.loadInto(repository);
+        UserStoragePort storage = service.enableJournal(repository);
+        // Источник вызывается уже после среза: пользователь читается из снимка и меняется до записи файла
+        service.startSnapshots(() -> {
+            FinancialAccount account = storage.find("cutUser1").getFinancialAccount();
+            account.addTransaction(new FinancialEntry(5.0, "food", false));
+            account.removeTransaction(0);
+            return storage.view();
+        }, Duration.ofHours(1), Long.MAX_VALUE);
+
+        // When
+        boolean written = service.snapshotNow();
+        service.shutdown(storage::findAll);
+        Map<String, AccountHolder> loaded = new DataPersistenceService(dataFile).load();
+
+        // Then
+        assertTrue(written);
+        assertEquals(List.of(20.0, 5.0), loaded.get("cutUser1").getFinancialAccount().getFinancialEntries().stream()
+                .map(FinancialEntry::getAmount).collect(Collectors.toList()));
+        assertEquals(2, loaded.get("cutUser0").getFinancialAccount().getFinancialEntries().size());
+    }
+
+    @Test
+    @DisplayName("Обход пользователей снимка не загружает их в память")
+    public void snapshotViewStreamingTest() {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        Map<String, AccountHolder> users = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            AccountHolder accountHolder = new AccountHolder("streamUser" + i, "password");
+            accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(10.0 * (i + 1), "salary", true));
+            users.put(accountHolder.getUsername(), accountHolder);
+        }
+        new DataPersistenceService(dataFile).save(users);
+        SnapshotUserRepository repository = new SnapshotUserRepository();
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+        service.loadInto(repository);
+        repository.find("streamUser0").getFinancialAccount().addTransaction(new FinancialEntry(5.0, "food", false));
+
+        // When
+        Map<String, AccountHolder> view = repository.view();
+        double[] total = {0};
+        repository.forEachUser((username, accountHolder) ->
+                total[0] += accountHolder.getFinancialAccount().getBalance());
+        service.save(view);
+
+        // Then
+        assertEquals(3, view.size());
+        assertEquals(20.0, view.get("streamUser1").getFinancialAccount().getBalance(), 0.001);
+        assertEquals(55.0, total[0], 0.001);
+        assertEquals(3, repository.findAll().size());
+        assertFalse(repository.isLoaded("streamUser1"));
+        assertFalse(repository.isLoaded("streamUser2"));
+        Map<String, AccountHolder> saved = new DataPersistenceService(dataFile).load();
+        assertEquals(2, saved.get("streamUser0").getFinancialAccount().getFinancialEntries().size());
+        assertEquals(30.0, saved.get("streamUser2").getFinancialAccount().getBalance(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Фоновые снимки вместе с журналом не теряют и не дублируют изменения")
+    public void backgroundSnapshotTest() throws InterruptedException {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+        UserStoragePort storage = service.enableJournal(new InMemoryUserRepository());
+        storage.setAllUsers(service.load());
+        FinancialOperationsService operations = new FinancialOperationsService();
+        AccountHolder accountHolder = new AccountHolder("snapshotUser", "password");
+        storage.save("snapshotUser", accountHolder);
+        service.startSnapshots(storage::view, Duration.ofMillis(20), 50);
+
+        // When
+        for (int i = 0; i < 500; i++) {
+            operations.addIncome(accountHolder, "salary", 1.0);
+            if (i % 100 == 0) {
+                Thread.sleep(30);
+            }
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (service.getSnapshotCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        operations.addOutcome(accountHolder, "food", 25.0);
+        service.shutdown(storage::view);
+
+        // Then
+        assertTrue(service.getSnapshotCount() > 0);
+        assertTrue(Files.exists(dataFile));
+        assertFalse(service.getLastSnapshotDuration().isNegative());
+        AccountHolder loaded = new DataPersistenceService(dataFile).load().get("snapshotUser");
+        assertEquals(501, loaded.getFinancialAccount().getFinancialEntries().size());
+        assertEquals(475.0, loaded.getFinancialAccount().getBalance(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Поврежденный снимок обнаруживается по контрольной сумме, загружается предыдущий")
+    public void corruptedSnapshotFallbackTest() throws IOException {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+        Map<String, AccountHolder> users = new HashMap<>();
+        users.put("testUser", testAccountHolder);
+        service.save(users);
+        AccountHolder newUser = new AccountHolder("newUser", "password");
+        for (int i = 0; i < 10_000; i++) {
+            newUser.getFinancialAccount().addTransaction(new FinancialEntry(1.0, "food", false));
+        }
+        users.put("newUser", newUser);
+        service.save(users);
+
+        // When
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, 100_000);
+            value.put(0, (byte) ~value.get(0)).rewind();
+            channel.write(value, 100_000);
+        }
+        Map<String, AccountHolder> loadedUsers = new DataPersistenceService(dataFile).load();
+
+        // Then
+        assertTrue(Files.exists(tempDir.resolve("users.data.prev")));
+        assertEquals(1, loadedUsers.size());
+        assertEquals(2, loadedUsers.get("testUser").getFinancialAccount().getFinancialEntries().size());
+    }
+
+    @Test
+    @DisplayName("Поврежденный блок пользователя обнаруживается при первом обращении, остальные читаются из снимка")
+    public void corruptedMappedSnapshotFallbackTest() throws IOException {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+        Map<String, AccountHolder> users = new HashMap<>();
+        users.put("testUser", testAccountHolder);
+        service.save(users);
+        AccountHolder newUser = new AccountHolder("newUser", "password");
+        for (int i = 0; i < 10_000; i++) {
+            newUser.getFinancialAccount().addTransaction(new FinancialEntry(1.0, "food", false));
+        }
+        users.put("newUser", newUser);
+        service.save(users);
+
+        // When
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, 100_000);
+            value.put(0, (byte) ~value.get(0)).rewind();
+            channel.write(value, 100_000);
+        }
+        SnapshotUserRepository repository = new SnapshotUserRepository();
+        int count = new DataPersistenceService(dataFile).loadInto(repository);
+
+        // Then
+        assertEquals(2, count);
+        assertEquals(2, repository.find("testUser").getFinancialAccount().getFinancialEntries().size());
+        assertTrue(repository.containsUser("newUser"));
+        assertNull(repository.find("newUser"));
+    }
+
+    @Test
+    @DisplayName("Поврежденный пользователь восстанавливается из предыдущего снимка и журнала между снимками")
+    public void corruptedUserRecoveredFromJournalTest() throws IOException {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService service = new DataPersistenceService(dataFile);
+        UserStoragePort storage = service.enableJournal(new InMemoryUserRepository());
+        storage.setAllUsers(service.load());
+        storage.save("testUser", testAccountHolder);
+        AccountHolder newUser = new AccountHolder("newUser", "password");
+        for (int i = 0; i < 10_000; i++) {
+            newUser.getFinancialAccount().addTransaction(new FinancialEntry(1.0, "food", false));
+        }
+        storage.save("newUser", newUser);
+        service.save(storage.view());
+        storage.find("newUser").getFinancialAccount().addTransaction(new FinancialEntry(7.0, "salary", true));
+        service.save(storage.view());
+
+        // When
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, 100_000);
+            value.put(0, (byte) ~value.get(0)).rewind();
+            channel.write(value, 100_000);
+        }
+        SnapshotUserRepository repository = new SnapshotUserRepository();
+        int count = new DataPersistenceService(dataFile).loadInto(repository);
+
+        // Then
+        assertEquals(2, count);
+        List<FinancialEntry> entries = repository.find("newUser").getFinancialAccount().getFinancialEntries();
+        assertEquals(10_001, entries.size());
+        assertEquals(7.0, entries.get(10_000).getAmount(), 0);
+        assertEquals(2, repository.find("testUser").getFinancialAccount().getFinancialEntries().size());
+    }
+
+    @Test
+    @DisplayName("Компактный JSON и выгрузка всех пользователей в JSON Lines")
+    public void compactJsonAndJsonLinesTest() throws IOException {
+        // Given
+        Path jsonFile = tempDir.resolve("testUser.json");
+        Path linesFile = tempDir.resolve("users.jsonl");
+        UserStoragePort storage = new InMemoryUserRepository();
+        storage.save("testUser", testAccountHolder);
+        storage.save("emptyUser", new AccountHolder("emptyUser", "password"));
+
+        // When
+        dataPersistenceService.saveJSON(testAccountHolder, jsonFile.toString(), true);
+        AccountHolder loaded = dataPersistenceService.loadJSON(jsonFile.toFile());
+        int exported = dataPersistenceService.exportJSONLines(storage, linesFile);
+        Map<String, AccountHolder> imported = new HashMap<>();
+        int read = dataPersistenceService.importJSONLines(linesFile, a -> imported.put(a.getUsername(), a));
+
+        // Then
+        assertEquals(1, Files.readAllLines(jsonFile).size());
+        assertEquals(testAccountHolder.getFinancialAccount().getFinancialEntries(),
+                loaded.getFinancialAccount().getFinancialEntries());
+        assertEquals(300.0, loaded.getFinancialAccount().getBudget("food"), 0);
+        assertEquals(2, exported);
+        assertEquals(2, read);
+        assertEquals(2, Files.readAllLines(linesFile).size());
+        assertEquals(2, imported.get("testUser").getFinancialAccount().getFinancialEntries().size());
+        assertTrue(imported.get("emptyUser").getFinancialAccount().getFinancialEntries().isEmpty());
+    }
+}
@@ -0,0 +1,164 @@
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialEntry;
+import com.infrastructure.DiskUserRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskUserRepositoryTest {
+
+    // Хватает на двух пользователей с одной транзакцией
+    private static final long MEMORY_LIMIT = 1500;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Вытеснение давно неиспользуемых пользователей с записью изменений на диск")
+    public void evictionWritesDirtyUsersTest() throws IOException {
+        // Given
+        DiskUserRepository repository = new DiskUserRepository(tempDir, MEMORY_LIMIT);
+        for (String username : new String[]{"userOne", "userTwo"}) {
+            repository.save(username, new AccountHolder(username, "password"));
+        }
+        repository.find("userOne").getFinancialAccount().addTransaction(new FinancialEntry(100.0, "salary", true));
+        repository.find("userTwo").getFinancialAccount().addTransaction(new FinancialEntry(50.0, "food", false));
+
+        // When
+        repository.save("userThree", new AccountHolder("userThree", "password"));
+
+        // Then
+        assertFalse(repository.isCached("userOne"));
+        assertTrue(repository.isCached("userThree"));
+        assertEquals(3, repository.size());
+
+        DiskUserRepository reopened = new DiskUserRepository(tempDir, MEMORY_LIMIT);
+        assertEquals(3, reopened.size());
+        assertEquals(0, reopened.getCachedCount());
+        AccountHolder userOne = reopened.find("userOne");
+        assertEquals(1, userOne.getFinancialAccount().getFinancialEntries().size());
+        assertEquals(100.0, userOne.getFinancialAccount().getFinancialEntries().get(0).getAmount(), 0);
+    }
+
+    @Test
+    @DisplayName("Изменения вытесненного пользователя по внешней ссылке не теряются")
+    public void changesAfterEvictionAreKeptTest() throws IOException {
+        // Given
+        DiskUserRepository repository = new DiskUserRepository(tempDir, MEMORY_LIMIT);
+        AccountHolder current = new AccountHolder("currentUser", "password");
+        repository.save("currentUser", current);
+        for (int i = 0; i < 3; i++) {
+            repository.save("otherUser" + i, new AccountHolder("otherUser" + i, "password"));
+        }
+        assertFalse(repository.isCached("currentUser"));
+
+        // When
+        current.getFinancialAccount().addTransaction(new FinancialEntry(25.0, "taxi", false));
+        repository.close();
+
+        // Then
+        assertSame(current, repository.find("currentUser"));
+        AccountHolder reloaded = new DiskUserRepository(tempDir, MEMORY_LIMIT).find("currentUser");
+        assertEquals(1, reloaded.getFinancialAccount().getFinancialEntries().size());
+    }
+
+    @Test
+    @DisplayName("Удаление пользователя удаляет его файл")
+    public void deleteUserTest() throws IOException {
+        // Given
+        DiskUserRepository repository = new DiskUserRepository(tempDir, MEMORY_LIMIT);
+        repository.save("deletedUser", new AccountHolder("deletedUser", "password"));
+
+        // When
+        repository.delete("deletedUser");
+
+        // Then
+        assertFalse(repository.containsUser("deletedUser"));
+        assertNull(repository.find("deletedUser"));
+        assertFalse(new DiskUserRepository(tempDir, MEMORY_LIMIT).containsUser("deletedUser"));
+    }
+
+    @Test
+    @DisplayName("Обход и представление читают пользователей с диска, не занимая кэш")
+    public void forEachUserDoesNotFillCacheTest() throws IOException {
+        // Given
+        DiskUserRepository repository = new DiskUserRepository(tempDir, MEMORY_LIMIT);
+        for (int i = 0; i < 5; i++) {
+            AccountHolder accountHolder = new AccountHolder("streamUser" + i, "password");
+            accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(10.0 * (i + 1), "salary", true));
+            repository.save(accountHolder.getUsername(), accountHolder);
+        }
+        DiskUserRepository reopened = new DiskUserRepository(tempDir, MEMORY_LIMIT);
+
+        // When
+        List<String> visited = new ArrayList<>();
+        reopened.forEachUser((username, accountHolder) -> visited.add(username));
+        Map<String, AccountHolder> view = reopened.view();
+
+        // Then
+        assertEquals(5, visited.size());
+        assertEquals(5, view.size());
+        assertEquals(30.0, view.get("streamUser2").getFinancialAccount().getTotalIncome(), 0);
+        assertNull(view.get("missingUser"));
+        assertEquals(5, view.values().stream().filter(user -> user.getFinancialAccount() != null).count());
+        assertEquals(0, reopened.getCachedCount());
+        assertThrows(UnsupportedOperationException.class,
+                () -> view.put("streamUser0", new AccountHolder("streamUser0", "password")));
+    }
+
+    @Test
+    @DisplayName("Пользователь, занятый другим потоком, не записывается и не вытесняется")
+    public void evictionSkipsLockedUserTest() throws Exception {
+        // Given
+        Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+        DiskUserRepository repository = new DiskUserRepository(tempDir, MEMORY_LIMIT,
+                username -> locks.computeIfAbsent(username, name -> new ReentrantLock()));
+        for (String username : new String[]{"busyUser", "idleUser"}) {
+            repository.save(username, new AccountHolder(username, "password"));
+        }
+        repository.find("busyUser").getFinancialAccount().addTransaction(new FinancialEntry(100.0, "salary", true));
+        repository.find("idleUser").getFinancialAccount().addTransaction(new FinancialEntry(50.0, "food", false));
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread owner = new Thread(() -> {
+            locks.computeIfAbsent("busyUser", name -> new ReentrantLock()).lock();
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                locks.get("busyUser").unlock();
+            }
+        });
+        owner.start();
+        locked.await();
+
+        // When
+        repository.save("newUser", new AccountHolder("newUser", "password"));
+
+        // Then
+        assertTrue(repository.isCached("busyUser"));
+        assertFalse(repository.isCached("idleUser"));
+        assertEquals(0, new DiskUserRepository(tempDir, MEMORY_LIMIT).find("busyUser")
+                .getFinancialAccount().getFinancialEntries().size());
+
+        release.countDown();
+        owner.join();
+        repository.close();
+        assertEquals(1, new DiskUserRepository(tempDir, MEMORY_LIMIT).find("busyUser")
+                .getFinancialAccount().getFinancialEntries().size());
+    }
+}
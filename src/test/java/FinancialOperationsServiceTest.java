@@ -1,13 +1,29 @@
+import com.business.entities.CategoryDictionary;
+import com.business.entities.CategoryTotals;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialAccountListener;
 import com.business.entities.FinancialEntry;
+import com.business.entities.Money;
 import com.business.entities.AccountHolder;
 import com.business.exception.CategoryMissingException;
+import com.business.services.BudgetAlertEngine;
 import com.business.services.FinancialOperationsService;
+import com.infrastructure.CsvStatementParser;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -15,6 +31,9 @@ public class FinancialOperationsServiceTest {
     private FinancialOperationsService financialOperationsService;
     private AccountHolder accountHolder;
 
+    @TempDir
+    Path tempDir;
+
     @BeforeEach
     public void setUp() {
         financialOperationsService = new FinancialOperationsService();
@@ -190,6 +209,29 @@ public class FinancialOperationsServiceTest {
         assertEquals(200.0, financialEntries.get(0).getAmount(), 0.001);
     }
 
+    @Test
+    @DisplayName("Выборка за период учитывает опоздавшие и измененные по времени транзакции")
+    public void getTransactionsBetweenWithLateAndEditedEntriesTest() {
+        LocalDateTime baseTime = LocalDateTime.of(2024, 1, 1, 12, 0);
+        for (int month = 0; month < 12; month++) {
+            accountHolder.getFinancialAccount().addTransaction(
+                    new FinancialEntry(10.0 * (month + 1), "food", false, baseTime.plusMonths(month)));
+        }
+        // Транзакция за март пришла последней
+        accountHolder.getFinancialAccount().addTransaction(
+                new FinancialEntry(5.0, "food", false, baseTime.plusMonths(2).plusDays(3)));
+        // Транзакцию за декабрь перенесли на февраль
+        accountHolder.getFinancialAccount().getFinancialEntries().get(11).setTimestamp(baseTime.plusMonths(1).plusDays(1));
+
+        List<FinancialEntry> quarter = financialOperationsService.getTransactionByCategories(
+                accountHolder, baseTime, baseTime.plusMonths(3).minusNanos(1), new HashSet<>(List.of("food")));
+
+        assertEquals(List.of(10.0, 20.0, 120.0, 30.0, 5.0),
+                quarter.stream().map(FinancialEntry::getAmount).collect(Collectors.toList()));
+        assertTrue(accountHolder.getFinancialAccount().getTransactionsBetween(
+                baseTime.plusMonths(11), baseTime.plusYears(1)).isEmpty());
+    }
+
     @Test
     @DisplayName("Получение потраченной суммы для несуществующей категории")
     public void getSpentForUnknownCategoryTest() {
@@ -265,6 +307,152 @@ public class FinancialOperationsServiceTest {
         assertEquals(400.0, financialOperationsService.getCurrentBalance(accountHolder), 0.001);
     }
 
+    @Test
+    @DisplayName("Баланс пересчитывается при изменении и удалении транзакций")
+    public void currentBalanceAfterEditAndRemoveTest() {
+        financialOperationsService.addIncome(accountHolder, "salary", 1000.0);
+        financialOperationsService.addOutcome(accountHolder, "rent", 400.0);
+        financialOperationsService.addOutcome(accountHolder, "food", 200.0);
+
+        List<FinancialEntry> entries = accountHolder.getFinancialAccount().getFinancialEntries();
+        entries.get(1).setAmount(300.0);
+        entries.get(2).setIsIncome(true);
+        accountHolder.getFinancialAccount().removeTransaction(0);
+
+        assertEquals(200.0, financialOperationsService.getAllIncome(accountHolder), 0.001);
+        assertEquals(300.0, financialOperationsService.getAllOutcome(accountHolder), 0.001);
+        assertEquals(-100.0, financialOperationsService.getCurrentBalance(accountHolder), 0.001);
+        assertTrue(accountHolder.getFinancialAccount().verifyTotals());
+    }
+
+    @Test
+    @DisplayName("Итоги по категориям обновляются при изменении транзакций")
+    public void categoryTotalsAfterEditTest() {
+        financialOperationsService.addOutcome(accountHolder, "food", 100.0);
+        financialOperationsService.addOutcome(accountHolder, "food", 50.0);
+        financialOperationsService.addIncome(accountHolder, "salary", 1000.0);
+        financialOperationsService.setBudget(accountHolder, "food", 120.0);
+        assertTrue(financialOperationsService.budgetOverLimit(accountHolder, "food"));
+
+        accountHolder.getFinancialAccount().getFinancialEntries().get(1).setCategory("taxi");
+
+        assertEquals(100.0, financialOperationsService.getSpent(accountHolder, "food"), 0.001);
+        assertEquals(20.0, financialOperationsService.getBudgetCategory(accountHolder, "food"), 0.001);
+        assertEquals(Map.of("food", 100.0, "taxi", 50.0), financialOperationsService.getOutcomeByCategory(accountHolder));
+        assertEquals(List.of("food", "salary", "taxi"), financialOperationsService.getAllCategories(accountHolder));
+
+        accountHolder.getFinancialAccount().removeTransaction(1);
+        assertEquals(List.of("food", "salary"), financialOperationsService.getAllCategories(accountHolder));
+        assertEquals(1, accountHolder.getFinancialAccount().getCategoryTotals("food").getOutcomeCount());
+        assertTrue(accountHolder.getFinancialAccount().verifyTotals());
+    }
+
+    @Test
+    @DisplayName("Столбцовое хранение транзакций дает те же итоги и выборки")
+    public void columnarLedgerTest() {
+        accountHolder.setFinancialAccount(FinancialAccount.columnar());
+        LocalDateTime baseTime = LocalDateTime.of(2024, 1, 1, 12, 0);
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(1000.0, "salary", true, baseTime));
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(400.0, "rent", false, baseTime.plusDays(2)));
+        accountHolder.getFinancialAccount().addTransaction(new FinancialEntry(99.99, "food", false, baseTime.plusDays(1)));
+
+        accountHolder.getFinancialAccount().getFinancialEntries().get(1).setAmount(350.0);
+        assertEquals(350.0, accountHolder.getFinancialAccount().getFinancialEntries().get(1).getAmount(), 0.001);
+        assertEquals(550.01, financialOperationsService.getCurrentBalance(accountHolder), 0.001);
+        assertEquals(Map.of("food", 99.99, "rent", 350.0), financialOperationsService.getOutcomeByCategory(accountHolder));
+
+        List<FinancialEntry> period = financialOperationsService.getTransactionByCategories(
+                accountHolder, baseTime, baseTime.plusDays(2), new HashSet<>(List.of("food", "rent")));
+        assertEquals(List.of(99.99, 350.0), period.stream().map(FinancialEntry::getAmount).collect(Collectors.toList()));
+        assertEquals(1, financialOperationsService.getTransactionByCategories(
+                accountHolder, new HashSet<>(List.of("salary"))).size());
+
+        accountHolder.getFinancialAccount().removeTransaction(0);
+        assertEquals(2, accountHolder.getFinancialAccount().getFinancialEntries().size());
+        assertEquals("rent", accountHolder.getFinancialAccount().getFinancialEntries().get(0).getCategory());
+        assertTrue(accountHolder.getFinancialAccount().verifyTotals());
+    }
+
+    @Test
+    @DisplayName("Изменение транзакции после удаления строк перед ней и замена всех полей одним изменением")
+    public void updateAfterRemoveTest() {
+        LocalDateTime baseTime = LocalDateTime.of(2024, 1, 1, 12, 0);
+        for (FinancialAccount account : List.of(new FinancialAccount(), FinancialAccount.columnar())) {
+            for (int i = 0; i < 5; i++) {
+                account.addTransaction(new FinancialEntry(10.0 * (i + 1), "food", false, baseTime.plusDays(i)));
+            }
+            FinancialEntry last = account.getFinancialEntries().get(4);
+            account.removeTransaction(0);
+            account.removeTransaction(1);
+            List<Integer> changed = new ArrayList<>();
+            account.addListener(new FinancialAccountListener() {
+                @Override
+                public void onTransactionChanged(FinancialAccount changedAccount, int index, FinancialEntry entry) {
+                    changed.add(index);
+                }
+            });
+
+            last.setAmount(70.0);
+            last.assign(new FinancialEntry(5.0, "salary", true, baseTime.minusDays(1)));
+
+            assertEquals(List.of(2, 2), changed);
+            assertEquals(2, account.indexOfTransaction(last));
+            assertEquals(-1, account.indexOfTransaction(new FinancialEntry(5.0, "salary", true, baseTime.minusDays(1))));
+            assertEquals(5.0, account.getFinancialEntries().get(2).getAmount(), 0);
+            assertEquals("salary", account.getFinancialEntries().get(2).getCategory());
+            assertEquals(5.0 - 20.0 - 40.0, account.getBalance(), 0.001);
+            assertEquals(List.of(5.0, 20.0, 40.0), account.getTransactionsBetween(null, null).stream()
+                    .map(FinancialEntry::getAmount).collect(Collectors.toList()));
+            assertTrue(account.verifyTotals());
+        }
+    }
+
+    @Test
+    @DisplayName("Итоги по номерам категорий при добавлении и удалении множества категорий")
+    public void sparseCategoryIndexTest() {
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        for (int i = 0; i < 300; i++) {
+            account.addTransaction(new FinancialEntry(1.0 + i, "sparse-" + i, false));
+        }
+        // Удаляем каждую вторую категорию: оставшиеся должны находиться после сдвигов в таблице
+        for (int i = 298; i >= 0; i -= 2) {
+            account.removeTransaction(i);
+        }
+
+        for (int i = 0; i < 300; i++) {
+            CategoryTotals totals = account.getCategoryTotals("sparse-" + i);
+            if (i % 2 == 0) {
+                assertNull(totals);
+            } else {
+                assertEquals(Money.ofDouble(1.0 + i), totals.getOutcomeCents());
+            }
+        }
+        assertEquals(150, account.getCategoryTotals().size());
+        assertNull(account.getCategoryTotals(CategoryDictionary.NO_CATEGORY));
+        assertTrue(account.verifyTotals());
+    }
+
+    @Test
+    @DisplayName("Одинаковые категории разных пользователей хранятся одной строкой")
+    public void categoryDictionaryTest() {
+        AccountHolder other = new AccountHolder("other", "other");
+        financialOperationsService.addOutcome(accountHolder, new String("groceries"), 10.0);
+        financialOperationsService.addOutcome(other, new String("groceries"), 20.0);
+        financialOperationsService.setBudget(other, new String("groceries"), 100.0);
+
+        FinancialEntry first = accountHolder.getFinancialAccount().getFinancialEntries().get(0);
+        FinancialEntry second = other.getFinancialAccount().getFinancialEntries().get(0);
+        assertSame(first.getCategory(), second.getCategory());
+        assertSame(first.getCategory(), other.getFinancialAccount().getBudgetsCategories().keySet().iterator().next());
+        assertEquals(first.getCategoryId(), second.getCategoryId());
+
+        first.setCategory("fuel");
+        assertEquals(List.of("fuel"), financialOperationsService.getAllCategories(accountHolder));
+        assertEquals(20.0, financialOperationsService.getSpent(other, "groceries"), 0.001);
+        assertEquals(1, financialOperationsService.getTransactionByCategories(
+                accountHolder, new HashSet<>(List.of("fuel", "unknown"))).size());
+    }
+
     @Test
     @DisplayName("Добавление транзакции с пустой категорией должно бросать исключение")
     public void addTransactionWithEmptyCategoryTest() {
@@ -288,4 +476,299 @@ public class FinancialOperationsServiceTest {
             financialOperationsService.setBudget(accountHolder, "", 100.0);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Импорт CSV выписки: фрагменты по границам строк, отклоненные строки с причинами")
+    public void importStatementTest() throws IOException {
+        // Given
+        StringBuilder csv = new StringBuilder("Дата;Категория;Сумма\n");
+        for (int i = 0; i < 1000; i++) {
+            csv.append("2024-05-01 10:00;salary;100,5\n");
+            csv.append("02.05.2024;\"food; cafe\";-20;расход\n");
+        }
+        csv.append("2024-13-01;food;-1\n");
+        csv.append("2024-05-03;food;abc\n");
+        Path file = tempDir.resolve("statement.csv");
+        Files.writeString(file, csv);
+
+        // When
+        CsvStatementParser.Result chunked = CsvStatementParser.parse(file, 100);
+        CsvStatementParser.Result result = financialOperationsService.importStatement(accountHolder, file);
+
+        // Then
+        assertEquals(2002, result.getRows());
+        assertEquals(2, result.getRejectedCount());
+        assertEquals(2002, result.getRejected().get(0).getLine());
+        assertEquals(2003, result.getRejected().get(1).getLine());
+        assertEquals(result.getEntries(), chunked.getEntries());
+        assertEquals(2003, chunked.getRejected().get(1).getLine());
+        List<FinancialEntry> entries = accountHolder.getFinancialAccount().getFinancialEntries();
+        assertEquals(2000, entries.size());
+        assertEquals("food; cafe", entries.get(1).getCategory());
+        assertFalse(entries.get(1).getIsIncome());
+        assertEquals(100500.0 - 20000.0, financialOperationsService.getCurrentBalance(accountHolder), 1e-6);
+    }
+
+    @Test
+    @DisplayName("Пакетное добавление: итоги обновляются, ошибочный пакет не меняет аккаунт")
+    public void addTransactionsBatchTest() {
+        // Given
+        financialOperationsService.addIncome(accountHolder, "salary", 100d);
+        List<FinancialEntry> batch = List.of(
+                new FinancialEntry(10d, "food", false, LocalDateTime.of(2024, 5, 2, 10, 0)),
+                new FinancialEntry(50d, "bonus", true, LocalDateTime.of(2024, 5, 1, 10, 0)));
+        List<FinancialEntry> invalid = List.of(
+                new FinancialEntry(5d, "food", false),
+                new FinancialEntry(-1d, "food", false));
+
+        // When
+        financialOperationsService.addTransactions(accountHolder, batch);
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> financialOperationsService.addTransactions(accountHolder, invalid));
+
+        // Then
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        assertTrue(error.getMessage().startsWith("Транзакция №2"));
+        assertEquals(3, account.getFinancialEntries().size());
+        assertEquals(140d, financialOperationsService.getCurrentBalance(accountHolder), 0.001);
+        assertEquals(10d, account.getCategoryTotals("food").getOutcomeSum(), 0.001);
+        assertEquals(batch.get(1), account.getTransactionsBetween(null, null).get(0));
+        assertTrue(account.verifyTotals());
+    }
+
+    @Test
+    @DisplayName("Суммы в копейках: точные итоги, разбор и форматирование")
+    public void moneyCentsTest() {
+        // Given
+        financialOperationsService.setBudget(accountHolder, "test", 0.3);
+        financialOperationsService.addOutcome(accountHolder, "test", 0.1);
+        financialOperationsService.addOutcome(accountHolder, "test", 0.2);
+
+        // Then
+        assertTrue(financialOperationsService.budgetIsZero(accountHolder, "test"));
+        assertEquals(30, accountHolder.getFinancialAccount().getTotalOutcomeCents());
+        assertEquals(123456, Money.parse("1234,56"));
+        assertEquals(-5, Money.parse("-0.045"));
+        assertEquals(1_000_000_000L, Money.parse("1.0E7"));
+        assertEquals("-0.05", Money.format(-5));
+        assertEquals("1234.50", Money.format(123450));
+        assertThrows(NumberFormatException.class, () -> Money.parse("12a"));
+    }
+
+    @Test
+    @DisplayName("Оповещения о бюджете: только при переходе на новый порог категории")
+    public void budgetAlertEngineTest() {
+        // Given
+        BudgetAlertEngine engine = financialOperationsService.getBudgetAlertEngine();
+        engine.setThresholds("food", 50, 80, 100);
+        financialOperationsService.setBudget(accountHolder, "food", 100d);
+        financialOperationsService.setBudget(accountHolder, "taxi", 10d);
+        String username = accountHolder.getUsername();
+
+        // When
+        financialOperationsService.addOutcome(accountHolder, "food", 40d);
+        financialOperationsService.addOutcome(accountHolder, "food", 15d);
+        financialOperationsService.addOutcome(accountHolder, "food", 5d);
+        financialOperationsService.addOutcome(accountHolder, "food", 25d);
+        financialOperationsService.addOutcome(accountHolder, "food", 15d);
+        financialOperationsService.addOutcome(accountHolder, "food", 1d);
+        financialOperationsService.addOutcome(accountHolder, "taxi", 8d);
+        List<BudgetAlertEngine.Alert> alerts = engine.drain(username);
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        account.removeTransaction(account.getFinancialEntries().size() - 2);
+
+        // Then
+        assertEquals(List.of(50, 80, 100, 100, 80), alerts.stream().map(BudgetAlertEngine.Alert::getThreshold).collect(Collectors.toList()));
+        assertTrue(alerts.get(3).isOverLimit());
+        assertEquals("taxi", alerts.get(4).getCategory());
+        assertEquals("Бюджет исчерпан!", engine.getActiveAlert(accountHolder, "food").getMessage());
+        assertTrue(engine.drain(username).isEmpty());
+        assertNull(engine.getActiveAlert(accountHolder, "other"));
+    }
+
+    @Test
+    @DisplayName("Смена категории транзакции пересматривает оповещение прежней категории")
+    public void budgetAlertCategoryChangeTest() {
+        // Given
+        BudgetAlertEngine engine = financialOperationsService.getBudgetAlertEngine();
+        financialOperationsService.setBudget(accountHolder, "food", 100d);
+        financialOperationsService.setBudget(accountHolder, "taxi", 100d);
+        financialOperationsService.addOutcome(accountHolder, "food", 90d);
+        engine.drain(accountHolder.getUsername());
+
+        // When
+        accountHolder.getFinancialAccount().getFinancialEntries().get(0).setCategory("taxi");
+
+        // Then
+        assertNull(engine.getActiveAlert(accountHolder, "food"));
+        assertEquals(80, engine.getActiveAlert(accountHolder, "taxi").getThreshold());
+        List<BudgetAlertEngine.Alert> alerts = engine.drain(accountHolder.getUsername());
+        assertEquals(1, alerts.size());
+        assertEquals("taxi", alerts.get(0).getCategory());
+    }
+
+    @Test
+    @DisplayName("Итоги за период по сводкам совпадают с проходом по транзакциям")
+    public void totalsByCategoryFromRollupsTest() {
+        for (FinancialAccount account : List.of(new FinancialAccount(), FinancialAccount.columnar())) {
+            // Given
+            accountHolder.setFinancialAccount(account);
+            LocalDateTime start = LocalDateTime.of(2022, 1, 1, 0, 0);
+            for (int i = 0; i < 900; i++) {
+                account.addTransaction(new FinancialEntry(10d + i % 7, i % 3 == 0 ? "food" : "salary",
+                        i % 3 != 0, start.plusHours(i * 29L + i % 5)));
+            }
+            account.removeTransaction(10);
+            account.getFinancialEntries().get(20).setTimestamp(LocalDateTime.of(2022, 3, 15, 12, 0));
+            List<LocalDateTime[]> periods = List.of(
+                    new LocalDateTime[]{LocalDateTime.of(2022, 1, 5, 13, 30), LocalDateTime.of(2022, 11, 20, 8, 15)},
+                    new LocalDateTime[]{LocalDateTime.of(2022, 2, 1, 0, 0), LocalDateTime.of(2022, 3, 31, 23, 59, 59, 999_999_999)},
+                    new LocalDateTime[]{LocalDateTime.of(2022, 3, 15, 6, 0), LocalDateTime.of(2022, 3, 15, 18, 0)},
+                    new LocalDateTime[]{LocalDateTime.MIN, LocalDateTime.of(2022, 6, 10, 0, 0)},
+                    new LocalDateTime[]{LocalDateTime.of(2022, 6, 10, 0, 0), LocalDateTime.MAX});
+
+            for (LocalDateTime[] period : periods) {
+                // When
+                Map<String, CategoryTotals> totals = financialOperationsService.getTotalsByCategory(
+                        accountHolder, period[0], period[1], Set.of());
+
+                // Then
+                for (String category : List.of("food", "salary")) {
+                    List<FinancialEntry> entries = financialOperationsService.getTransactionByCategories(
+                            accountHolder, period[0], period[1], Set.of(category));
+                    long cents = entries.stream().mapToLong(FinancialEntry::getAmountCents).sum();
+                    CategoryTotals actual = totals.getOrDefault(category, new CategoryTotals());
+                    assertEquals(entries.size(), actual.getIncomeCount() + actual.getOutcomeCount());
+                    assertEquals(cents, actual.getIncomeCents() + actual.getOutcomeCents());
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Образ аккаунта хранит состояние на момент среза, пока аккаунт меняется")
+    public void frozenImageTest() {
+        for (FinancialAccount account : List.of(new FinancialAccount(), FinancialAccount.columnar())) {
+            // Given
+            LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+            for (int i = 0; i < 3; i++) {
+                account.addTransaction(new FinancialEntry(10d + i, "food", false, start.plusDays(i)));
+            }
+            account.setBudget("food", 100d);
+            long epoch = FinancialAccount.beginFreeze();
+            FinancialAccount image;
+            try {
+                // When
+                account.addTransaction(new FinancialEntry(40d, "salary", true, start.plusDays(5)));
+                account.getFinancialEntries().get(0).setAmount(999d);
+                account.removeTransaction(1);
+                account.setBudget("food", 50d);
+                image = account.takeImage(epoch);
+                account.addTransaction(new FinancialEntry(70d, "salary", true, start.plusDays(6)));
+            } finally {
+                FinancialAccount.endFreeze();
+            }
+
+            // Then
+            assertEquals(List.of(10d, 11d, 12d), image.getFinancialEntries().stream()
+                    .map(FinancialEntry::getAmount).collect(Collectors.toList()));
+            assertEquals(100d, image.getBudgetsCategories().get("food"), 0);
+            assertEquals(account.getInstanceId(), image.getInstanceId());
+            assertEquals(List.of(999d, 12d, 40d, 70d), account.getFinancialEntries().stream()
+                    .map(FinancialEntry::getAmount).collect(Collectors.toList()));
+            assertEquals(50d, account.getBudget("food"), 0);
+            assertTrue(account.verifyTotals());
+
+            // When: образ снят до изменений, столбцы общие с аккаунтом
+            long next = FinancialAccount.beginFreeze();
+            FinancialAccount shared;
+            try {
+                shared = account.takeImage(next);
+                account.getFinancialEntries().get(0).setAmount(1d);
+                account.addTransaction(new FinancialEntry(80d, "food", false, start.plusDays(7)));
+            } finally {
+                FinancialAccount.endFreeze();
+            }
+
+            // Then
+            assertEquals(List.of(999d, 12d, 40d, 70d), shared.getFinancialEntries().stream()
+                    .map(FinancialEntry::getAmount).collect(Collectors.toList()));
+            shared.releaseImage();
+            assertEquals(1d, account.getFinancialEntries().get(0).getAmount(), 0);
+            assertEquals(5, account.getFinancialEntries().size());
+        }
+    }
+
+    @Test
+    @DisplayName("Столбцы держат в кэше только последние объекты строк и сериализуются без запаса емкости")
+    public void columnarViewsAndSerializationTest() throws IOException, ClassNotFoundException {
+        // Given
+        FinancialAccount account = FinancialAccount.columnar();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        List<FinancialEntry> batch = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            batch.add(new FinancialEntry(1d, "food", false, start.plusHours(i)));
+        }
+        account.addTransactions(batch);
+        FinancialEntry early = account.getFinancialEntries().get(0);
+
+        // When
+        double sum = account.getFinancialEntries().stream().mapToDouble(FinancialEntry::getAmount).sum();
+        FinancialEntry recent = account.getFinancialEntries().get(500);
+        recent.setAmount(50d);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(account);
+        }
+        FinancialAccount copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (FinancialAccount) in.readObject();
+        }
+        copy.addTransaction(new FinancialEntry(7d, "salary", true, start.plusHours(1000)));
+
+        // Then
+        assertEquals(1000d, sum, 0);
+        assertSame(recent, account.getFinancialEntries().get(500));
+        assertEquals(500, account.indexOfTransaction(recent));
+        assertEquals(-1, account.indexOfTransaction(early));
+        assertEquals(1049d, account.getTotalOutcome(), 0);
+        assertEquals(1001, copy.getFinancialEntries().size());
+        assertEquals(50d, copy.getFinancialEntries().get(500).getAmount(), 0);
+        assertEquals(7d - 1049d, copy.getBalance(), 0);
+    }
+
+    @Test
+    @DisplayName("Баланс на дату и движение за период с транзакциями не по порядку и правками")
+    public void balanceAtAndNetFlowTest() {
+        // Given
+        FinancialAccount account = accountHolder.getFinancialAccount();
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 9, 0);
+        for (int i = 0; i < 200; i++) {
+            // Каждая пятая транзакция приходит задним числом
+            LocalDateTime timestamp = i % 5 == 4 ? start.plusDays(i / 2).minusHours(30) : start.plusHours(i * 13L);
+            account.addTransaction(new FinancialEntry(5d + i, "test", i % 2 == 0, timestamp));
+        }
+        account.getFinancialEntries().get(7).setAmount(1000d);
+        account.getFinancialEntries().get(8).setTimestamp(LocalDateTime.of(2022, 12, 1, 0, 0));
+        account.removeTransaction(3);
+        LocalDateTime from = LocalDateTime.of(2023, 1, 10, 15, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 2, 3, 9, 0);
+
+        // When
+        double balance = financialOperationsService.getBalanceAt(accountHolder, to);
+        double netFlow = financialOperationsService.getNetFlow(accountHolder, from, to);
+
+        // Then
+        assertEquals(netOf(financialOperationsService.getTransactionByCategories(
+                accountHolder, LocalDateTime.MIN, to, Set.of("test"))), balance, 0.001);
+        assertEquals(netOf(financialOperationsService.getTransactionByCategories(
+                accountHolder, from, to, Set.of("test"))), netFlow, 0.001);
+        assertEquals(financialOperationsService.getCurrentBalance(accountHolder),
+                financialOperationsService.getNetFlow(accountHolder, null, null), 0.001);
+        assertEquals(0d, financialOperationsService.getNetFlow(accountHolder, to, from));
+    }
+
+    private static double netOf(List<FinancialEntry> entries) {
+        return entries.stream().mapToDouble(t -> t.getIsIncome() ? t.getAmount() : -t.getAmount()).sum();
+    }
+}
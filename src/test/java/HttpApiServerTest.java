@@ -0,0 +1,145 @@
+import com.business.services.AuthenticationService;
+import com.business.services.DataPersistenceService;
+import com.business.services.FinancialOperationsService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infrastructure.InMemoryUserRepository;
+import com.interf.HttpApiServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpApiServerTest {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private HttpApiServer server;
+    private AuthenticationService authenticationService;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        authenticationService = new AuthenticationService(new InMemoryUserRepository());
+        server = new HttpApiServer(authenticationService,
+                new FinancialOperationsService(), new DataPersistenceService(tempDir.resolve("users.data")));
+        server.start(0);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    @DisplayName("Регистрация, вход, доход, перевод и экспорт через HTTP")
+    public void happyPathTest() throws Exception {
+        // Given
+        String alice = token(post("/api/register", null, "{\"username\":\"alice\",\"password\":\"secret\"}"));
+        post("/api/register", null, "{\"username\":\"bob\",\"password\":\"secret\"}");
+        String bob = token(post("/api/login", null, "{\"username\":\"bob\",\"password\":\"secret\"}"));
+
+        // When
+        HttpResponse<String> income = post("/api/income", alice, "{\"category\":\"salary\",\"amount\":100}");
+        HttpResponse<String> transfer = post("/api/transfer", alice,
+                "{\"recipient\":\"bob\",\"amount\":40,\"description\":\"долг\"}");
+        HttpResponse<String> export = get("/api/export", alice);
+        HttpResponse<String> statistics = get("/api/statistics", bob);
+
+        // Then
+        assertEquals(200, income.statusCode());
+        assertEquals(100.0, JSON.readTree(income.body()).get("balance").asDouble(), 0.001);
+        assertEquals(200, transfer.statusCode());
+        assertEquals(60.0, JSON.readTree(transfer.body()).get("balance").asDouble(), 0.001);
+        assertEquals(200, export.statusCode());
+        JsonNode exported = JSON.readTree(export.body());
+        assertEquals("alice", exported.get("username").asText());
+        assertTrue(export.body().contains("salary"));
+        assertEquals(200, statistics.statusCode());
+        assertEquals(40.0, JSON.readTree(statistics.body()).get("balance").asDouble(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Ошибки сервисов отображаются в коды 400, 401 и 409")
+    public void errorMappingTest() throws Exception {
+        // Given
+        String alice = token(post("/api/register", null, "{\"username\":\"alice\",\"password\":\"secret\"}"));
+        post("/api/register", null, "{\"username\":\"bob\",\"password\":\"secret\"}");
+
+        // Then
+        assertEquals(400, post("/api/income", alice, "{\"category\":\"salary\",\"amount\":\"много\"}").statusCode());
+        assertEquals(400, post("/api/income", alice, "[]").statusCode());
+        assertEquals(401, get("/api/statistics", null).statusCode());
+        assertEquals(401, get("/api/statistics", "unknown").statusCode());
+        assertEquals(401, post("/api/login", null, "{\"username\":\"alice\",\"password\":\"wrong\"}").statusCode());
+        assertEquals(409, post("/api/register", null, "{\"username\":\"alice\",\"password\":\"other\"}").statusCode());
+        assertEquals(409, post("/api/transfer", alice, "{\"recipient\":\"bob\",\"amount\":10}").statusCode());
+        assertEquals(404, get("/api/unknown", alice).statusCode());
+    }
+
+    @Test
+    @DisplayName("Регистрация через HTTP не подменяет пользователя консоли")
+    public void registerKeepsConsoleSessionTest() throws Exception {
+        // Given
+        authenticationService.registration("console", "secret");
+
+        // When
+        String alice = token(post("/api/register", null, "{\"username\":\"alice\",\"password\":\"secret\"}"));
+
+        // Then
+        assertEquals("console", authenticationService.getCurrentAccountHolder().getUsername());
+        assertEquals("alice", authenticationService.getAccountHolder(alice).getUsername());
+    }
+
+    @Test
+    @DisplayName("После выхода токен больше не действует")
+    public void logoutTest() throws Exception {
+        // Given
+        String alice = token(post("/api/register", null, "{\"username\":\"alice\",\"password\":\"secret\"}"));
+
+        // When
+        HttpResponse<String> logout = post("/api/logout", alice, "");
+
+        // Then
+        assertEquals(200, logout.statusCode());
+        assertEquals(401, get("/api/export", alice).statusCode());
+    }
+
+    private HttpResponse<String> post(String path, String token, String body) throws Exception {
+        return send(request(path, token).POST(HttpRequest.BodyPublishers.ofString(body)));
+    }
+
+    private HttpResponse<String> get(String path, String token) throws Exception {
+        return send(request(path, token).GET());
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + server.getPort() + path));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder builder) throws Exception {
+        return client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String token(HttpResponse<String> response) throws IOException {
+        assertEquals(200, response.statusCode(), response.body());
+        return JSON.readTree(response.body()).get("token").asText();
+    }
+}
@@ -0,0 +1,187 @@
+import com.business.entities.AccountHolder;
+import com.business.entities.FinancialAccount;
+import com.business.entities.FinancialAccountListener;
+import com.business.entities.FinancialEntry;
+import com.business.exception.InsufficientFundsException;
+import com.business.ports.UserStoragePort;
+import com.business.services.DataPersistenceService;
+import com.business.services.FinancialOperationsService;
+import com.business.services.TransferService;
+import com.infrastructure.InMemoryUserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferServiceTest {
+    private FinancialOperationsService financialOperationsService;
+    private TransferService transferService;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void setUp() {
+        financialOperationsService = new FinancialOperationsService();
+        transferService = new TransferService();
+    }
+
+    @Test
+    @DisplayName("Перевод списывает у отправителя и зачисляет получателю")
+    public void transferTest() {
+        AccountHolder sender = new AccountHolder("sender", "pass");
+        AccountHolder recipient = new AccountHolder("recipient", "pass");
+        financialOperationsService.addIncome(sender, "salary", 100.0);
+
+        transferService.transfer(sender, recipient, 40.0, "");
+
+        assertEquals(60.0, financialOperationsService.getCurrentBalance(sender), 0.001);
+        assertEquals(40.0, financialOperationsService.getCurrentBalance(recipient), 0.001);
+        assertEquals("Перевод пользователю recipient", sender.getFinancialAccount().getFinancialEntries().get(1).getCategory());
+        assertEquals("Перевод от sender", recipient.getFinancialAccount().getFinancialEntries().get(0).getCategory());
+    }
+
+    @Test
+    @DisplayName("Перевод сверх баланса отклоняется без изменений")
+    public void transferInsufficientFundsTest() {
+        AccountHolder sender = new AccountHolder("sender", "pass");
+        AccountHolder recipient = new AccountHolder("recipient", "pass");
+        financialOperationsService.addIncome(sender, "salary", 10.0);
+
+        assertThrows(InsufficientFundsException.class, () -> transferService.transfer(sender, recipient, 10.01, null));
+        assertThrows(IllegalArgumentException.class, () -> transferService.transfer(sender, sender, 1.0, null));
+        assertEquals(1, sender.getFinancialAccount().getFinancialEntries().size());
+        assertTrue(recipient.getFinancialAccount().getFinancialEntries().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Параллельные встречные переводы не уводят баланс в минус и сохраняют общую сумму")
+    public void concurrentTransfersStressTest() throws Exception {
+        int users = 8;
+        int threads = 8;
+        int transfersPerThread = 2_000;
+        List<AccountHolder> holders = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            AccountHolder holder = new AccountHolder("user" + i, "pass");
+            financialOperationsService.addIncome(holder, "salary", 100.0);
+            holders.add(holder);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < transfersPerThread; i++) {
+                    int from = random.nextInt(users);
+                    int to = (from + 1 + random.nextInt(users - 1)) % users;
+                    try {
+                        transferService.transfer(holders.get(from), holders.get(to), 1 + random.nextInt(30), null);
+                    } catch (InsufficientFundsException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        double total = 0;
+        int entries = 0;
+        for (AccountHolder holder : holders) {
+            double balance = financialOperationsService.getCurrentBalance(holder);
+            assertTrue(balance >= 0, holder.getUsername() + " ушел в минус: " + balance);
+            assertTrue(holder.getFinancialAccount().verifyTotals());
+            total += balance;
+            entries += holder.getFinancialAccount().getFinancialEntries().size() - 1;
+        }
+        assertEquals(100.0 * users, total, 0.001);
+        assertEquals(2 * (threads * transfersPerThread - rejected.get()), entries);
+    }
+
+    @Test
+    @DisplayName("Сбой в слушателе получателя откатывает списание у отправителя")
+    public void transferRollbackOnListenerFailureTest() {
+        // Given
+        AccountHolder sender = new AccountHolder("sender", "pass");
+        AccountHolder recipient = new AccountHolder("recipient", "pass");
+        financialOperationsService.addIncome(sender, "salary", 100.0);
+        recipient.getFinancialAccount().addListener(new FinancialAccountListener() {
+            @Override
+            public void onTransactionAdded(FinancialAccount account, FinancialEntry entry) {
+                throw new IllegalStateException("Сбой слушателя");
+            }
+        });
+
+        // When
+        assertThrows(IllegalStateException.class, () -> transferService.transfer(sender, recipient, 40.0, null));
+
+        // Then
+        assertEquals(100.0, financialOperationsService.getCurrentBalance(sender), 0.001);
+        assertEquals(1, sender.getFinancialAccount().getFinancialEntries().size());
+        assertTrue(recipient.getFinancialAccount().getFinancialEntries().isEmpty());
+        assertTrue(sender.getFinancialAccount().verifyTotals());
+        assertTrue(recipient.getFinancialAccount().verifyTotals());
+    }
+
+    @Test
+    @DisplayName("Обе части перевода пишутся в журнал одной записью, неудачный перевод не пишется вовсе")
+    public void transferJournalGroupTest() {
+        // Given
+        Path dataFile = tempDir.resolve("users.data");
+        DataPersistenceService firstRun = new DataPersistenceService(dataFile);
+        UserStoragePort storage = firstRun.enableJournal(new InMemoryUserRepository());
+        storage.setAllUsers(firstRun.load());
+        AccountHolder sender = new AccountHolder("sender", "pass");
+        AccountHolder recipient = new AccountHolder("recipient", "pass");
+        storage.save("sender", sender);
+        storage.save("recipient", recipient);
+        financialOperationsService.addIncome(sender, "salary", 100.0);
+        TransferService journaled = new TransferService(storage);
+        long before = firstRun.getJournalRecordCount();
+
+        // When
+        journaled.transfer(sender, recipient, 40.0, null);
+        long afterTransfer = firstRun.getJournalRecordCount();
+        FinancialAccountListener failing = new FinancialAccountListener() {
+            @Override
+            public void onTransactionAdded(FinancialAccount account, FinancialEntry entry) {
+                throw new IllegalStateException("Сбой слушателя");
+            }
+        };
+        recipient.getFinancialAccount().addListener(failing);
+        assertThrows(IllegalStateException.class, () -> journaled.transfer(sender, recipient, 10.0, null));
+        recipient.getFinancialAccount().removeListener(failing);
+        long afterFailure = firstRun.getJournalRecordCount();
+        firstRun.shutdown(storage::findAll);
+        Map<String, AccountHolder> loaded = new DataPersistenceService(dataFile).load();
+
+        // Then
+        assertEquals(before + 1, afterTransfer);
+        assertEquals(afterTransfer, afterFailure);
+        assertEquals(60.0, loaded.get("sender").getFinancialAccount().getBalance(), 0.001);
+        assertEquals(40.0, loaded.get("recipient").getFinancialAccount().getBalance(), 0.001);
+        assertEquals(1, loaded.get("recipient").getFinancialAccount().getFinancialEntries().size());
+    }
+}